@@ -30,7 +30,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import javax.xml.parsers.ParserConfigurationException;
 
 import loci.common.Constants;
@@ -80,7 +83,21 @@ public class ColumbusReader extends FormatReader {
 
   private ArrayList<String> metadataFiles = new ArrayList<String>();
   private ArrayList<Plane> planes = new ArrayList<Plane>();
+
+  /** Planes indexed by series, timepoint and channel. */
+  private Plane[][][] planeIndex;
+
+  /**
+   * Bit (series * sizeT + timepoint) * sizeC + channel is set if the file
+   * for that plane existed when the dataset was initialized.
+   */
+  private BitSet planeExists;
+
+  /** Planes keyed by well row, well column, field, timepoint and channel. */
+  private transient Map<PlaneKey, Plane> planeLookup;
   private MinimalTiffReader reader;
+  private transient TiffReaderPool tiffPool;
+  private transient FileExistenceCache fileCache;
 
   private int nFields = 0;
   private String acquisitionDate;
@@ -96,6 +113,18 @@ public class ColumbusReader extends FormatReader {
       "Directory with XML file and one .tif/.tiff file per plane";
   }
 
+  // -- ColumbusReader API methods --
+
+  /**
+   * Discards the cached file existence checks, so that files written or
+   * removed since the dataset was opened are seen by later calls.
+   */
+  public void refreshFileCache() {
+    if (fileCache != null) {
+      fileCache.refresh();
+    }
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#getRequiredDirectories(String[]) */
@@ -141,7 +170,7 @@ public class ColumbusReader extends FormatReader {
     ArrayList<String> files = new ArrayList<String>();
     files.add(currentId);
     for (String file : metadataFiles) {
-      if (new Location(file).exists()) {
+      if (getFileCache().exists(file)) {
         files.add(file);
       }
     }
@@ -149,7 +178,7 @@ public class ColumbusReader extends FormatReader {
     if (!noPixels) {
       for (Plane p : planes) {
         if (p.series == getSeries() && !files.contains(p.file)) {
-          if (new Location(p.file).exists()) {
+          if (getFileCache().exists(p.file)) {
             files.add(p.file);
           }
         }
@@ -162,13 +191,21 @@ public class ColumbusReader extends FormatReader {
   /* @see loci.formats.IFormatReader#close(boolean) */
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
+    if (tiffPool != null) {
+      tiffPool.close();
+    }
     if (!fileOnly) {
       if (reader != null) {
         reader.close();
       }
       reader = null;
+      tiffPool = null;
+      fileCache = null;
       metadataFiles.clear();
       planes.clear();
+      planeIndex = null;
+      planeExists = null;
+      planeLookup = null;
       nFields = 0;
       acquisitionDate = null;
     }
@@ -183,19 +220,14 @@ public class ColumbusReader extends FormatReader {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     int[] zct = getZCTCoords(no);
-    Plane p = null;
-    for (Plane plane : planes) {
-      if (plane.series == getSeries() && plane.timepoint == zct[2] &&
-        plane.channel == zct[1])
-      {
-        p = plane;
-        break;
-      }
-    }
+    Plane p = planeIndex[getSeries()][zct[2]][zct[1]];
 
-    if (p != null && new Location(p.file).exists()) {
-      reader.setId(p.file);
-      reader.openBytes(p.fileIndex, buf, x, y, w, h);
+    if (p != null && planeExists.get(getPlaneBit(getSeries(), zct[2], zct[1])))
+    {
+      if (tiffPool == null) {
+        tiffPool = new TiffReaderPool();
+      }
+      tiffPool.openBytes(p.file, p.fileIndex, buf, x, y, w, h);
     }
     else {
       Arrays.fill(buf, (byte) 0);
@@ -213,6 +245,8 @@ public class ColumbusReader extends FormatReader {
     }
     id = xml.getAbsolutePath();
     super.initFile(id);
+    fileCache =
+      new FileExistenceCache(FileExistenceCache.isEnabled(getMetadataOptions()));
 
     Location parent = new Location(currentId).getAbsoluteFile().getParentFile();
 
@@ -245,7 +279,7 @@ public class ColumbusReader extends FormatReader {
       String timepointPath =
         end < 0 ? "" : parent + File.separator + metadataFile.substring(0, end);
       Location f = new Location(parent + File.separator + metadataFile);
-      if (!f.exists()) {
+      if (!getFileCache().exists(f.getAbsolutePath())) {
         metadataFile = metadataFile.substring(end + 1);
         f = new Location(parent, metadataFile);
       }
@@ -303,8 +337,14 @@ public class ColumbusReader extends FormatReader {
     ArrayList<Integer> uniqueSamples = new ArrayList<Integer>();
     ArrayList<Integer> uniqueRows = new ArrayList<Integer>();
     ArrayList<Integer> uniqueCols = new ArrayList<Integer>();
+    planeLookup = new HashMap<PlaneKey, Plane>();
     for (Plane p : tmpPlanes) {
       planes.add(p);
+      PlaneKey key =
+        new PlaneKey(p.row, p.col, p.field, p.timepoint, p.channel);
+      if (!planeLookup.containsKey(key)) {
+        planeLookup.put(key, p);
+      }
 
       int sampleIndex = p.row * handler.getPlateColumns() + p.col;
       if (!uniqueSamples.contains(sampleIndex)) {
@@ -340,6 +380,8 @@ public class ColumbusReader extends FormatReader {
     for (int i=1; i<seriesCount; i++) {
       core.add(m);
     }
+    planeIndex = new Plane[seriesCount][getSizeT()][getSizeC()];
+    planeExists = new BitSet(seriesCount * getSizeT() * getSizeC());
 
     // populate the MetadataStore
 
@@ -415,6 +457,10 @@ public class ColumbusReader extends FormatReader {
                 p = lookupPlane(row, col, field, t, c);
                 if (p != null) {
                   p.series = wellSample;
+                  planeIndex[p.series][t][c] = p;
+                  if (getFileCache().exists(p.file)) {
+                    planeExists.set(getPlaneBit(p.series, t, c));
+                  }
                   store.setPlaneDeltaT(new Time(p.deltaT - timestampSeconds, UNITS.SECOND), p.series, getIndex(0, c, t));
                 }
               }
@@ -428,6 +474,18 @@ public class ColumbusReader extends FormatReader {
 
   // -- Helper methods --
 
+  /**
+   * Returns the file existence cache, creating it if the reader was
+   * restored without one.
+   */
+  private FileExistenceCache getFileCache() {
+    if (fileCache == null) {
+      fileCache = new FileExistenceCache(
+        FileExistenceCache.isEnabled(getMetadataOptions()));
+    }
+    return fileCache;
+  }
+
   private void parseImageXML(String filename, int externalTime) throws FormatException, IOException {
     LOGGER.info("Parsing image data from {} with timepoint {}", filename, externalTime);
     String xml = DataTools.readFile(filename);
@@ -580,18 +638,19 @@ public class ColumbusReader extends FormatReader {
   }
 
   private Plane lookupPlane(int row, int col, int field, int t, int c) {
-    for (Plane p : planes) {
-      if (p.row == row && p.col == col && p.field == field &&
-        p.timepoint == t && p.channel == c)
-      {
-        return p;
-      }
+    Plane p = planeLookup.get(new PlaneKey(row, col, field, t, c));
+    if (p != null) {
+      return p;
     }
     LOGGER.warn("Could not find plane for row={}, column={}, field={}, t={}, c={}",
       new Object[] {row, col, field, t, c});
     return null;
   }
 
+  private int getPlaneBit(int series, int t, int c) {
+    return (series * getSizeT() + t) * getSizeC() + c;
+  }
+
   private static Location findXML(String name) {
     Location parent = new Location(name).getAbsoluteFile().getParentFile();
     Location xml = new Location(parent, XML_FILE);
@@ -712,6 +771,42 @@ public class ColumbusReader extends FormatReader {
 
   }
 
+  /** Well row, well column, field, timepoint and channel of a plane. */
+  private static class PlaneKey {
+    private final int row;
+    private final int col;
+    private final int field;
+    private final int timepoint;
+    private final int channel;
+
+    PlaneKey(int row, int col, int field, int timepoint, int channel) {
+      this.row = row;
+      this.col = col;
+      this.field = field;
+      this.timepoint = timepoint;
+      this.channel = channel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PlaneKey)) {
+        return false;
+      }
+      PlaneKey k = (PlaneKey) o;
+      return row == k.row && col == k.col && field == k.field &&
+        timepoint == k.timepoint && channel == k.channel;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = row;
+      hash = 31 * hash + col;
+      hash = 31 * hash + field;
+      hash = 31 * hash + timepoint;
+      return 31 * hash + channel;
+    }
+  }
+
   class Plane {
     public String file;
     public int fileIndex;
@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
+
+import ome.units.quantity.Length;
+import ome.units.UNITS;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DVExtHdrTable holds the extended header values of every plane of a
+ * Deltavision file.  Each field is stored in its own float array indexed by
+ * plane, instead of one object per plane; stage positions are only wrapped
+ * in a {@link Length} when they are requested.
+ *
+ * @author Brian W. Loranger
+ */
+public class DVExtHdrTable {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(DVExtHdrTable.class);
+
+  /** Photosensor reading. Typically in mV. */
+  public static final int PHOTOSENSOR_READING = 0;
+
+  /** Time stamp in seconds since the experiment began. */
+  public static final int TIME_STAMP_SECONDS = 1;
+
+  /** X stage coordinates. */
+  public static final int STAGE_X_COORD = 2;
+
+  /** Y stage coordinates. */
+  public static final int STAGE_Y_COORD = 3;
+
+  /** Z stage coordinates. */
+  public static final int STAGE_Z_COORD = 4;
+
+  /** Minimum intensity */
+  public static final int MIN_INTEN = 5;
+
+  /** Maxiumum intensity. */
+  public static final int MAX_INTEN = 6;
+
+  /** Exposure time in seconds. */
+  public static final int EXP_TIME = 8;
+
+  /** Neutral density value. */
+  public static final int ND_FILTER = 9;
+
+  /** Excitation filter wavelength. */
+  public static final int EX_WAVELEN = 10;
+
+  /** Emission filter wavelength. */
+  public static final int EM_WAVELEN = 11;
+
+  /** Intensity scaling factor. Usually 1. */
+  public static final int INTEN_SCALING = 12;
+
+  /** Energy conversion factor. Usually 1. */
+  public static final int ENERGY_CONV_FACTOR = 13;
+
+  /**
+   * Name of each field, indexed by field; the float at index 7 of each
+   * section is not used.
+   */
+  public static final String[] FIELD_NAMES = {
+    "photosensorReading", "timeStampSeconds", "stageXCoord", "stageYCoord",
+    "stageZCoord", "minInten", "maxInten", null, "expTime", "ndFilter",
+    "exWavelen", "emWavelen", "intenScaling", "energyConvFactor"
+  };
+
+  /** Number of bytes parsed at the start of each section. */
+  private static final int SECTION_LENGTH = FIELD_NAMES.length * 4;
+
+  /** Maximum number of bytes read from the file at once. */
+  private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+  // -- Fields --
+
+  /** Values of each field, indexed by z + sizeZ * (w + sizeC * t). */
+  private final float[][] columns = new float[FIELD_NAMES.length][];
+
+  private final int sizeZ;
+  private final int sizeC;
+
+  // -- Constructor --
+
+  private DVExtHdrTable(int planeCount, int sizeZ, int sizeC) {
+    this.sizeZ = sizeZ;
+    this.sizeC = sizeC;
+    for (int f=0; f<columns.length; f++) {
+      if (FIELD_NAMES[f] != null) {
+        columns[f] = new float[planeCount];
+      }
+    }
+  }
+
+  // -- DVExtHdrTable API methods --
+
+  /**
+   * Reads the sections of all planes, in file order and in blocks of at
+   * most {@link #MAX_BLOCK_SIZE} bytes.
+   *
+   * @param start offset of the first float of the first section
+   * @param sectionOffsets offset of each plane's section relative to
+   *   <code>start</code>, indexed by z + sizeZ * (w + sizeC * t)
+   */
+  public static DVExtHdrTable read(RandomAccessInputStream in, long start,
+    int[] sectionOffsets, int sizeZ, int sizeC) throws IOException
+  {
+    int planeCount = sectionOffsets.length;
+    DVExtHdrTable table = new DVExtHdrTable(planeCount, sizeZ, sizeC);
+    if (planeCount == 0) {
+      return table;
+    }
+
+    // sort the planes by offset, keeping the plane index in the low bits
+    long[] order = new long[planeCount];
+    for (int p=0; p<planeCount; p++) {
+      order[p] = ((long) sectionOffsets[p] << 32) | p;
+    }
+    Arrays.sort(order);
+
+    long end = start + (order[planeCount - 1] >>> 32) + SECTION_LENGTH;
+    long first = start + (order[0] >>> 32);
+    byte[] block = new byte[(int) Math.min(end - first, MAX_BLOCK_SIZE)];
+    long blockStart = -1;
+    boolean little = in.isLittleEndian();
+    boolean truncated = false;
+
+    for (long key : order) {
+      int plane = (int) key;
+      long pos = start + (key >>> 32);
+      if (blockStart < 0 || pos < blockStart ||
+        pos + SECTION_LENGTH > blockStart + block.length)
+      {
+        blockStart = pos;
+        int len = (int) Math.min(block.length, end - pos);
+        in.seek(pos);
+        int n = 0;
+        while (n < len) {
+          int r = in.read(block, n, len - n);
+          if (r <= 0) {
+            break;
+          }
+          n += r;
+        }
+        if (n < len) {
+          truncated = true;
+        }
+        // anything past the end of the file reads as 0
+        Arrays.fill(block, n, block.length, (byte) 0);
+      }
+      int off = (int) (pos - blockStart);
+      for (int f=0; f<table.columns.length; f++) {
+        if (table.columns[f] != null) {
+          table.columns[f][plane] =
+            DataTools.bytesToFloat(block, off + f * 4, little);
+        }
+      }
+
+      // NB: this is consistent with the Deltavision Opener plugin
+      // for ImageJ (http://rsb.info.nih.gov/ij/plugins/track/delta.html)
+      // the stored value could be a percent fraction or a percentage
+      if (table.columns[ND_FILTER][plane] >= 1) {
+        table.columns[ND_FILTER][plane] /= 100;
+      }
+    }
+    if (truncated) {
+      LOGGER.debug("Extended header is truncated");
+    }
+    return table;
+  }
+
+  /** Returns the value of the given field for the given plane. */
+  public float get(int field, int z, int w, int t) {
+    return columns[field][getIndex(z, w, t)];
+  }
+
+  /** Returns true if the given field is a stage coordinate. */
+  public static boolean isPosition(int field) {
+    return field == STAGE_X_COORD || field == STAGE_Y_COORD ||
+      field == STAGE_Z_COORD;
+  }
+
+  /** Returns the given stage coordinate of the given plane. */
+  public Length getPosition(int field, int z, int w, int t) {
+    return new Length(get(field, z, w, t), UNITS.REFERENCEFRAME);
+  }
+
+  // -- Helper methods --
+
+  private int getIndex(int z, int w, int t) {
+    return z + sizeZ * (w + sizeC * t);
+  }
+
+}
@@ -27,9 +27,7 @@ package loci.formats.in;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import loci.common.DataTools;
 import loci.common.DateTools;
@@ -113,8 +111,8 @@ public class DeltavisionReader extends FormatReader {
   protected int numIntsPerSection;
   protected int numFloatsPerSection;
 
-  /** Initialize an array of Extended Header Field structures. */
-  protected DVExtHdrFields[][][] extHdrFields = null;
+  /** Extended header values for every plane. */
+  private DVExtHdrTable extHdr = null;
 
   private Double[] ndFilters;
 
@@ -206,13 +204,29 @@ public class DeltavisionReader extends FormatReader {
 
     int[] coords = getZCTCoords(no);
     long offset = getPlaneByteOffset(coords[0], coords[1], coords[2]);
-    if (offset < in.length()) {
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    if (offset < in.length() && getRGBChannelCount() == 1) {
+      // planes are stored with the origin in the lower-left corner,
+      // so each row is read straight into its flipped position
+      int rowLen = getSizeX() * bpp;
+      int len = w * bpp;
+      in.seek(offset + (long) (getSizeY() - h - y) * rowLen + (long) x * bpp);
+      for (int row=h-1; row>=0; row--) {
+        if (in.read(buf, row * len, len) < len) {
+          break;
+        }
+        if (row > 0) {
+          in.skipBytes(rowLen - len);
+        }
+      }
+    }
+    else if (offset < in.length()) {
       in.seek(offset);
       readPlane(in, x, getSizeY() - h - y, w, h, buf);
 
       // reverse the order of the rows
       // planes are stored with the origin in the lower-left corner
-      byte[] tmp = new byte[w * FormatTools.getBytesPerPixel(getPixelType())];
+      byte[] tmp = new byte[w * bpp];
       for (int row=0; row<h/2; row++) {
         int src = row * tmp.length;
         int dest = (h - row - 1) * tmp.length;
@@ -232,7 +246,7 @@ public class DeltavisionReader extends FormatReader {
     if (!fileOnly) {
       extSize = wSize = zSize = tSize = 0;
       numIntsPerSection = numFloatsPerSection = 0;
-      extHdrFields = null;
+      extHdr = null;
       ndFilters = null;
       logFile = deconvolutionLogFile = null;
       lengths = null;
@@ -408,16 +422,26 @@ public class DeltavisionReader extends FormatReader {
     LOGGER.info("Reading extended header");
 
     setOffsetInfo(sequence, getSizeZ(), getSizeC(), getSizeT());
-    extHdrFields = new DVExtHdrFields[getSizeZ()][getSizeC()][getSizeT()];
 
     ndFilters = new Double[getSizeC()];
 
-    final List<Length> uniqueTileX = new ArrayList<Length>();
-    final List<Length> uniqueTileY = new ArrayList<Length>();
-
-    // Run through every image and fill in the
-    // Extended Header information array for that image
+    // read the section of every image in one pass over the extended header
     int offset = HEADER_LENGTH + numIntsPerSection * 4;
+    int[] sectionOffsets = new int[getSizeZ() * getSizeC() * getSizeT()];
+    for (int t=0; t<getSizeT(); t++) {
+      for (int w=0; w<getSizeC(); w++) {
+        for (int z=0; z<getSizeZ(); z++) {
+          sectionOffsets[z + getSizeZ() * (w + getSizeC() * t)] =
+            getTotalOffset(z, w, t);
+        }
+      }
+    }
+    extHdr = DVExtHdrTable.read(in, offset, sectionOffsets,
+      getSizeZ(), getSizeC());
+
+    final List<Float> uniqueTileX = new ArrayList<Float>();
+    final List<Float> uniqueTileY = new ArrayList<Float>();
+
     boolean hasZeroX = false;
     boolean hasZeroY = false;
     for (int i=0; i<getImageCount(); i++) {
@@ -426,27 +450,21 @@ public class DeltavisionReader extends FormatReader {
       int w = coords[1];
       int t = coords[2];
 
-      // -- read in the extended header data --
-
-      in.seek(offset + getTotalOffset(z, w, t));
-      DVExtHdrFields hdr = new DVExtHdrFields(in);
-      extHdrFields[z][w][t] = hdr;
-
-      if (!uniqueTileX.contains(hdr.stageXCoord) &&
-              hdr.stageXCoord.value().floatValue() != 0) {
-        uniqueTileX.add(hdr.stageXCoord);
-      }
-      else if (hdr.stageXCoord.value().floatValue() == 0) {
+      float stageX = extHdr.get(DVExtHdrTable.STAGE_X_COORD, z, w, t);
+      if (stageX == 0) {
         hasZeroX = true;
       }
-
-      if (!uniqueTileY.contains(hdr.stageYCoord) &&
-              hdr.stageYCoord.value().floatValue() != 0) {
-        uniqueTileY.add(hdr.stageYCoord);
+      else if (!uniqueTileX.contains(stageX)) {
+        uniqueTileX.add(stageX);
       }
-      else if (hdr.stageYCoord.value().floatValue() == 0) {
+
+      float stageY = extHdr.get(DVExtHdrTable.STAGE_Y_COORD, z, w, t);
+      if (stageY == 0) {
         hasZeroY = true;
       }
+      else if (!uniqueTileY.contains(stageY)) {
+        uniqueTileY.add(stageY);
+      }
     }
 
     xTiles = uniqueTileX.size();
@@ -462,10 +480,7 @@ public class DeltavisionReader extends FormatReader {
     }
 
     if (yTiles > 1) {
-       // TODO: use compareTo once Length implements Comparable
-      final Number y0 = uniqueTileY.get(0).value(UNITS.REFERENCEFRAME);
-      final Number y1 = uniqueTileY.get(1).value(UNITS.REFERENCEFRAME);
-      if (y1.floatValue() < y0.floatValue()) {
+      if (uniqueTileY.get(1) < uniqueTileY.get(0)) {
         backwardsStage = true;
       }
     }
@@ -535,19 +550,27 @@ public class DeltavisionReader extends FormatReader {
         int[] coords = getZCTCoords(plane);
 
         int tIndex = getSeriesCount() * coords[2] + series;
-        DVExtHdrFields hdr = extHdrFields[coords[0]][coords[1]][tIndex];
 
         // -- record original metadata --
 
         String prefix =
           "Extended header Z" + coords[0] + " W" + coords[1] + " T" + coords[2];
-        for (Map.Entry<String, Object> entry : hdr.asMap().entrySet()) {
-          addSeriesMeta(prefix + ":" + entry.getKey(), entry.getValue());
+        for (int f=0; f<DVExtHdrTable.FIELD_NAMES.length; f++) {
+          if (DVExtHdrTable.FIELD_NAMES[f] != null) {
+            // stage coordinates are recorded as lengths
+            Object value = DVExtHdrTable.isPosition(f) ?
+              extHdr.getPosition(f, coords[0], coords[1], tIndex) :
+              extHdr.get(f, coords[0], coords[1], tIndex);
+            addSeriesMeta(prefix + ":" + DVExtHdrTable.FIELD_NAMES[f], value);
+          }
         }
 
-        addGlobalMetaList("X position for position", hdr.stageXCoord);
-        addGlobalMetaList("Y position for position", hdr.stageYCoord);
-        addGlobalMetaList("Z position for position", hdr.stageZCoord);
+        addGlobalMetaList("X position for position", extHdr.getPosition(
+          DVExtHdrTable.STAGE_X_COORD, coords[0], coords[1], tIndex));
+        addGlobalMetaList("Y position for position", extHdr.getPosition(
+          DVExtHdrTable.STAGE_Y_COORD, coords[0], coords[1], tIndex));
+        addGlobalMetaList("Z position for position", extHdr.getPosition(
+          DVExtHdrTable.STAGE_Z_COORD, coords[0], coords[1], tIndex));
       }
     }
     setSeries(0);
@@ -761,29 +784,40 @@ public class DeltavisionReader extends FormatReader {
       for (int i=0; i<getImageCount(); i++) {
         int[] coords = getZCTCoords(i);
 
+        int z = coords[0];
+        int w = coords[1];
         int tIndex = getSeriesCount() * coords[2] + seriesIndex;
-        DVExtHdrFields hdr = extHdrFields[coords[0]][coords[1]][tIndex];
 
         // plane timing
-        store.setPlaneDeltaT(new Time(new Double(hdr.timeStampSeconds), UNITS.SECOND), series, i);
+        float deltaT =
+          extHdr.get(DVExtHdrTable.TIME_STAMP_SECONDS, z, w, tIndex);
+        float expTime = extHdr.get(DVExtHdrTable.EXP_TIME, 0, w, 0);
+        store.setPlaneDeltaT(new Time(new Double(deltaT), UNITS.SECOND), series, i);
         store.setPlaneExposureTime(
-          new Time(new Double(extHdrFields[0][coords[1]][0].expTime), UNITS.SECOND), series, i);
+          new Time(new Double(expTime), UNITS.SECOND), series, i);
 
         // stage position
         if (!logFound || getSeriesCount() > 1) {
-          store.setPlanePositionX(hdr.stageXCoord, series, i);
-          store.setPlanePositionY(hdr.stageYCoord, series, i);
-          store.setPlanePositionZ(hdr.stageZCoord, series, i);
+          store.setPlanePositionX(
+            extHdr.getPosition(DVExtHdrTable.STAGE_X_COORD, z, w, tIndex),
+            series, i);
+          store.setPlanePositionY(
+            extHdr.getPosition(DVExtHdrTable.STAGE_Y_COORD, z, w, tIndex),
+            series, i);
+          store.setPlanePositionZ(
+            extHdr.getPosition(DVExtHdrTable.STAGE_Z_COORD, z, w, tIndex),
+            series, i);
         }
       }
 
       for (int w=0; w<getSizeC(); w++) {
-        DVExtHdrFields hdrC = extHdrFields[0][w][series];
+        float exWavelen = extHdr.get(DVExtHdrTable.EX_WAVELEN, 0, w, series);
+        float ndFilter = extHdr.get(DVExtHdrTable.ND_FILTER, 0, w, series);
 
         Length emission =
           FormatTools.getEmissionWavelength(new Double(waves[w]));
         Length excitation =
-          FormatTools.getExcitationWavelength(new Double(hdrC.exWavelen));
+          FormatTools.getExcitationWavelength(new Double(exWavelen));
 
         if (emission != null) {
           store.setChannelEmissionWavelength(emission, series, w);
@@ -791,7 +825,7 @@ public class DeltavisionReader extends FormatReader {
         if (excitation != null) {
           store.setChannelExcitationWavelength(excitation, series, w);
         }
-        if (ndFilters[w] == null) ndFilters[w] = new Double(hdrC.ndFilter);
+        if (ndFilters[w] == null) ndFilters[w] = new Double(ndFilter);
         store.setChannelNDFilter(ndFilters[w], series, w);
       }
     }
@@ -2304,139 +2338,4 @@ public class DeltavisionReader extends FormatReader {
     }
   }
 
-  // -- Helper classes --
-
-  /**
-   * This private class structure holds the details for the extended header.
-   * Instances of the class should <em>NOT</em> leak out of the containing
-   * instance.
-   * @author Brian W. Loranger
-   */
-  private static class DVExtHdrFields {
-
-    /** Photosensor reading. Typically in mV. */
-    public float photosensorReading;
-
-    /** Time stamp in seconds since the experiment began. */
-    public float timeStampSeconds;
-
-    /** X stage coordinates. */
-    public Length stageXCoord;
-
-    /** Y stage coordinates. */
-    public Length stageYCoord;
-
-    /** Z stage coordinates. */
-    public Length stageZCoord;
-
-    /** Minimum intensity */
-    public float minInten;
-
-    /** Maxiumum intensity. */
-    public float maxInten;
-
-    /** Exposure time in seconds. */
-    public float expTime;
-
-    /** Neutral density value. */
-    public float ndFilter;
-
-    /** Excitation filter wavelength. */
-    public float exWavelen;
-
-    /** Emission filter wavelength. */
-    public float emWavelen;
-
-    /** Intensity scaling factor. Usually 1. */
-    public float intenScaling;
-
-    /** Energy conversion factor. Usually 1. */
-    public float energyConvFactor;
-
-    public Map<String, Object> asMap() {
-      Map<String, Object> rv = new HashMap<String, Object>();
-      rv.put("photosensorReading", photosensorReading);
-      rv.put("timeStampSeconds", timeStampSeconds);
-      rv.put("stageXCoord", stageXCoord);
-      rv.put("stageYCoord", stageYCoord);
-      rv.put("stageZCoord", stageZCoord);
-      rv.put("minInten", minInten);
-      rv.put("maxInten", maxInten);
-      rv.put("expTime", expTime);
-      rv.put("ndFilter", ndFilter);
-      rv.put("exWavelen", exWavelen);
-      rv.put("emWavelen", emWavelen);
-      rv.put("intenScaling", intenScaling);
-      rv.put("energyConvFactor", energyConvFactor);
-      return rv;
-    }
-
-    /**
-     * Helper function which overrides toString, printing out the values in
-     * the header section.
-     */
-    @Override
-    public String toString() {
-      final StringBuilder sb = new StringBuilder();
-      sb.append("photosensorReading: ");
-      sb.append(photosensorReading);
-      sb.append("\ntimeStampSeconds: ");
-      sb.append(timeStampSeconds);
-      sb.append("\nstageXCoord: ");
-      sb.append(stageXCoord);
-      sb.append("\nstageYCoord: ");
-      sb.append(stageYCoord);
-      sb.append("\nstageZCoord: ");
-      sb.append(stageZCoord);
-      sb.append("\nminInten: ");
-      sb.append(minInten);
-      sb.append("\nmaxInten: ");
-      sb.append(maxInten);
-      sb.append("\nexpTime: ");
-      sb.append(expTime);
-      sb.append("\nndFilter: ");
-      sb.append(ndFilter);
-      sb.append("\nexWavelen: ");
-      sb.append(exWavelen);
-      sb.append("\nemWavelen: ");
-      sb.append(emWavelen);
-      sb.append("\nintenScaling: ");
-      sb.append(intenScaling);
-      sb.append("\nenergyConvFactor: ");
-      sb.append(energyConvFactor);
-      return sb.toString();
-    }
-
-    private DVExtHdrFields(RandomAccessInputStream in) {
-      try {
-        // NB: this is consistent with the Deltavision Opener plugin
-        // for ImageJ (http://rsb.info.nih.gov/ij/plugins/track/delta.html)
-        photosensorReading = in.readFloat();
-        timeStampSeconds = in.readFloat();
-        stageXCoord = new Length(in.readFloat(), UNITS.REFERENCEFRAME);
-        stageYCoord = new Length(in.readFloat(), UNITS.REFERENCEFRAME);
-        stageZCoord = new Length(in.readFloat(), UNITS.REFERENCEFRAME);
-        minInten = in.readFloat();
-        maxInten = in.readFloat();
-        in.skipBytes(4);
-        expTime = in.readFloat();
-
-        ndFilter = in.readFloat();
-        exWavelen = in.readFloat();
-        emWavelen = in.readFloat();
-        intenScaling = in.readFloat();
-        energyConvFactor = in.readFloat();
-
-        // the stored value could be a percent fraction or a percentage
-        if (ndFilter >= 1) {
-          ndFilter /= 100;
-        }
-      }
-      catch (IOException e) {
-        LOGGER.debug("Could not parse extended header", e);
-      }
-    }
-
-  }
-
 }
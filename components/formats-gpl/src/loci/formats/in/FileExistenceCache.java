@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import loci.common.Location;
+
+/**
+ * FileExistenceCache answers "does this file exist?" for multi-file
+ * readers without a file system call per question.  The first lookup in a
+ * directory lists that directory once; later lookups in the same directory
+ * are answered from the listing.  Names that are not in the listing are
+ * checked once with {@link Location#exists()}, so that files mapped with
+ * {@link Location#mapId(String, String)} are still found.
+ *
+ * The cached state can be discarded with {@link #refresh()}; the readers
+ * that use a cache expose this as <code>refreshFileCache()</code>, for
+ * callers that keep a dataset open while files are being written.  If
+ * caching is disabled, every lookup goes to the file system.
+ */
+public class FileExistenceCache {
+
+  // -- Constants --
+
+  /** Reader option used to turn existence caching on or off. */
+  public static final String CACHE_KEY = "multifile.cache_file_existence";
+  public static final boolean CACHE_DEFAULT = true;
+
+  // -- Fields --
+
+  private final boolean enabled;
+
+  /** Names in each listed directory, keyed by absolute directory path. */
+  private final HashMap<String, Set<String>> directories =
+    new HashMap<String, Set<String>>();
+
+  /** Result of each lookup, keyed by the path as given. */
+  private final HashMap<String, Boolean> files = new HashMap<String, Boolean>();
+
+  // -- Constructors --
+
+  /** Constructs an enabled cache. */
+  public FileExistenceCache() {
+    this(CACHE_DEFAULT);
+  }
+
+  /**
+   * Constructs a cache; if <code>enabled</code> is false, lookups are
+   * never cached.
+   */
+  public FileExistenceCache(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  // -- FileExistenceCache API methods --
+
+  /**
+   * Returns true if the given reader option set enables caching.  Options
+   * that are not {@link DynamicMetadataOptions} use {@link #CACHE_DEFAULT}.
+   */
+  public static boolean isEnabled(MetadataOptions options) {
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        CACHE_KEY, CACHE_DEFAULT);
+    }
+    return CACHE_DEFAULT;
+  }
+
+  /** Returns true if lookups are cached. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Returns true if the given file exists. */
+  public boolean exists(String path) {
+    if (path == null) {
+      return false;
+    }
+    if (!enabled) {
+      return new Location(path).exists();
+    }
+    Boolean known = files.get(path);
+    if (known != null) {
+      return known;
+    }
+
+    Location file = new Location(path).getAbsoluteFile();
+    Location parent = file.getParentFile();
+    boolean exists = parent != null &&
+      getDirectory(parent.getAbsolutePath()).contains(file.getName());
+    if (!exists) {
+      exists = file.exists();
+    }
+    files.put(path, exists);
+    return exists;
+  }
+
+  /**
+   * Lists the given directory now, so that later lookups of files in it
+   * do not touch the file system.  Does nothing if caching is disabled.
+   */
+  public void addDirectory(String dir) {
+    if (enabled && dir != null) {
+      getDirectory(new Location(dir).getAbsolutePath());
+    }
+  }
+
+  /** Discards all cached listings and lookup results. */
+  public void refresh() {
+    directories.clear();
+    files.clear();
+  }
+
+  /** Returns the number of directories listed since the last refresh. */
+  public int getDirectoryCount() {
+    return directories.size();
+  }
+
+  // -- Helper methods --
+
+  private Set<String> getDirectory(String dir) {
+    Set<String> names = directories.get(dir);
+    if (names == null) {
+      String[] list = new Location(dir).list();
+      if (list == null) {
+        names = Collections.emptySet();
+      }
+      else {
+        names = new HashSet<String>(Arrays.asList(list));
+      }
+      directories.put(dir, names);
+    }
+    return names;
+  }
+
+}
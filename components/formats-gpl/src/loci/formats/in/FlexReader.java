@@ -87,6 +87,9 @@ public class FlexReader extends FormatReader {
   public static final String SCREENING = "Screening";
   public static final String ARCHIVE = "Archive";
 
+  /** Maximum number of Flex files kept open for reading pixels. */
+  private static final int MAX_OPEN_FILES = 8;
+
   // -- Static fields --
 
   /**
@@ -132,6 +135,12 @@ public class FlexReader extends FormatReader {
 
   private ArrayList<FlexFile> flexFiles;
 
+  /**
+   * Parsers for recently read Flex files; the least recently used file is
+   * closed once more than MAX_OPEN_FILES are open.
+   */
+  private transient TiffParserPool openParsers;
+
   private int nFiles = 0;
   private int effectiveFieldCount = 0;
 
@@ -243,63 +252,56 @@ public class FlexReader extends FormatReader {
     int[] pos = FormatTools.rasterToPosition(lengths, getSeries());
 
     int imageNumber = file.offsets == null ? getImageCount() * pos[0] + no : 0;
+    int index = getImageCount() * pos[0] + no;
 
-    RandomAccessInputStream s =
-      new RandomAccessInputStream(getFileHandle(file.file));
+    TiffParser tp = getParser(file.file);
 
-    IFD ifd;
-    double factor;
-    if (file.offsets == null) {
-      ifd = file.ifds.get(imageNumber);
-      factor = 1d;
-    }
-    else {
-      // Only the first IFD was read. Hack the IFD to adjust the offset.
-      final IFD firstIFD = firstFile.ifds.get(0);
-      ifd = new IFD(firstIFD);
-      int tag = IFD.STRIP_OFFSETS;
-      if (firstIFD.isTiled() &&
-        firstIFD.getIFDLongArray(IFD.TILE_OFFSETS) != null)
-      {
-        tag = IFD.TILE_OFFSETS;
+    // IFDs are filled in (and adjusted, if necessary) once per plane
+    IFD ifd = file.filledIFDs.get(index);
+    if (ifd == null) {
+      if (file.offsets == null) {
+        ifd = file.ifds.get(imageNumber);
       }
-      long [] offsets = ifd.getIFDLongArray(tag);
+      else {
+        // Only the first IFD was read. Hack the IFD to adjust the offset.
+        final IFD firstIFD = firstFile.ifds.get(0);
+        ifd = new IFD(firstIFD);
+        int tag = IFD.STRIP_OFFSETS;
+        if (firstIFD.isTiled() &&
+          firstIFD.getIFDLongArray(IFD.TILE_OFFSETS) != null)
+        {
+          tag = IFD.TILE_OFFSETS;
+        }
+        long [] offsets = ifd.getIFDLongArray(tag);
 
-      final int planeSize = getSizeX() * getSizeY() * getRGBChannelCount() *
-      ifd.getBitsPerSample()[0] / 8;
-      final int index = getImageCount() * pos[0] + no;
-      long offset = (index == file.offsets.length - 1 ?
-          s.length() : file.offsets[index + 1]) - offsets[0] - planeSize;
+        final int planeSize = getSizeX() * getSizeY() * getRGBChannelCount() *
+        ifd.getBitsPerSample()[0] / 8;
+        long offset = (index == file.offsets.length - 1 ?
+            tp.getStream().length() : file.offsets[index + 1]) -
+            offsets[0] - planeSize;
 
-      for (int i = 0; i < offsets.length; i++) {
-        offsets[i] += offset;
+        for (int i = 0; i < offsets.length; i++) {
+          offsets[i] += offset;
+        }
+        ifd.putIFDValue(tag, offsets);
       }
-      ifd.putIFDValue(tag, offsets);
+      tp.fillInIFD(ifd);
+      file.filledIFDs.put(index, ifd);
     }
     int nBytes = ifd.getBitsPerSample()[0] / 8;
     int bpp = FormatTools.getBytesPerPixel(getPixelType());
 
     // read pixels from the file
-    TiffParser tp = new TiffParser(s);
-    tp.fillInIFD(ifd);
     tp.getSamples(ifd, buf, x, y, w, h);
-    factor = file.factors == null ? 1d : file.factors[imageNumber];
-    tp.getStream().close();
+    double factor = file.factors == null ? 1d : file.factors[imageNumber];
 
     // expand pixel values with multiplication by factor[no]
     int num = buf.length / bpp;
 
     if (factor != 1d || nBytes != bpp) {
-      for (int i=num-1; i>=0; i--) {
-        int q = nBytes == 1 ? buf[i] & 0xff :
-          DataTools.bytesToInt(buf, i * nBytes, nBytes, isLittleEndian());
-        q = (int) (q * factor);
-        DataTools.unpackBytes(q, buf, i * bpp, bpp, isLittleEndian());
-      }
+      PixelScaler.expand(buf, num, nBytes, bpp, factor, isLittleEndian());
     }
 
-    s.close();
-
     return buf;
   }
 
@@ -307,6 +309,7 @@ public class FlexReader extends FormatReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
+    closeOpenParsers();
     if (!fileOnly) {
       binX = binY = 0;
       plateCount = wellCount = fieldCount = 0;
@@ -1357,6 +1360,32 @@ public class FlexReader extends FormatReader {
     }
   }
 
+  /**
+   * Returns an open parser for the given Flex file, opening the file if it
+   * is not already in the pool of open files.
+   */
+  private TiffParser getParser(String flexFile) throws IOException {
+    if (openParsers == null) {
+      openParsers = new TiffParserPool(MAX_OPEN_FILES) {
+        @Override
+        protected RandomAccessInputStream openStream(String path)
+          throws IOException
+        {
+          return new RandomAccessInputStream(getFileHandle(path));
+        }
+      };
+    }
+    return openParsers.get(flexFile);
+  }
+
+  /** Closes all files opened by {@link #getParser(String)}. */
+  private void closeOpenParsers() throws IOException {
+    if (openParsers != null) {
+      openParsers.close();
+      openParsers = null;
+    }
+  }
+
   private IRandomAccess getFileHandle(String flexFile) throws IOException {
     if (Location.getMappedFile(flexFile) != null) {
       return Location.getMappedFile(flexFile);
@@ -1402,6 +1431,9 @@ public class FlexReader extends FormatReader {
     public IFDList ifds;
     public long[] offsets;
     public double[] factors;
+
+    /** Filled-in IFDs, keyed by plane index within the file. */
+    public HashMap<Integer, IFD> filledIFDs = new HashMap<Integer, IFD>();
   }
 
   /** SAX handler for parsing XML. */
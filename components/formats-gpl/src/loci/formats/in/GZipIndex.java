@@ -0,0 +1,810 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * GZipIndex provides random access to the uncompressed contents of a
+ * gzip stream stored in a file.
+ *
+ * The index is built by decoding the stream once and recording a checkpoint
+ * (compressed offset, uncompressed offset and the preceding 32 KB of output)
+ * at deflate block boundaries that fall on a byte boundary, roughly every
+ * <code>span</code> uncompressed bytes.  Any uncompressed offset can then be
+ * reached by inflating forward from the nearest preceding checkpoint, so
+ * reading out of order costs at most one span of extra decompression
+ * instead of re-inflating from the start of the file.
+ *
+ * Indexes can be written to and read from a sidecar file; a stored index is
+ * only accepted if the length and modification time of the gzip file match.
+ */
+public class GZipIndex implements Closeable {
+
+  // -- Constants --
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GZipIndex.class);
+
+  /** Default number of uncompressed bytes between checkpoints. */
+  public static final int DEFAULT_SPAN = 1024 * 1024;
+
+  /** Suffix appended to the gzip file name to form the sidecar name. */
+  public static final String SIDECAR_SUFFIX = ".bfgzi";
+
+  private static final int SIDECAR_MAGIC = 0x42464749; // "BFGI"
+  private static final int SIDECAR_VERSION = 1;
+
+  /** Size of the deflate history window. */
+  private static final int WINDOW_SIZE = 32768;
+
+  private static final int BUFFER_SIZE = 65536;
+
+  // -- Fields --
+
+  private final String file;
+  private final long start;
+  private final long fileLength;
+  private final long lastModified;
+  private final int span;
+
+  private long length;
+
+  /** Uncompressed offset of each checkpoint, in increasing order. */
+  private long[] outOffsets;
+
+  /** Absolute file offset of the deflate block at each checkpoint. */
+  private long[] inOffsets;
+
+  /** Deflated copy of the history window preceding each checkpoint. */
+  private byte[][] windows;
+
+  /** Uncompressed length of each stored window. */
+  private int[] windowLengths;
+
+  private transient RandomAccessFile raf;
+  private transient Inflater inflater;
+  private transient byte[] inBuffer;
+  private transient byte[] skipBuffer;
+
+  /** Uncompressed offset of the next byte produced by the inflater. */
+  private transient long outPosition;
+
+  /** File offset of the next compressed byte to give to the inflater. */
+  private transient long inPosition;
+
+  // -- Constructors --
+
+  private GZipIndex(String file, long start, int span) throws IOException {
+    File f = new File(file);
+    if (!f.exists()) {
+      throw new IOException("File not found: " + file);
+    }
+    this.file = file;
+    this.start = start;
+    this.span = span;
+    this.fileLength = f.length();
+    this.lastModified = f.lastModified();
+  }
+
+  // -- GZipIndex API methods --
+
+  /**
+   * Builds an index for the gzip stream that begins at <code>start</code>
+   * and continues to the end of <code>file</code>.  Concatenated gzip
+   * members are treated as a single stream.
+   *
+   * @param file the absolute path to the file containing the gzip stream
+   * @param start the offset of the gzip header within the file
+   * @param span the approximate number of uncompressed bytes between
+   *   checkpoints
+   */
+  public static GZipIndex build(String file, long start, int span)
+    throws IOException
+  {
+    GZipIndex index = new GZipIndex(file, start, span);
+    index.scan();
+    return index;
+  }
+
+  /**
+   * Loads a previously saved index for the gzip stream beginning at
+   * <code>start</code> in <code>file</code>.
+   *
+   * @return the stored index, or null if the sidecar does not exist or does
+   *   not describe the current version of the file
+   */
+  public static GZipIndex load(String sidecar, String file, long start)
+    throws IOException
+  {
+    File s = new File(sidecar);
+    if (!s.exists()) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(s)));
+    try {
+      if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION) {
+        return null;
+      }
+      long storedLength = in.readLong();
+      long storedModified = in.readLong();
+      long storedStart = in.readLong();
+      int storedSpan = in.readInt();
+
+      GZipIndex index = new GZipIndex(file, start, storedSpan);
+      if (storedLength != index.fileLength ||
+        storedModified != index.lastModified || storedStart != start)
+      {
+        LOGGER.debug("Ignoring stale gzip index {}", sidecar);
+        return null;
+      }
+      index.length = in.readLong();
+      int count = in.readInt();
+      index.outOffsets = new long[count];
+      index.inOffsets = new long[count];
+      index.windowLengths = new int[count];
+      index.windows = new byte[count][];
+      for (int i=0; i<count; i++) {
+        index.outOffsets[i] = in.readLong();
+        index.inOffsets[i] = in.readLong();
+        index.windowLengths[i] = in.readInt();
+        index.windows[i] = new byte[in.readInt()];
+        in.readFully(index.windows[i]);
+      }
+      return index;
+    }
+    catch (EOFException e) {
+      LOGGER.debug("Truncated gzip index {}", sidecar, e);
+      return null;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /** Writes this index to the given sidecar file. */
+  public void save(String sidecar) throws IOException {
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(sidecar)));
+    try {
+      out.writeInt(SIDECAR_MAGIC);
+      out.writeInt(SIDECAR_VERSION);
+      out.writeLong(fileLength);
+      out.writeLong(lastModified);
+      out.writeLong(start);
+      out.writeInt(span);
+      out.writeLong(length);
+      out.writeInt(outOffsets.length);
+      for (int i=0; i<outOffsets.length; i++) {
+        out.writeLong(outOffsets[i]);
+        out.writeLong(inOffsets[i]);
+        out.writeInt(windowLengths[i]);
+        out.writeInt(windows[i].length);
+        out.write(windows[i]);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /** Returns the total number of uncompressed bytes. */
+  public long getUncompressedLength() {
+    return length;
+  }
+
+  /** Returns the number of checkpoints in the index. */
+  public int getCheckpointCount() {
+    return outOffsets.length;
+  }
+
+  /**
+   * Reads <code>len</code> uncompressed bytes starting at uncompressed
+   * offset <code>offset</code> into <code>buf</code>.
+   */
+  public void read(long offset, byte[] buf, int off, int len)
+    throws IOException
+  {
+    if (offset < 0 || offset + len > length) {
+      throw new EOFException("Cannot read " + len + " bytes at offset " +
+        offset + " (uncompressed length " + length + ")");
+    }
+    seek(offset);
+    inflate(buf, off, len);
+  }
+
+  /* @see java.io.Closeable#close() */
+  @Override
+  public void close() throws IOException {
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+    if (raf != null) {
+      raf.close();
+      raf = null;
+    }
+  }
+
+  // -- Helper methods - random access --
+
+  /** Positions the inflater so that the next byte produced is at offset. */
+  private void seek(long offset) throws IOException {
+    int checkpoint = Arrays.binarySearch(outOffsets, offset);
+    if (checkpoint < 0) {
+      checkpoint = -checkpoint - 2;
+    }
+
+    // continuing from the current position is cheaper than restarting
+    // whenever we are already at or past the nearest checkpoint
+    if (inflater == null || offset < outPosition ||
+      outPosition < outOffsets[checkpoint])
+    {
+      restart(checkpoint);
+    }
+
+    if (skipBuffer == null) {
+      skipBuffer = new byte[BUFFER_SIZE];
+    }
+    while (outPosition < offset) {
+      int n = (int) Math.min(skipBuffer.length, offset - outPosition);
+      inflate(skipBuffer, 0, n);
+    }
+  }
+
+  private void restart(int checkpoint) throws IOException {
+    if (raf == null) {
+      raf = new RandomAccessFile(file, "r");
+      inBuffer = new byte[BUFFER_SIZE];
+    }
+    if (inflater == null) {
+      inflater = new Inflater(true);
+    }
+    else {
+      inflater.reset();
+    }
+    if (windowLengths[checkpoint] > 0) {
+      inflater.setDictionary(expandWindow(checkpoint));
+    }
+    outPosition = outOffsets[checkpoint];
+    inPosition = inOffsets[checkpoint];
+  }
+
+  private void inflate(byte[] buf, int off, int len) throws IOException {
+    try {
+      while (len > 0) {
+        int n = inflater.inflate(buf, off, len);
+        off += n;
+        len -= n;
+        outPosition += n;
+        if (n > 0) {
+          continue;
+        }
+        if (inflater.finished()) {
+          // end of a gzip member; skip the trailer and the next header
+          long memberEnd = inPosition - inflater.getRemaining();
+          inPosition = skipHeader(memberEnd + 8);
+          inflater.reset();
+        }
+        else if (inflater.needsInput()) {
+          raf.seek(inPosition);
+          int read = raf.read(inBuffer, 0, inBuffer.length);
+          if (read <= 0) {
+            throw new EOFException("Unexpected end of gzip stream in " + file);
+          }
+          inPosition += read;
+          inflater.setInput(inBuffer, 0, read);
+        }
+        else {
+          throw new IOException("Cannot inflate " + file);
+        }
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Invalid gzip stream in " + file, e);
+    }
+  }
+
+  private byte[] expandWindow(int checkpoint) throws IOException {
+    Inflater windowInflater = new Inflater(true);
+    try {
+      byte[] window = new byte[windowLengths[checkpoint]];
+      windowInflater.setInput(windows[checkpoint]);
+      int n = 0;
+      while (n < window.length) {
+        int r = windowInflater.inflate(window, n, window.length - n);
+        if (r == 0 && (windowInflater.finished() ||
+          windowInflater.needsInput()))
+        {
+          throw new IOException("Corrupt gzip index window");
+        }
+        n += r;
+      }
+      return window;
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Corrupt gzip index window", e);
+    }
+    finally {
+      windowInflater.end();
+    }
+  }
+
+  private static byte[] compressWindow(byte[] window, int len) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(window, 0, len);
+      deflater.finish();
+      byte[] buf = new byte[len + 64];
+      int n = 0;
+      while (!deflater.finished()) {
+        if (n == buf.length) {
+          buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        n += deflater.deflate(buf, n, buf.length - n);
+      }
+      return Arrays.copyOf(buf, n);
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Parses the gzip member header at the given file offset and returns the
+   * offset of the first deflate block.
+   */
+  private long skipHeader(long offset) throws IOException {
+    if (raf == null) {
+      raf = new RandomAccessFile(file, "r");
+      inBuffer = new byte[BUFFER_SIZE];
+    }
+    raf.seek(offset);
+    if (raf.readUnsignedByte() != 0x1f || raf.readUnsignedByte() != 0x8b) {
+      throw new IOException("Not a gzip stream at offset " + offset);
+    }
+    if (raf.readUnsignedByte() != 8) {
+      throw new IOException("Unsupported gzip compression method");
+    }
+    int flags = raf.readUnsignedByte();
+    raf.skipBytes(6);
+    if ((flags & 4) != 0) {
+      int extra = raf.readUnsignedByte() | (raf.readUnsignedByte() << 8);
+      raf.skipBytes(extra);
+    }
+    if ((flags & 8) != 0) {
+      while (raf.readUnsignedByte() != 0);
+    }
+    if ((flags & 16) != 0) {
+      while (raf.readUnsignedByte() != 0);
+    }
+    if ((flags & 2) != 0) {
+      raf.skipBytes(2);
+    }
+    return raf.getFilePointer();
+  }
+
+  /** Returns true if a gzip member starts at the given file offset. */
+  private boolean isMemberStart(long offset) throws IOException {
+    if (offset + 2 > fileLength) {
+      return false;
+    }
+    raf.seek(offset);
+    return raf.readUnsignedByte() == 0x1f && raf.readUnsignedByte() == 0x8b;
+  }
+
+  // -- Helper methods - index construction --
+
+  /** Decodes the whole stream once, recording checkpoints. */
+  private void scan() throws IOException {
+    List<long[]> offsets = new ArrayList<long[]>();
+    List<byte[]> storedWindows = new ArrayList<byte[]>();
+    List<Integer> storedLengths = new ArrayList<Integer>();
+
+    try {
+      Decoder decoder = new Decoder();
+      long member = start;
+      long last = -1;
+      do {
+        decoder.seek(skipHeader(member));
+        boolean lastBlock = false;
+        while (!lastBlock) {
+          long bit = decoder.bitPosition();
+          if ((bit & 7) == 0 && (last < 0 || decoder.out - last >= span)) {
+            int n = (int) Math.min(decoder.out, WINDOW_SIZE);
+            byte[] window = decoder.linearWindow(n);
+            offsets.add(new long[] {decoder.out, bit >> 3});
+            storedWindows.add(compressWindow(window, n));
+            storedLengths.add(n);
+            last = decoder.out;
+          }
+          lastBlock = decoder.block();
+        }
+        member = ((decoder.bitPosition() + 7) >> 3) + 8;
+      }
+      while (isMemberStart(member));
+      length = decoder.out;
+    }
+    finally {
+      close();
+    }
+
+    int count = offsets.size();
+    outOffsets = new long[count];
+    inOffsets = new long[count];
+    windows = new byte[count][];
+    windowLengths = new int[count];
+    for (int i=0; i<count; i++) {
+      outOffsets[i] = offsets.get(i)[0];
+      inOffsets[i] = offsets.get(i)[1];
+      windows[i] = storedWindows.get(i);
+      windowLengths[i] = storedLengths.get(i);
+    }
+    LOGGER.debug("Indexed {} ({} bytes uncompressed, {} checkpoints)",
+      new Object[] {file, length, count});
+  }
+
+  // -- Helper classes --
+
+  /** Canonical Huffman code, as used by deflate. */
+  private static class Huffman {
+    /** Number of symbols of each code length. */
+    final short[] count = new short[Decoder.MAX_BITS + 1];
+    /** Symbols ordered by code. */
+    final short[] symbol;
+    /** Lookup table for codes of at most FAST_BITS bits. */
+    final int[] fast = new int[1 << Decoder.FAST_BITS];
+
+    Huffman(int n) {
+      symbol = new short[n];
+    }
+
+    void construct(int[] length, int offset, int n) throws IOException {
+      Arrays.fill(count, (short) 0);
+      Arrays.fill(fast, 0);
+      for (int s=0; s<n; s++) {
+        count[length[offset + s]]++;
+      }
+      if (count[0] == n) {
+        return;
+      }
+
+      int left = 1;
+      for (int len=1; len<=Decoder.MAX_BITS; len++) {
+        left <<= 1;
+        left -= count[len];
+        if (left < 0) {
+          throw new IOException("Over-subscribed Huffman code");
+        }
+      }
+
+      int[] offs = new int[Decoder.MAX_BITS + 1];
+      int[] next = new int[Decoder.MAX_BITS + 1];
+      for (int len=1; len<Decoder.MAX_BITS; len++) {
+        offs[len + 1] = offs[len] + count[len];
+      }
+      int code = 0;
+      for (int len=1; len<=Decoder.MAX_BITS; len++) {
+        next[len] = code;
+        code = (code + count[len]) << 1;
+      }
+
+      for (int s=0; s<n; s++) {
+        int len = length[offset + s];
+        if (len == 0) {
+          continue;
+        }
+        symbol[offs[len]++] = (short) s;
+        int c = next[len]++;
+        if (len <= Decoder.FAST_BITS) {
+          // codes are stored most significant bit first, but read from
+          // the stream least significant bit first
+          int reversed = Integer.reverse(c) >>> (32 - len);
+          for (int fill=reversed; fill<fast.length; fill+=1<<len) {
+            fast[fill] = (s << 4) | len;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Minimal deflate decoder, derived from zlib's puff.c.  Unlike
+   * java.util.zip.Inflater it exposes the bit position of each block
+   * boundary and the history window, which is what index construction needs.
+   */
+  private class Decoder {
+    static final int MAX_BITS = 15;
+    static final int FAST_BITS = 9;
+
+    private final short[] lengthBase = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15,
+      17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227,
+      258};
+    private final short[] lengthExtra = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1,
+      2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private final short[] distBase = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33,
+      49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097,
+      6145, 8193, 12289, 16385, 24577};
+    private final short[] distExtra = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5,
+      5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private final int[] order = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12,
+      3, 13, 2, 14, 1, 15};
+
+    private final Huffman fixedLength = new Huffman(288);
+    private final Huffman fixedDist = new Huffman(30);
+    private final Huffman dynamicLength = new Huffman(286);
+    private final Huffman dynamicDist = new Huffman(30);
+    private final Huffman codeLength = new Huffman(19);
+    private final int[] lengths = new int[286 + 30];
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowPosition;
+
+    /** Total number of bytes decoded. */
+    long out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private int bufferPosition, bufferLength;
+    private int overrun;
+    private int bitBuffer, bitCount;
+
+    Decoder() throws IOException {
+      int[] fixed = new int[288 + 30];
+      Arrays.fill(fixed, 0, 144, 8);
+      Arrays.fill(fixed, 144, 256, 9);
+      Arrays.fill(fixed, 256, 280, 7);
+      Arrays.fill(fixed, 280, 288, 8);
+      Arrays.fill(fixed, 288, 288 + 30, 5);
+      fixedLength.construct(fixed, 0, 288);
+      fixedDist.construct(fixed, 288, 30);
+    }
+
+    void seek(long offset) {
+      bufferStart = offset;
+      bufferPosition = 0;
+      bufferLength = 0;
+      bitBuffer = 0;
+      bitCount = 0;
+      overrun = 0;
+    }
+
+    long bitPosition() {
+      return (bufferStart + bufferPosition) * 8 - bitCount;
+    }
+
+    byte[] linearWindow(int n) {
+      byte[] w = new byte[n];
+      int first = windowPosition - n;
+      if (first >= 0) {
+        System.arraycopy(window, first, w, 0, n);
+      }
+      else {
+        first += WINDOW_SIZE;
+        int tail = WINDOW_SIZE - first;
+        System.arraycopy(window, first, w, 0, tail);
+        System.arraycopy(window, 0, w, tail, windowPosition);
+      }
+      return w;
+    }
+
+    private int nextByte() throws IOException {
+      if (bufferPosition == bufferLength) {
+        bufferStart += bufferLength;
+        bufferPosition = 0;
+        raf.seek(bufferStart);
+        bufferLength = Math.max(0, raf.read(buffer, 0, buffer.length));
+        if (bufferLength == 0) {
+          // allow the lookahead to run a little past the end of the file;
+          // a real read past the end fails once the padding is used up
+          if (++overrun > 4) {
+            throw new EOFException("Unexpected end of gzip stream in " + file);
+          }
+          return 0;
+        }
+      }
+      return buffer[bufferPosition++] & 0xff;
+    }
+
+    private int bits(int need) throws IOException {
+      int val = bitBuffer;
+      while (bitCount < need) {
+        val |= nextByte() << bitCount;
+        bitCount += 8;
+      }
+      bitBuffer = val >>> need;
+      bitCount -= need;
+      return val & ((1 << need) - 1);
+    }
+
+    private int decode(Huffman h) throws IOException {
+      while (bitCount < FAST_BITS) {
+        bitBuffer |= nextByte() << bitCount;
+        bitCount += 8;
+      }
+      int entry = h.fast[bitBuffer & ((1 << FAST_BITS) - 1)];
+      if (entry != 0) {
+        int len = entry & 15;
+        bitBuffer >>>= len;
+        bitCount -= len;
+        return entry >> 4;
+      }
+
+      int code = 0, first = 0, index = 0;
+      for (int len=1; len<=MAX_BITS; len++) {
+        code |= bits(1);
+        int count = h.count[len];
+        if (code - count < first) {
+          return h.symbol[index + (code - first)];
+        }
+        index += count;
+        first += count;
+        first <<= 1;
+        code <<= 1;
+      }
+      throw new IOException("Invalid Huffman code in " + file);
+    }
+
+    private void put(int b) {
+      window[windowPosition] = (byte) b;
+      windowPosition = (windowPosition + 1) & (WINDOW_SIZE - 1);
+      out++;
+    }
+
+    /** Decodes one block; returns true if it was the last in the member. */
+    boolean block() throws IOException {
+      boolean last = bits(1) == 1;
+      int type = bits(2);
+      switch (type) {
+        case 0:
+          stored();
+          break;
+        case 1:
+          codes(fixedLength, fixedDist);
+          break;
+        case 2:
+          dynamic();
+          break;
+        default:
+          throw new IOException("Invalid deflate block type in " + file);
+      }
+      return last;
+    }
+
+    private void stored() throws IOException {
+      int skip = bitCount & 7;
+      bitBuffer >>>= skip;
+      bitCount -= skip;
+      int len = bits(16);
+      if ((bits(16) ^ 0xffff) != len) {
+        throw new IOException("Invalid stored block length in " + file);
+      }
+      for (int i=0; i<len; i++) {
+        put(bits(8));
+      }
+    }
+
+    private void dynamic() throws IOException {
+      int nlen = bits(5) + 257;
+      int ndist = bits(5) + 1;
+      int ncode = bits(4) + 4;
+      if (nlen > 286 || ndist > 30) {
+        throw new IOException("Invalid dynamic block header in " + file);
+      }
+      Arrays.fill(lengths, 0, 19, 0);
+      for (int i=0; i<ncode; i++) {
+        lengths[order[i]] = bits(3);
+      }
+      codeLength.construct(lengths, 0, 19);
+
+      int index = 0;
+      while (index < nlen + ndist) {
+        int symbol = decode(codeLength);
+        if (symbol < 16) {
+          lengths[index++] = symbol;
+          continue;
+        }
+        int len = 0;
+        if (symbol == 16) {
+          if (index == 0) {
+            throw new IOException("Invalid code length repeat in " + file);
+          }
+          len = lengths[index - 1];
+          symbol = 3 + bits(2);
+        }
+        else if (symbol == 17) {
+          symbol = 3 + bits(3);
+        }
+        else {
+          symbol = 11 + bits(7);
+        }
+        if (index + symbol > nlen + ndist) {
+          throw new IOException("Too many code lengths in " + file);
+        }
+        while (symbol-- > 0) {
+          lengths[index++] = len;
+        }
+      }
+      if (lengths[256] == 0) {
+        throw new IOException("Missing end-of-block code in " + file);
+      }
+      dynamicLength.construct(lengths, 0, nlen);
+      dynamicDist.construct(lengths, nlen, ndist);
+      codes(dynamicLength, dynamicDist);
+    }
+
+    private void codes(Huffman lencode, Huffman distcode) throws IOException {
+      while (true) {
+        int symbol = decode(lencode);
+        if (symbol < 256) {
+          put(symbol);
+        }
+        else if (symbol == 256) {
+          return;
+        }
+        else {
+          symbol -= 257;
+          if (symbol >= 29) {
+            throw new IOException("Invalid length code in " + file);
+          }
+          int len = lengthBase[symbol] + bits(lengthExtra[symbol]);
+          symbol = decode(distcode);
+          if (symbol >= 30) {
+            throw new IOException("Invalid distance code in " + file);
+          }
+          int dist = distBase[symbol] + bits(distExtra[symbol]);
+          if (dist > out) {
+            throw new IOException("Distance too far back in " + file);
+          }
+          int from = windowPosition - dist;
+          for (int i=0; i<len; i++) {
+            put(window[(from + i) & (WINDOW_SIZE - 1)]);
+          }
+        }
+      }
+    }
+  }
+
+}
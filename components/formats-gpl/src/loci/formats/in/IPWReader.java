@@ -342,6 +342,11 @@ public class IPWReader extends FormatReader {
       throw new MissingLibraryException("POI library not found", de);
     }
 
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      poi.setIndexSidecarEnabled(((DynamicMetadataOptions) options).getBoolean(
+        POIService.INDEX_SIDECAR_KEY, POIService.INDEX_SIDECAR_DEFAULT));
+    }
     poi.initialize(Location.getMappedId(getCurrentFile()));
   }
 
@@ -25,8 +25,12 @@
 
 package loci.formats.in;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -74,12 +78,25 @@ public class InCellReader extends FormatReader {
   private static final String[] METADATA_SUFFIXES =
     new String[] {"xml", "xlog"};
 
+  /** Size of the header that precedes the pixels in a .im file. */
+  private static final int IM_HEADER_SIZE = 128;
+
   // -- Fields --
 
   private boolean[][] plateMap;
 
   private Image[][][][] imageFiles;
   private MinimalTiffReader tiffReader;
+  private transient TiffReaderPool tiffPool;
+
+  /** TIFF file containing the most recently requested plane, if any. */
+  private transient String lastTiffFile;
+
+  private transient FileExistenceCache fileCache;
+  private transient PlanePrefetcher prefetcher;
+  private transient TiffReaderPool prefetchPool;
+  private int prefetchDepth;
+
   private List<Double> emWaves, exWaves;
   private List<String> channelNames;
   private int totalImages;
@@ -123,6 +140,18 @@ public class InCellReader extends FormatReader {
       ".im file";
   }
 
+  // -- InCellReader API methods --
+
+  /**
+   * Discards the cached file existence checks, so that files written or
+   * removed since the dataset was opened are seen by later calls.
+   */
+  public void refreshFileCache() {
+    if (fileCache != null) {
+      fileCache.refresh();
+    }
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#isThisType(String, boolean) */
@@ -160,14 +189,16 @@ public class InCellReader extends FormatReader {
   @Override
   public byte[][] get8BitLookupTable() throws FormatException, IOException {
     FormatTools.assertId(currentId, true, 1);
-    return tiffReader == null ? null : tiffReader.get8BitLookupTable();
+    MinimalTiffReader reader = getLookupTableReader();
+    return reader == null ? null : reader.get8BitLookupTable();
   }
 
   /* @see loci.formats.IFormatReader#get16BitLookupTable() */
   @Override
   public short[][] get16BitLookupTable() throws FormatException, IOException {
     FormatTools.assertId(currentId, true, 1);
-    return tiffReader == null ? null : tiffReader.get16BitLookupTable();
+    MinimalTiffReader reader = getLookupTableReader();
+    return reader == null ? null : reader.get16BitLookupTable();
   }
 
   /**
@@ -180,21 +211,31 @@ public class InCellReader extends FormatReader {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     int[] coordinates = getZCTCoords(no);
+    Image plane = getImage(getSeries(), coordinates,
+      getIndex(coordinates[0], coordinates[1], 0));
+    lastTiffFile = plane != null && plane.isTiff ? plane.filename : null;
 
-    int well = getWellFromSeries(getSeries());
-    int field = getFieldFromSeries(getSeries());
-    int timepoint = oneTimepointPerSeries ?
-      getSeries() % channelsPerTimepoint.size() : coordinates[2];
-    int image = getIndex(coordinates[0], coordinates[1], 0);
+    if (prefetchDepth > 0 && !isRGB()) {
+      if (prefetcher == null) {
+        createPrefetcher();
+      }
+      if (prefetcher.openBytes(getSeries(), no, buf, x, y, w, h, getSizeX(),
+        FormatTools.getBytesPerPixel(getPixelType())))
+      {
+        return buf;
+      }
+    }
 
-    if (imageFiles[well][field][timepoint][image] == null) return buf;
-    String filename = imageFiles[well][field][timepoint][image].filename;
-    if (filename == null || !(new Location(filename).exists())) return buf;
+    if (plane == null) return buf;
+    String filename = plane.filename;
+    if (!getFileCache().exists(filename)) return buf;
 
-    if (imageFiles[well][field][timepoint][image].isTiff) {
+    if (plane.isTiff) {
       try {
-        tiffReader.setId(filename);
-        return tiffReader.openBytes(0, buf, x, y, w, h);
+        if (tiffPool == null) {
+          tiffPool = new TiffReaderPool();
+        }
+        return tiffPool.openBytes(filename, 0, buf, x, y, w, h);
       }
       catch (FormatException e) {
         LOGGER.debug("", e);
@@ -206,9 +247,29 @@ public class InCellReader extends FormatReader {
     }
 
     // pixels are stored in .im files
+    long planeSize = FormatTools.getPlaneSize(this);
+    if (Location.getMappedFile(filename) == null) {
+      RandomAccessFile file =
+        new RandomAccessFile(Location.getMappedId(filename), "r");
+      try {
+        FileChannel channel = file.getChannel();
+        long length = channel.size();
+        if (length >= IM_HEADER_SIZE + planeSize) {
+          readIMRows(channel, buf, x, y, w, h);
+          return buf;
+        }
+        if (length <= planeSize) {
+          return buf;
+        }
+      }
+      finally {
+        file.close();
+      }
+    }
+
     RandomAccessInputStream s = new RandomAccessInputStream(filename);
-    if (s.length() > FormatTools.getPlaneSize(this)) {
-      s.seek(128);
+    if (s.length() > planeSize) {
+      s.seek(IM_HEADER_SIZE);
       readPlane(s, x, y, w, h, buf);
     }
     s.close();
@@ -228,10 +289,10 @@ public class InCellReader extends FormatReader {
       for (Image[] timepoints : imageFiles[well][field]) {
         for (Image plane : timepoints) {
           if (plane != null && plane.filename != null) {
-            if (new Location(plane.filename).exists()) {
+            if (getFileCache().exists(plane.filename)) {
               files.add(plane.filename);
             }
-            if (plane.thumbnailFile != null && new Location(plane.thumbnailFile).exists()) {
+            if (getFileCache().exists(plane.thumbnailFile)) {
               files.add(plane.thumbnailFile);
             }
           }
@@ -246,10 +307,23 @@ public class InCellReader extends FormatReader {
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
     if (tiffReader != null) tiffReader.close(fileOnly);
+    if (tiffPool != null) tiffPool.close();
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+    if (prefetchPool != null) {
+      prefetchPool.close();
+      prefetchPool = null;
+    }
 
     if (!fileOnly) {
       imageFiles = null;
       tiffReader = null;
+      tiffPool = null;
+      lastTiffFile = null;
+      fileCache = null;
+      prefetchDepth = 0;
       totalImages = 0;
       emWaves = exWaves = null;
       channelNames = null;
@@ -352,6 +426,11 @@ public class InCellReader extends FormatReader {
     super.initFile(id);
     in = new RandomAccessInputStream(id);
 
+    // image files are checked against one listing of each directory
+    fileCache =
+      new FileExistenceCache(FileExistenceCache.isEnabled(getMetadataOptions()));
+    prefetchDepth = PlanePrefetcher.getDepth(getMetadataOptions());
+
     channelNames = new ArrayList<String>();
     emWaves = new ArrayList<Double>();
     exWaves = new ArrayList<Double>();
@@ -399,7 +478,7 @@ public class InCellReader extends FormatReader {
                 String filename = (char) ('A' + row) + " - " + (col + 1) + "(fld " + (field + 1) +
                   " wv " + exFilters.get(channel) + " - " + emFilters.get(channel) + ").tif";
                 Location path = new Location(parent, filename);
-                if (path.exists()) {
+                if (getFileCache().exists(path.getAbsolutePath())) {
                   plane.filename = path.getAbsolutePath();
                 }
                 else {
@@ -699,6 +778,135 @@ public class InCellReader extends FormatReader {
 
   // -- Helper methods --
 
+  /**
+   * Returns the file existence cache, creating it if the reader was
+   * restored without one.
+   */
+  private FileExistenceCache getFileCache() {
+    if (fileCache == null) {
+      fileCache = new FileExistenceCache(
+        FileExistenceCache.isEnabled(getMetadataOptions()));
+    }
+    return fileCache;
+  }
+
+  /**
+   * Reads the requested rows of a .im plane with positional reads on the
+   * given channel, without buffering the rest of the file.  Whole rows are
+   * read with a single call.
+   */
+  private void readIMRows(FileChannel channel, byte[] buf, int x, int y,
+    int w, int h) throws IOException
+  {
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    long rowLen = (long) getSizeX() * bpp;
+    int len = w * bpp;
+    long offset = IM_HEADER_SIZE + y * rowLen + (long) x * bpp;
+    if (w == getSizeX()) {
+      readFully(channel, buf, 0, len * h, offset);
+      return;
+    }
+    for (int row=0; row<h; row++) {
+      readFully(channel, buf, row * len, len, offset + row * rowLen);
+    }
+  }
+
+  /** Fills the given part of a buffer from the given channel position. */
+  private static void readFully(FileChannel channel, byte[] buf, int off,
+    int len, long position) throws IOException
+  {
+    ByteBuffer dst = ByteBuffer.wrap(buf, off, len);
+    while (dst.hasRemaining()) {
+      int n = channel.read(dst, position + dst.position() - off);
+      if (n < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  /** Returns the image for the given ZCT coordinates and image index. */
+  private Image getImage(int series, int[] zct, int image) {
+    int well = getWellFromSeries(series);
+    int field = getFieldFromSeries(series);
+    int timepoint = oneTimepointPerSeries ?
+      series % channelsPerTimepoint.size() : zct[2];
+    return imageFiles[well][field][timepoint][image];
+  }
+
+  /**
+   * Returns the reader for the TIFF file of the most recently requested
+   * plane, or the reader used during initialization if no TIFF plane has
+   * been requested yet.
+   */
+  private MinimalTiffReader getLookupTableReader()
+    throws FormatException, IOException
+  {
+    if (lastTiffFile == null || !getFileCache().exists(lastTiffFile)) {
+      return tiffReader;
+    }
+    if (tiffPool == null) {
+      tiffPool = new TiffReaderPool();
+    }
+    return tiffPool.get(lastTiffFile);
+  }
+
+  /**
+   * Starts reading planes ahead in series order.  Only used for non-RGB
+   * data, so that every plane is a single sample per pixel.
+   */
+  private void createPrefetcher() {
+    int[] planeCounts = new int[getSeriesCount()];
+    for (int i=0; i<planeCounts.length; i++) {
+      planeCounts[i] = core.get(i).imageCount;
+    }
+    prefetchPool = new TiffReaderPool();
+    prefetcher = new PlanePrefetcher(new PlanePrefetcher.PlaneLoader() {
+      @Override
+      public byte[] loadPlane(int series, int no)
+        throws FormatException, IOException
+      {
+        return prefetchPlane(series, no);
+      }
+    }, planeCounts, prefetchDepth);
+  }
+
+  /**
+   * Reads a full plane on the prefetch thread.  Only metadata that is
+   * fixed after initFile is used here; the current series is not.
+   */
+  private byte[] prefetchPlane(int series, int no)
+    throws FormatException, IOException
+  {
+    CoreMetadata ms = core.get(series);
+    int[] zct = FormatTools.getZCTCoords(ms.dimensionOrder,
+      ms.sizeZ, ms.sizeC, ms.sizeT, ms.imageCount, no);
+    int image = FormatTools.getIndex(ms.dimensionOrder,
+      ms.sizeZ, ms.sizeC, ms.sizeT, ms.imageCount, zct[0], zct[1], 0);
+    Image plane = getImage(series, zct, image);
+    if (plane == null || plane.filename == null) {
+      return null;
+    }
+    if (plane.isTiff) {
+      return prefetchPool.get(plane.filename).openBytes(0);
+    }
+
+    int planeSize =
+      ms.sizeX * ms.sizeY * FormatTools.getBytesPerPixel(ms.pixelType);
+    RandomAccessInputStream s = new RandomAccessInputStream(plane.filename);
+    try {
+      if (s.length() <= planeSize) {
+        return null;
+      }
+      byte[] pixels = new byte[planeSize];
+      s.seek(IM_HEADER_SIZE);
+      s.readFully(pixels);
+      return pixels;
+    }
+    finally {
+      s.close();
+    }
+  }
+
   private int getFieldFromSeries(int series) {
     if (oneTimepointPerSeries) series /= channelsPerTimepoint.size();
     return series % fieldCount;
@@ -819,8 +1027,8 @@ public class InCellReader extends FormatReader {
 
         Image img = new Image();
         img.thumbnailFile = currentThumbnail;
-        Location file = new Location(currentImageFile);
-        img.filename = file.exists() ? currentImageFile : null;
+        img.filename =
+          getFileCache().exists(currentImageFile) ? currentImageFile : null;
         if (img.filename == null) {
           LOGGER.debug("{} does not exist.", currentImageFile);
         }
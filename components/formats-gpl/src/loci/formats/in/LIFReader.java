@@ -25,22 +25,26 @@
 
 package loci.formats.in;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import loci.common.DataTools;
 import loci.common.DateTools;
@@ -56,6 +60,8 @@ import loci.formats.FormatReader;
 import loci.formats.FormatTools;
 import loci.formats.ImageTools;
 import loci.formats.MetadataTools;
+import loci.formats.meta.DummyMetadata;
+import loci.formats.meta.FilterMetadata;
 import loci.formats.meta.MetadataStore;
 import loci.formats.services.OMEXMLService;
 import ome.xml.model.enums.DetectorType;
@@ -69,9 +75,9 @@ import ome.units.quantity.Length;
 import ome.units.quantity.Time;
 import ome.units.UNITS;
 
-import org.xml.sax.SAXException;
 import org.apache.commons.lang.StringUtils;
 import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -93,6 +99,13 @@ public class LIFReader extends FormatReader {
     "leicalif.old_physical_size";
   public static final boolean OLD_PHYSICAL_SIZE_DEFAULT = false;
 
+  /**
+   * Reader option deferring the translation of each image's hardware
+   * settings, time stamps and ROIs until its series is first used.
+   */
+  public static final String LAZY_METADATA_KEY = "leicalif.lazy_metadata";
+  public static final boolean LAZY_METADATA_DEFAULT = false;
+
   public static final byte LIF_MAGIC_BYTE = 0x70;
   public static final byte LIF_MEMORY_BYTE = 0x2a;
 
@@ -161,6 +174,32 @@ public class LIFReader extends FormatReader {
   private long[] tileBytesInc;
   private long endPointer;
 
+  /** Reader for padded rows, reusing its buffer across planes. */
+  private transient PaddedRowReader rowReader;
+
+  /** Index of the first ROI stored for each series. */
+  private int[] firstROI;
+
+  /** Offset of the XML description in the file. */
+  private long xmlOffset;
+
+  /**
+   * Image elements whose settings have not been translated yet, indexed
+   * like {@link #imageNames}; null unless lazy metadata is enabled, or
+   * when the XML description has not been read since the reader was
+   * restored from a memo file.
+   */
+  private transient List<Element> lazyImages;
+
+  /**
+   * Whether each image's settings have been translated; null unless lazy
+   * metadata is enabled and some image has not been translated yet.
+   */
+  private boolean[] lazyTranslated;
+
+  /** Whether lazy metadata is being translated; guards nested calls. */
+  private transient boolean translatingLazyMetadata;
+
   // -- Constructor --
 
   /** Constructs a new Leica LIF reader. */
@@ -180,8 +219,52 @@ public class LIFReader extends FormatReader {
     return OLD_PHYSICAL_SIZE_DEFAULT;
   }
 
+  /**
+   * Returns true if the original metadata of each image is translated when
+   * its series metadata is first requested with
+   * {@link #getSeriesMetadata()}, instead of when the file is opened.  All
+   * remaining images are translated when {@link #getMetadataStore()} is
+   * called.
+   *
+   * This only defers the series metadata hashtables.  Translation is only
+   * deferred if the reader's metadata store is a {@link DummyMetadata},
+   * which discards everything else that would be translated; a store
+   * supplied by the caller is always fully populated by
+   * {@link #setId(String)}.  Dimensions, pixel offsets, image names and
+   * ROIs are always read when the file is opened, and selecting a series
+   * with {@link #setSeries(int)} does not translate anything.  A reader
+   * restored from a memo file reads the XML description again to translate
+   * the images that were not translated before the memo was saved.
+   */
+  public boolean isLazyMetadata() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        LAZY_METADATA_KEY, LAZY_METADATA_DEFAULT);
+    }
+    return LAZY_METADATA_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
+  /* @see loci.formats.IFormatReader#getSeriesMetadata() */
+  @Override
+  public Hashtable<String, Object> getSeriesMetadata() {
+    translateLazyMetadata(getSeries());
+    return super.getSeriesMetadata();
+  }
+
+  /* @see loci.formats.IFormatReader#getMetadataStore() */
+  @Override
+  public MetadataStore getMetadataStore() {
+    if (lazyTranslated != null) {
+      for (int i=0; i<getSeriesCount(); i++) {
+        translateLazyMetadata(i);
+      }
+    }
+    return super.getMetadataStore();
+  }
+
   /* @see loci.formats.IFormatReader#getOptimalTileHeight() */
   @Override
   public int getOptimalTileHeight() {
@@ -337,21 +420,25 @@ public class LIFReader extends FormatReader {
 
     seekStartOfPlane(no, offset, planeSize);
 
+    // color planes are stored in BGR order
+    boolean bgr = getRGBChannelCount() == 3;
+
     if (bytesToSkip == 0) {
       readPlane(in, x, y, w, h, buf);
     }
     else {
-      in.skipBytes(bytesToSkip * getSizeY() * no);
-      in.skipBytes(y * (getSizeX() * bpp + bytesToSkip));
-      for (int row=0; row<h; row++) {
-        in.skipBytes(x * bpp);
-        in.read(buf, row * w * bpp, w * bpp);
-        in.skipBytes(bpp * (getSizeX() - w - x) + bytesToSkip);
+      int rowStride = getSizeX() * bpp + bytesToSkip;
+      long start = in.getFilePointer() + (long) bytesToSkip * getSizeY() * no +
+        (long) y * rowStride + (long) x * bpp;
+      boolean swap = bgr && isInterleaved();
+      if (rowReader == null) {
+        rowReader = new PaddedRowReader();
       }
+      rowReader.read(in, start, rowStride, buf, w * bpp, h, swap ? bytes : 0);
+      bgr = bgr && !swap;
     }
 
-    // color planes are stored in BGR order
-    if (getRGBChannelCount() == 3) {
+    if (bgr) {
       ImageTools.bgrToRgb(buf, isInterleaved(), bytes, getRGBChannelCount());
     }
 
@@ -466,6 +553,11 @@ public class LIFReader extends FormatReader {
       fieldPosX.clear();
       fieldPosY.clear();
       endPointer = 0;
+      rowReader = null;
+      firstROI = null;
+      xmlOffset = 0;
+      lazyImages = null;
+      lazyTranslated = null;
     }
   }
 
@@ -501,6 +593,7 @@ public class LIFReader extends FormatReader {
     }
 
     // number of Unicode characters in the XML block
+    xmlOffset = in.getFilePointer();
     int nc = in.readInt();
     String xml = DataTools.stripString(in.readString(nc * 2));
 
@@ -575,6 +668,10 @@ public class LIFReader extends FormatReader {
       }
       setSeries(0);
     }
+
+    if (lazyImages != null) {
+      lazyTranslated = new boolean[lazyImages.size()];
+    }
   }
 
   // -- Helper methods --
@@ -594,16 +691,7 @@ public class LIFReader extends FormatReader {
     }
     MetadataStore store = makeFilterMetadata();
 
-    // the XML blocks stored in a LIF file are invalid,
-    // because they don't have a root node
-
-    xml = "<?xml version=\"1.0\" encoding=\""+ENCODING+"\"?><LEICA>" + xml +
-      "</LEICA>";
-
-    xml = XMLTools.sanitizeXML(xml);
-    LOGGER.trace(xml);
-
-    translateMetadata(getMetadataRoot(xml));
+    translateMetadata(parseMetadata(xml));
 
     for (int i=0; i<imageNames.length; i++) {
       setSeries(i);
@@ -654,484 +742,783 @@ public class LIFReader extends FormatReader {
 
     MetadataTools.populatePixels(store, this, true, false);
 
+    // ROI indexes are assigned in series order, whatever order the series
+    // are translated in
+    firstROI = new int[getSeriesCount()];
     int roiCount = 0;
+    for (int i=0; i<getSeriesCount(); i++) {
+      firstROI[i] = roiCount;
+      ROI[] rois = imageROIs[getTileIndex(i)];
+      if (rois != null) {
+        for (ROI roi : rois) {
+          if (roi != null) {
+            roiCount++;
+          }
+        }
+      }
+    }
+
+    boolean pixelsOnly = isPixelsOnly();
+    boolean lazy = lazyImages != null;
     for (int i=0; i<getSeriesCount(); i++) {
       setSeries(i);
 
-      String instrumentID = MetadataTools.createLSID("Instrument", i);
-      store.setInstrumentID(instrumentID, i);
+      if (pixelsOnly || lazy) {
+        store.setImageName(imageNames[getTileIndex(i)].trim(), i);
+        continue;
+      }
+      populateSeriesMetadata(store, i);
+    }
+    setSeries(0);
+  }
 
-      int index = getTileIndex(i);
+  /**
+   * Translates the settings of the image containing the given series, and
+   * stores the metadata of every series of that image, if lazy metadata is
+   * enabled and this has not been done yet.
+   */
+  private void translateLazyMetadata(int series) {
+    boolean[] translated = lazyTranslated;
+    if (translated == null || translatingLazyMetadata) {
+      return;
+    }
+    int index = getTileIndex(series);
+    if (index < 0 || index >= translated.length || translated[index]) {
+      return;
+    }
+    translated[index] = true;
 
-      store.setMicroscopeModel(microscopeModels[index], i);
-      store.setMicroscopeType(getMicroscopeType("Other"), i);
-
-      String objectiveID = MetadataTools.createLSID("Objective", i, 0);
-      store.setObjectiveID(objectiveID, i, 0);
-      store.setObjectiveLensNA(lensNA[index], i, 0);
-      store.setObjectiveSerialNumber(serialNumber[index], i, 0);
-      if (magnification[index] != null) {
-        store.setObjectiveNominalMagnification(magnification[index], i, 0);
-      }
-      store.setObjectiveImmersion(getImmersion(immersions[index]), i, 0);
-      store.setObjectiveCorrection(getCorrection(corrections[index]), i, 0);
-      store.setObjectiveModel(objectiveModels[index], i, 0);
-
-      if (cutIns[index] != null && filterModels[index] != null) {
-        int channel = 0;
-        if (cutIns[index].size() >= filterModels[index].size() * 2) {
-          int diff = cutIns[index].size() - filterModels[index].size();
-          for (int q=0; q<diff; q++) {
-            cutIns[index].remove(filterModels[index].size());
-          }
+    int currentSeries = getSeries();
+    translatingLazyMetadata = true;
+    try {
+      List<Element> images = lazyImages;
+      if (images == null) {
+        images = readImageNodes();
+        lazyImages = images;
+      }
+      // NB: makeFilterMetadata() would call getMetadataStore(), which
+      // translates every image
+      MetadataStore store =
+        new FilterMetadata(super.getMetadataStore(), isMetadataFiltered());
+      boolean first = true;
+      for (int i=0; i<getSeriesCount(); i++) {
+        if (getTileIndex(i) != index) {
+          continue;
         }
-        for (int filter=0; filter<cutIns[index].size(); filter++) {
-          String filterID = MetadataTools.createLSID("Filter", i, filter);
-          store.setFilterID(filterID, i, filter);
-          if (filterModels[index] != null &&
-            filter < filterModels[index].size())
-          {
-            store.setFilterModel(
-              (String) filterModels[index].get(filter), i, filter);
-          }
-          store.setTransmittanceRangeCutIn(
-            (Length) cutIns[index].get(filter), i, filter);
-          store.setTransmittanceRangeCutOut(
-            (Length) cutOuts[index].get(filter), i, filter);
+        setSeries(i);
+        if (first) {
+          translateImageSettings(images.get(index), index);
+          first = false;
         }
+        populateSeriesMetadata(store, i);
       }
 
-      final List<Double> lasers = laserWavelength[index];
-      final List<Double> laserIntensities = laserIntensity[index];
+      // release the DOM once every image has been translated
+      images.set(index, null);
+    }
+    catch (FormatException e) {
+      LOGGER.warn("Could not translate metadata for series {}", series, e);
+    }
+    catch (IOException e) {
+      LOGGER.warn("Could not translate metadata for series {}", series, e);
+    }
+    finally {
+      setSeries(currentSeries);
+      translatingLazyMetadata = false;
+    }
 
-      final List<Boolean> active = laserActive[index];
-      final List<Boolean> frap = laserFrap[index];
-      int nextChannel = 0;
+    for (boolean t : translated) {
+      if (!t) {
+        return;
+      }
+    }
+    lazyImages = null;
+    lazyTranslated = null;
+  }
 
-      if (lasers != null) {
-        int laserIndex = 0;
-        while (laserIndex < lasers.size()) {
-          if ((Double) lasers.get(laserIndex) == 0) {
-            lasers.remove(laserIndex);
-          }
-          else {
-            laserIndex++;
-          }
+  /**
+   * Reads the XML description again and returns the image elements, for a
+   * reader restored from a memo file.
+   */
+  private List<Element> readImageNodes() throws FormatException, IOException {
+    in.order(true);
+    in.setEncoding(ENCODING);
+    in.seek(xmlOffset);
+    int nc = in.readInt();
+    String xml = DataTools.stripString(in.readString(nc * 2));
+    return getImageElements(parseMetadata(xml).images);
+  }
+
+  /** Wraps the XML description in a root node and parses it. */
+  private XMLDescription parseMetadata(String xml) throws FormatException {
+    // the XML blocks stored in a LIF file are invalid,
+    // because they don't have a root node
+
+    xml = "<?xml version=\"1.0\" encoding=\""+ENCODING+"\"?><LEICA>" + xml +
+      "</LEICA>";
+
+    xml = XMLTools.sanitizeXML(xml);
+    LOGGER.trace(xml);
+
+    return getDescription(xml);
+  }
+
+  /**
+   * Translates the hardware settings, time stamps and original metadata of
+   * the given image.
+   */
+  private void translateImageSettings(Element image, int index)
+    throws FormatException
+  {
+    translateScannerSettings(image, index);
+    translateFilterSettings(image, index);
+    translateTimestamps(image, index);
+    translateLaserLines(image, index);
+    translateDetectors(image, index);
+
+    final Deque<String> nameStack = new ArrayDeque<String>();
+    populateOriginalMetadata(image, nameStack);
+    addUserCommentMeta(image, index);
+  }
+
+  /**
+   * Stores the instrument, channel, plane and ROI metadata of the given
+   * series, which must be the current series.
+   */
+  private void populateSeriesMetadata(MetadataStore store, int i)
+    throws FormatException
+  {
+    String instrumentID = MetadataTools.createLSID("Instrument", i);
+    store.setInstrumentID(instrumentID, i);
+
+    int index = getTileIndex(i);
+
+    store.setMicroscopeModel(microscopeModels[index], i);
+    store.setMicroscopeType(getMicroscopeType("Other"), i);
+
+    String objectiveID = MetadataTools.createLSID("Objective", i, 0);
+    store.setObjectiveID(objectiveID, i, 0);
+    store.setObjectiveLensNA(lensNA[index], i, 0);
+    store.setObjectiveSerialNumber(serialNumber[index], i, 0);
+    if (magnification[index] != null) {
+      store.setObjectiveNominalMagnification(magnification[index], i, 0);
+    }
+    store.setObjectiveImmersion(getImmersion(immersions[index]), i, 0);
+    store.setObjectiveCorrection(getCorrection(corrections[index]), i, 0);
+    store.setObjectiveModel(objectiveModels[index], i, 0);
+
+    if (cutIns[index] != null && filterModels[index] != null) {
+      int channel = 0;
+      if (cutIns[index].size() >= filterModels[index].size() * 2) {
+        int diff = cutIns[index].size() - filterModels[index].size();
+        for (int q=0; q<diff; q++) {
+          cutIns[index].remove(filterModels[index].size());
+        }
+      }
+      for (int filter=0; filter<cutIns[index].size(); filter++) {
+        String filterID = MetadataTools.createLSID("Filter", i, filter);
+        store.setFilterID(filterID, i, filter);
+        if (filterModels[index] != null &&
+          filter < filterModels[index].size())
+        {
+          store.setFilterModel(
+            (String) filterModels[index].get(filter), i, filter);
+        }
+        store.setTransmittanceRangeCutIn(
+          (Length) cutIns[index].get(filter), i, filter);
+        store.setTransmittanceRangeCutOut(
+          (Length) cutOuts[index].get(filter), i, filter);
+      }
+    }
+
+    final List<Double> lasers = laserWavelength[index];
+    final List<Double> laserIntensities = laserIntensity[index];
+
+    final List<Boolean> active = laserActive[index];
+    final List<Boolean> frap = laserFrap[index];
+    int nextChannel = 0;
+
+    if (lasers != null) {
+      int laserIndex = 0;
+      while (laserIndex < lasers.size()) {
+        if ((Double) lasers.get(laserIndex) == 0) {
+          lasers.remove(laserIndex);
         }
+        else {
+          laserIndex++;
+        }
+      }
 
-        for (int laser=0; laser<lasers.size(); laser++) {
-          String id = MetadataTools.createLSID("LightSource", i, laser);
-          store.setLaserID(id, i, laser);
-          store.setLaserType(LaserType.OTHER, i, laser);
-          store.setLaserLaserMedium(LaserMedium.OTHER, i, laser);
-          Double wavelength = (Double) lasers.get(laser);
-          Length wave = FormatTools.getWavelength(wavelength);
-          if (wave != null) {
-            store.setLaserWavelength(wave, i, laser);
-          }
+      for (int laser=0; laser<lasers.size(); laser++) {
+        String id = MetadataTools.createLSID("LightSource", i, laser);
+        store.setLaserID(id, i, laser);
+        store.setLaserType(LaserType.OTHER, i, laser);
+        store.setLaserLaserMedium(LaserMedium.OTHER, i, laser);
+        Double wavelength = (Double) lasers.get(laser);
+        Length wave = FormatTools.getWavelength(wavelength);
+        if (wave != null) {
+          store.setLaserWavelength(wave, i, laser);
         }
+      }
 
-        Set<Integer> ignoredChannels = new HashSet<Integer>();
-        final List<Integer> validIntensities = new ArrayList<Integer>();
-        int size = lasers.size();
-        int channel = 0;
-        Set<Integer> channels = new HashSet<Integer>();
+      Set<Integer> ignoredChannels = new HashSet<Integer>();
+      final List<Integer> validIntensities = new ArrayList<Integer>();
+      int size = lasers.size();
+      int channel = 0;
+      Set<Integer> channels = new HashSet<Integer>();
 
-        for (int laser=0; laser<laserIntensities.size(); laser++) {
-          double intensity = (Double) laserIntensities.get(laser);
-          channel = laser/size;
-          if (intensity < 100) {
-            validIntensities.add(laser);
-            channels.add(channel);
-          }
-          ignoredChannels.add(channel);
+      for (int laser=0; laser<laserIntensities.size(); laser++) {
+        double intensity = (Double) laserIntensities.get(laser);
+        channel = laser/size;
+        if (intensity < 100) {
+          validIntensities.add(laser);
+          channels.add(channel);
         }
-        //remove channels w/o valid intensities
-        ignoredChannels.removeAll(channels);
-        //remove entries if channel has 2 wavelengths
-        //e.g. 30% 458 70% 633
-        int s = validIntensities.size();
+        ignoredChannels.add(channel);
+      }
+      //remove channels w/o valid intensities
+      ignoredChannels.removeAll(channels);
+      //remove entries if channel has 2 wavelengths
+      //e.g. 30% 458 70% 633
+      int s = validIntensities.size();
 
-        int jj;
-        Set<Integer> toRemove = new HashSet<Integer>();
+      int jj;
+      Set<Integer> toRemove = new HashSet<Integer>();
 
-        int as = active.size();
-        for (int j = 0; j < s; j++) {
-          if (j < as && !(Boolean) active.get(j)) {
+      int as = active.size();
+      for (int j = 0; j < s; j++) {
+        if (j < as && !(Boolean) active.get(j)) {
+          toRemove.add(validIntensities.get(j));
+        }
+        jj = j+1;
+        if (jj < s) {
+          int v = validIntensities.get(j)/size;
+          int vv = validIntensities.get(jj)/size;
+          if (vv == v) {//do not consider that channel.
             toRemove.add(validIntensities.get(j));
+            toRemove.add(validIntensities.get(jj));
+            ignoredChannels.add(j);
           }
-          jj = j+1;
-          if (jj < s) {
-            int v = validIntensities.get(j)/size;
-            int vv = validIntensities.get(jj)/size;
-            if (vv == v) {//do not consider that channel.
-              toRemove.add(validIntensities.get(j));
-              toRemove.add(validIntensities.get(jj));
-              ignoredChannels.add(j);
-            }
-          }
-        }
-        if (toRemove.size() > 0) {
-          validIntensities.removeAll(toRemove);
         }
+      }
+      if (toRemove.size() > 0) {
+        validIntensities.removeAll(toRemove);
+      }
 
-        boolean noNames = true;
-        if (channelNames[index] != null) {
-          for (String name : channelNames[index]) {
-            if (name != null && !name.equals("")) {
-              noNames = false;
-              break;
-            }
+      boolean noNames = true;
+      if (channelNames[index] != null) {
+        for (String name : channelNames[index]) {
+          if (name != null && !name.equals("")) {
+            noNames = false;
+            break;
           }
         }
-        if (!noNames && frap != null) { //only use name for frap.
-          for (int k = 0; k < frap.size(); k++) {
-            if (!frap.get(k)) {
-              noNames = true;
-              break;
-            }
+      }
+      if (!noNames && frap != null) { //only use name for frap.
+        for (int k = 0; k < frap.size(); k++) {
+          if (!frap.get(k)) {
+            noNames = true;
+            break;
           }
         }
+      }
 
-        int nextFilter = 0;
-        //int nextFilter = cutIns[i].size() - getEffectiveSizeC();
-        for (int k=0; k<validIntensities.size(); k++, nextChannel++) {
-          int laserArrayIndex = validIntensities.get(k);
-          double intensity = (Double) laserIntensities.get(laserArrayIndex);
-          int laser = laserArrayIndex % lasers.size();
-          Double wavelength = (Double) lasers.get(laser);
-          if (wavelength != 0) {
-            while (ignoredChannels.contains(nextChannel)) {
-              nextChannel++;
-            }
-            while (channelNames != null && nextChannel < getEffectiveSizeC() &&
-              channelNames[index] != null &&
-              ((channelNames[index][nextChannel] == null ||
-              channelNames[index][nextChannel].equals("")) && !noNames))
-            {
-              nextChannel++;
+      int nextFilter = 0;
+      //int nextFilter = cutIns[i].size() - getEffectiveSizeC();
+      for (int k=0; k<validIntensities.size(); k++, nextChannel++) {
+        int laserArrayIndex = validIntensities.get(k);
+        double intensity = (Double) laserIntensities.get(laserArrayIndex);
+        int laser = laserArrayIndex % lasers.size();
+        Double wavelength = (Double) lasers.get(laser);
+        if (wavelength != 0) {
+          while (ignoredChannels.contains(nextChannel)) {
+            nextChannel++;
+          }
+          while (channelNames != null && nextChannel < getEffectiveSizeC() &&
+            channelNames[index] != null &&
+            ((channelNames[index][nextChannel] == null ||
+            channelNames[index][nextChannel].equals("")) && !noNames))
+          {
+            nextChannel++;
+          }
+          if (nextChannel < getEffectiveSizeC()) {
+            String id = MetadataTools.createLSID("LightSource", i, laser);
+            store.setChannelLightSourceSettingsID(id, i, nextChannel);
+            store.setChannelLightSourceSettingsAttenuation(
+              new PercentFraction((float) intensity / 100f), i, nextChannel);
+
+            Length ex = FormatTools.getExcitationWavelength(wavelength);
+            if (ex != null) {
+              store.setChannelExcitationWavelength(ex, i, nextChannel);
             }
-            if (nextChannel < getEffectiveSizeC()) {
-              String id = MetadataTools.createLSID("LightSource", i, laser);
-              store.setChannelLightSourceSettingsID(id, i, nextChannel);
-              store.setChannelLightSourceSettingsAttenuation(
-                new PercentFraction((float) intensity / 100f), i, nextChannel);
-
-              Length ex = FormatTools.getExcitationWavelength(wavelength);
-              if (ex != null) {
-                store.setChannelExcitationWavelength(ex, i, nextChannel);
-              }
 
-              if (wavelength > 0) {
-                if (cutIns[index] == null || nextFilter >= cutIns[index].size())
-                {
-                  continue;
-                }
-                Double cutIn =
-                  ((Length) cutIns[index].get(nextFilter)).value(UNITS.NANOMETER).doubleValue();
-                while (cutIn - wavelength > 20) {
-                  nextFilter++;
-                  if (nextFilter < cutIns[index].size()) {
-                    cutIn = ((Length)
-                      cutIns[index].get(nextFilter)).value(UNITS.NANOMETER).doubleValue();
-                  }
-                  else {
-                    break;
-                  }
-                }
+            if (wavelength > 0) {
+              if (cutIns[index] == null || nextFilter >= cutIns[index].size())
+              {
+                continue;
+              }
+              Double cutIn =
+                ((Length) cutIns[index].get(nextFilter)).value(UNITS.NANOMETER).doubleValue();
+              while (cutIn - wavelength > 20) {
+                nextFilter++;
                 if (nextFilter < cutIns[index].size()) {
-                  String fid =
-                    MetadataTools.createLSID("Filter", i, nextFilter);
-                  //store.setLightPathEmissionFilterRef(fid, i, nextChannel, 0);
-                  nextFilter++;
+                  cutIn = ((Length)
+                    cutIns[index].get(nextFilter)).value(UNITS.NANOMETER).doubleValue();
+                }
+                else {
+                  break;
                 }
               }
+              if (nextFilter < cutIns[index].size()) {
+                String fid =
+                  MetadataTools.createLSID("Filter", i, nextFilter);
+                //store.setLightPathEmissionFilterRef(fid, i, nextChannel, 0);
+                nextFilter++;
+              }
             }
           }
         }
       }
+    }
 
-      store.setImageInstrumentRef(instrumentID, i);
-      store.setObjectiveSettingsID(objectiveID, i);
-      store.setObjectiveSettingsRefractiveIndex(refractiveIndex[index], i);
+    store.setImageInstrumentRef(instrumentID, i);
+    store.setObjectiveSettingsID(objectiveID, i);
+    store.setObjectiveSettingsRefractiveIndex(refractiveIndex[index], i);
 
-      store.setImageDescription(descriptions[index], i);
-      if (acquiredDate[index] > 0) {
-        store.setImageAcquisitionDate(new Timestamp(DateTools.convertDate(
-          (long) (acquiredDate[index] * 1000), DateTools.COBOL,
-          DateTools.ISO8601_FORMAT, false)), i);
-      }
-      store.setImageName(imageNames[index].trim(), i);
+    store.setImageDescription(descriptions[index], i);
+    if (acquiredDate[index] > 0) {
+      store.setImageAcquisitionDate(new Timestamp(DateTools.convertDate(
+        (long) (acquiredDate[index] * 1000), DateTools.COBOL,
+        DateTools.ISO8601_FORMAT, false)), i);
+    }
+    store.setImageName(imageNames[index].trim(), i);
 
-      Length sizeX =
-        FormatTools.getPhysicalSizeX(physicalSizeXs.get(index));
-      Length sizeY =
-        FormatTools.getPhysicalSizeY(physicalSizeYs.get(index));
-      Length sizeZ = FormatTools.getPhysicalSizeZ(zSteps[index]);
+    Length sizeX =
+      FormatTools.getPhysicalSizeX(physicalSizeXs.get(index));
+    Length sizeY =
+      FormatTools.getPhysicalSizeY(physicalSizeYs.get(index));
+    Length sizeZ = FormatTools.getPhysicalSizeZ(zSteps[index]);
 
-      if (sizeX != null) {
-        store.setPixelsPhysicalSizeX(sizeX, i);
-      }
-      if (sizeY != null) {
-        store.setPixelsPhysicalSizeY(sizeY, i);
-      }
-      if (sizeZ != null) {
-        store.setPixelsPhysicalSizeZ(sizeZ, i);
-      }
-      if (tSteps[index] != null) {
-        store.setPixelsTimeIncrement(new Time(tSteps[index], UNITS.SECOND), i);
-      }
+    if (sizeX != null) {
+      store.setPixelsPhysicalSizeX(sizeX, i);
+    }
+    if (sizeY != null) {
+      store.setPixelsPhysicalSizeY(sizeY, i);
+    }
+    if (sizeZ != null) {
+      store.setPixelsPhysicalSizeZ(sizeZ, i);
+    }
+    if (tSteps[index] != null) {
+      store.setPixelsTimeIncrement(new Time(tSteps[index], UNITS.SECOND), i);
+    }
 
-      final List<String> detectors = detectorModels[index];
-      if (detectors != null) {
-        nextChannel = 0;
-        int start = detectors.size() - getEffectiveSizeC();
-        if (start < 0) {
-          start = 0;
-        }
-        for (int detector=start; detector<detectors.size(); detector++) {
-          int dIndex = detector - start;
-          String detectorID = MetadataTools.createLSID("Detector", i, dIndex);
-          store.setDetectorID(detectorID, i, dIndex);
-          store.setDetectorModel((String) detectors.get(detector), i, dIndex);
+    final List<String> detectors = detectorModels[index];
+    if (detectors != null) {
+      nextChannel = 0;
+      int start = detectors.size() - getEffectiveSizeC();
+      if (start < 0) {
+        start = 0;
+      }
+      for (int detector=start; detector<detectors.size(); detector++) {
+        int dIndex = detector - start;
+        String detectorID = MetadataTools.createLSID("Detector", i, dIndex);
+        store.setDetectorID(detectorID, i, dIndex);
+        store.setDetectorModel((String) detectors.get(detector), i, dIndex);
 
-          store.setDetectorZoom(zooms[index], i, dIndex);
-          store.setDetectorType(DetectorType.PMT, i, dIndex);
+        store.setDetectorZoom(zooms[index], i, dIndex);
+        store.setDetectorType(DetectorType.PMT, i, dIndex);
 
-          if (activeDetector[index] != null) {
-            int detectorIndex =
-              activeDetector[index].size() - getEffectiveSizeC() + dIndex;
-            if (detectorIndex >= 0 &&
-              detectorIndex < activeDetector[index].size() &&
-              (Boolean) activeDetector[index].get(detectorIndex) &&
-              detectorOffsets[index] != null &&
-              nextChannel < detectorOffsets[index].length)
-            {
-              store.setDetectorOffset(
-                detectorOffsets[index][nextChannel++], i, dIndex);
-            }
+        if (activeDetector[index] != null) {
+          int detectorIndex =
+            activeDetector[index].size() - getEffectiveSizeC() + dIndex;
+          if (detectorIndex >= 0 &&
+            detectorIndex < activeDetector[index].size() &&
+            (Boolean) activeDetector[index].get(detectorIndex) &&
+            detectorOffsets[index] != null &&
+            nextChannel < detectorOffsets[index].length)
+          {
+            store.setDetectorOffset(
+              detectorOffsets[index][nextChannel++], i, dIndex);
           }
         }
       }
+    }
 
-      final List<Boolean> activeDetectors = activeDetector[index];
-      int firstDetector = activeDetectors == null ? 0 :
-        activeDetectors.size() - getEffectiveSizeC();
-      int nextDetector = firstDetector;
+    final List<Boolean> activeDetectors = activeDetector[index];
+    int firstDetector = activeDetectors == null ? 0 :
+      activeDetectors.size() - getEffectiveSizeC();
+    int nextDetector = firstDetector;
 
-      int nextFilter = 0;
-      int nextFilterDetector = 0;
+    int nextFilter = 0;
+    int nextFilterDetector = 0;
 
-      if (activeDetectors != null &&
-        activeDetectors.size() > cutIns[index].size() &&
-        (Boolean) activeDetectors.get(activeDetectors.size() - 1) &&
-        (Boolean) activeDetectors.get(activeDetectors.size() - 2))
-      {
-        nextFilterDetector = activeDetectors.size() - cutIns[index].size();
+    if (activeDetectors != null &&
+      activeDetectors.size() > cutIns[index].size() &&
+      (Boolean) activeDetectors.get(activeDetectors.size() - 1) &&
+      (Boolean) activeDetectors.get(activeDetectors.size() - 2))
+    {
+      nextFilterDetector = activeDetectors.size() - cutIns[index].size();
 
-        if (cutIns[index].size() > filterModels[index].size()) {
-          nextFilterDetector += filterModels[index].size();
-          nextFilter += filterModels[index].size();
-        }
+      if (cutIns[index].size() > filterModels[index].size()) {
+        nextFilterDetector += filterModels[index].size();
+        nextFilter += filterModels[index].size();
       }
+    }
+
+    for (int c=0; c<getEffectiveSizeC(); c++) {
+      if (activeDetectors != null) {
+        while (nextDetector >= 0 && nextDetector < activeDetectors.size() &&
+          !(Boolean) activeDetectors.get(nextDetector))
+        {
+          nextDetector++;
+        }
+        if (nextDetector < activeDetectors.size() && detectors != null &&
+          nextDetector - firstDetector < detectors.size())
+        {
+          String detectorID = MetadataTools.createLSID(
+            "Detector", i, nextDetector - firstDetector);
+          store.setDetectorSettingsID(detectorID, i, c);
+          nextDetector++;
 
-      for (int c=0; c<getEffectiveSizeC(); c++) {
-        if (activeDetectors != null) {
-          while (nextDetector >= 0 && nextDetector < activeDetectors.size() &&
-            !(Boolean) activeDetectors.get(nextDetector))
+          if (detectorOffsets[index] != null &&
+            c < detectorOffsets[index].length)
           {
-            nextDetector++;
+            store.setDetectorSettingsOffset(detectorOffsets[index][c], i, c);
           }
-          if (nextDetector < activeDetectors.size() && detectors != null &&
-            nextDetector - firstDetector < detectors.size())
-          {
-            String detectorID = MetadataTools.createLSID(
-              "Detector", i, nextDetector - firstDetector);
-            store.setDetectorSettingsID(detectorID, i, c);
-            nextDetector++;
-
-            if (detectorOffsets[index] != null &&
-              c < detectorOffsets[index].length)
-            {
-              store.setDetectorSettingsOffset(detectorOffsets[index][c], i, c);
-            }
 
-            if (gains[index] != null) {
-              store.setDetectorSettingsGain(gains[index][c], i, c);
-            }
+          if (gains[index] != null) {
+            store.setDetectorSettingsGain(gains[index][c], i, c);
           }
         }
+      }
 
-        if (channelNames[index] != null) {
-          store.setChannelName(channelNames[index][c], i, c);
-        }
-        if (pinholes[index] != null) {
-          store.setChannelPinholeSize(new Length(pinholes[index], UNITS.MICROMETER), i, c);
-        }
-        if (exWaves[index] != null) {
-          if (exWaves[index][c] != null && exWaves[index][c] > 1) {
-            Length ex =
-              FormatTools.getExcitationWavelength(exWaves[index][c]);
-            if (ex != null) {
-              store.setChannelExcitationWavelength(ex, i, c);
-            }
+      if (channelNames[index] != null) {
+        store.setChannelName(channelNames[index][c], i, c);
+      }
+      if (pinholes[index] != null) {
+        store.setChannelPinholeSize(new Length(pinholes[index], UNITS.MICROMETER), i, c);
+      }
+      if (exWaves[index] != null) {
+        if (exWaves[index][c] != null && exWaves[index][c] > 1) {
+          Length ex =
+            FormatTools.getExcitationWavelength(exWaves[index][c]);
+          if (ex != null) {
+            store.setChannelExcitationWavelength(ex, i, c);
           }
         }
+      }
 
-        // channel coloring is implicit if the image is stored as RGB
-        Color channelColor = getChannelColor(realChannel[index][c]);
-        if (!isRGB()) {
-          store.setChannelColor(channelColor, i, c);
-        }
-
-        if (channelColor.getValue() != -1 && nextFilter >= 0) {
-          if (nextDetector - firstDetector != getSizeC() &&
-            cutIns[index] != null && nextDetector >= cutIns[index].size())
-          {
-            while (nextFilterDetector < firstDetector) {
-              String filterID =
-                MetadataTools.createLSID("Filter", i, nextFilter);
-              store.setFilterID(filterID, i, nextFilter);
+      // channel coloring is implicit if the image is stored as RGB
+      Color channelColor = getChannelColor(realChannel[index][c]);
+      if (!isRGB()) {
+        store.setChannelColor(channelColor, i, c);
+      }
 
-              nextFilterDetector++;
-              nextFilter++;
-            }
-          }
-          while (activeDetectors != null &&
-            nextFilterDetector < activeDetectors.size() &&
-            !(Boolean) activeDetectors.get(nextFilterDetector))
-          {
-            String filterID = MetadataTools.createLSID("Filter", i, nextFilter);
+      if (channelColor.getValue() != -1 && nextFilter >= 0) {
+        if (nextDetector - firstDetector != getSizeC() &&
+          cutIns[index] != null && nextDetector >= cutIns[index].size())
+        {
+          while (nextFilterDetector < firstDetector) {
+            String filterID =
+              MetadataTools.createLSID("Filter", i, nextFilter);
             store.setFilterID(filterID, i, nextFilter);
+
             nextFilterDetector++;
             nextFilter++;
           }
+        }
+        while (activeDetectors != null &&
+          nextFilterDetector < activeDetectors.size() &&
+          !(Boolean) activeDetectors.get(nextFilterDetector))
+        {
           String filterID = MetadataTools.createLSID("Filter", i, nextFilter);
           store.setFilterID(filterID, i, nextFilter);
-          store.setLightPathEmissionFilterRef(filterID, i, c, 0);
           nextFilterDetector++;
           nextFilter++;
         }
+        String filterID = MetadataTools.createLSID("Filter", i, nextFilter);
+        store.setFilterID(filterID, i, nextFilter);
+        store.setLightPathEmissionFilterRef(filterID, i, c, 0);
+        nextFilterDetector++;
+        nextFilter++;
       }
+    }
 
-      for (int image=0; image<getImageCount(); image++) {
-        Length xPos = posX[index];
-        Length yPos = posY[index];
-        if (i < fieldPosX.size() && fieldPosX.get(i) != null) {
-          xPos = fieldPosX.get(i);
-        }
-        if (i < fieldPosY.size() && fieldPosY.get(i) != null) {
-          yPos = fieldPosY.get(i);
-        }
-        if (xPos != null) {
-          store.setPlanePositionX(xPos, i, image);
-        }
-        if (yPos != null) {
-          store.setPlanePositionY(yPos, i, image);
-        }
-        store.setPlanePositionZ(posZ[index], i, image);
-        if (timestamps[index] != null) {
-          if (timestamps[index][image] != null) {
-            double timestamp = timestamps[index][image];
-            if (timestamps[index][0] == acquiredDate[index]) {
-              timestamp -= acquiredDate[index];
-            }
-            else if (timestamp == acquiredDate[index] && image > 0) {
-              timestamp = timestamps[index][0];
-            }
-            store.setPlaneDeltaT(new Time(timestamp, UNITS.SECOND), i, image);
+    for (int image=0; image<getImageCount(); image++) {
+      Length xPos = posX[index];
+      Length yPos = posY[index];
+      if (i < fieldPosX.size() && fieldPosX.get(i) != null) {
+        xPos = fieldPosX.get(i);
+      }
+      if (i < fieldPosY.size() && fieldPosY.get(i) != null) {
+        yPos = fieldPosY.get(i);
+      }
+      if (xPos != null) {
+        store.setPlanePositionX(xPos, i, image);
+      }
+      if (yPos != null) {
+        store.setPlanePositionY(yPos, i, image);
+      }
+      store.setPlanePositionZ(posZ[index], i, image);
+      if (timestamps[index] != null) {
+        if (timestamps[index][image] != null) {
+          double timestamp = timestamps[index][image];
+          if (timestamps[index][0] == acquiredDate[index]) {
+            timestamp -= acquiredDate[index];
+          }
+          else if (timestamp == acquiredDate[index] && image > 0) {
+            timestamp = timestamps[index][0];
           }
+          store.setPlaneDeltaT(new Time(timestamp, UNITS.SECOND), i, image);
         }
+      }
 
-        if (expTimes[index] != null) {
-          int c = getZCTCoords(image)[1];
-          if (expTimes[index][c] != null)
-          {
-            store.setPlaneExposureTime(new Time(expTimes[index][c], UNITS.SECOND), i, image);
-          }
+      if (expTimes[index] != null) {
+        int c = getZCTCoords(image)[1];
+        if (expTimes[index][c] != null)
+        {
+          store.setPlaneExposureTime(new Time(expTimes[index][c], UNITS.SECOND), i, image);
         }
       }
+    }
 
-      if (imageROIs[index] != null) {
-        for (int roi=0; roi<imageROIs[index].length; roi++) {
-          if (imageROIs[index][roi] != null) {
-            imageROIs[index][roi].storeROI(store, i, roiCount++, roi);
-          }
+    if (imageROIs[index] != null) {
+      int nextROI = firstROI[i];
+      for (int roi=0; roi<imageROIs[index].length; roi++) {
+        if (imageROIs[index][roi] != null) {
+          imageROIs[index][roi].storeROI(store, i, nextROI++, roi);
         }
       }
     }
   }
 
-  private Element getMetadataRoot(String xml)
-    throws FormatException, IOException
-  {
-    ByteArrayInputStream s = null;
+  /**
+   * Returns true if only the metadata needed to read pixels (dimensions,
+   * channels and image names) should be translated.
+   */
+  private boolean isPixelsOnly() {
+    return getMetadataOptions().getMetadataLevel() == MetadataLevel.MINIMUM;
+  }
+
+  /**
+   * Reads the given XML with a single streaming pass.  The layout of each
+   * image (its name, channels, dimensions and memory block) is recorded
+   * directly from the event stream.  Unless in pixels-only mode, an element
+   * tree is also built for each Image element, for translating hardware
+   * settings, time stamps, ROIs and original metadata; nothing outside the
+   * Image elements is materialized, and whitespace-only text, comments and
+   * sequential master blocks are left out.  In pixels-only mode, everything
+   * below each Image element other than its ImageDescription is skipped.
+   */
+  private XMLDescription getDescription(String xml) throws FormatException {
+    boolean pixelsOnly = isPixelsOnly();
+    XMLStreamReader reader = null;
     try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder parser = factory.newDocumentBuilder();
-      s = new ByteArrayInputStream(xml.getBytes(ENCODING));
-      return parser.parse(s).getDocumentElement();
+      Document document = pixelsOnly ? null :
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      reader = factory.createXMLStreamReader(new StringReader(xml));
+
+      XMLDescription description = new XMLDescription();
+
+      // names and "Name" attributes of the open elements
+      List<String> names = new ArrayList<String>();
+      List<String> elementNames = new ArrayList<String>();
+      List<ImageLayout> openImages = new ArrayList<ImageLayout>();
+      int nextOffset = 0;
+
+      // element being built, or null outside of the Image elements
+      Element parent = null;
+      int skipDepth = 0;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (skipDepth > 0) {
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            skipDepth++;
+          }
+          else if (event == XMLStreamConstants.END_ELEMENT) {
+            skipDepth--;
+          }
+          continue;
+        }
+
+        switch (event) {
+          case XMLStreamConstants.START_ELEMENT:
+            String name = reader.getLocalName();
+            if (name.equals("LDM_Block_Sequential_Master") ||
+              (pixelsOnly && "Image".equals(getAncestor(names, 0)) &&
+              !name.equals("ImageDescription")))
+            {
+              skipDepth = 1;
+              break;
+            }
+            names.add(name);
+            elementNames.add(getAttribute(reader, "Name"));
+            int depth = names.size() - 1;
+
+            ImageLayout image = null;
+            if (name.equals("Image")) {
+              description.imageElements++;
+              // images in a processing history have no memory block of
+              // their own, and are not series
+              String grandparent = getAncestor(names, 2);
+              if (grandparent != null) {
+                if (!grandparent.equals("ProcessingHistory")) {
+                  image = new ImageLayout(depth, nextOffset,
+                    getImageName(names, elementNames));
+                  description.images.add(image);
+                }
+                String ancestor = getAncestor(names, 4);
+                if (ancestor != null && !ancestor.equals("Image")) {
+                  nextOffset++;
+                }
+              }
+            }
+            for (ImageLayout open : openImages) {
+              open.startElement(reader, name, depth);
+            }
+            if (image != null) {
+              openImages.add(image);
+            }
+
+            if (document != null && (parent != null || image != null)) {
+              Element element = document.createElement(name);
+              for (int i=0; i<reader.getAttributeCount(); i++) {
+                element.setAttribute(reader.getAttributeLocalName(i),
+                  reader.getAttributeValue(i));
+              }
+              if (parent != null) {
+                parent.appendChild(element);
+              }
+              parent = element;
+              if (image != null) {
+                image.element = element;
+              }
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth = names.size() - 1;
+            for (int i=openImages.size()-1; i>=0; i--) {
+              if (openImages.get(i).endElement(depth)) {
+                openImages.remove(i);
+              }
+            }
+            names.remove(depth);
+            elementNames.remove(depth);
+            if (parent != null) {
+              Node node = parent.getParentNode();
+              parent = node instanceof Element ? (Element) node : null;
+            }
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            if (parent != null && !reader.isWhiteSpace()) {
+              parent.appendChild(document.createTextNode(reader.getText()));
+            }
+            break;
+        }
+      }
+      return description;
     }
     catch (ParserConfigurationException e) {
       throw new FormatException(e);
     }
-    catch (SAXException e) {
+    catch (XMLStreamException e) {
       throw new FormatException(e);
-    } finally {
-        if (s != null) s.close();
+    }
+    finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        }
+        catch (XMLStreamException e) {
+          LOGGER.debug("Could not close XML reader", e);
+        }
+      }
     }
   }
 
-  private void translateMetadata(Element root) throws FormatException {
-    Element realRoot = (Element) root.getChildNodes().item(0);
+  /**
+   * Returns the name of the given ancestor of the innermost open element
+   * (0 for the element itself), or null if there is no such ancestor.
+   */
+  private static String getAncestor(List<String> names, int generation) {
+    int index = names.size() - 1 - generation;
+    return index < 0 ? null : names.get(index);
+  }
 
-    NodeList toPrune = getNodes(realRoot, "LDM_Block_Sequential_Master");
-    if (toPrune != null) {
-      for (int i=0; i<toPrune.getLength(); i++) {
-        Element prune = (Element) toPrune.item(i);
-        Element parent = (Element) prune.getParentNode();
-        parent.removeChild(prune);
+  /** Returns the given attribute of the current element, or "". */
+  private static String getAttribute(XMLStreamReader reader, String name) {
+    for (int i=0; i<reader.getAttributeCount(); i++) {
+      if (reader.getAttributeLocalName(i).equals(name)) {
+        return reader.getAttributeValue(i);
       }
     }
+    return "";
+  }
 
-    NodeList images = getNodes(realRoot, "Image");
-    List<Element> imageNodes = new ArrayList<Element>();
-    Long[] oldOffsets = null;
-    if (images.getLength() > offsets.size()) {
-      oldOffsets = offsets.toArray(new Long[offsets.size()]);
-      offsets.clear();
-    }
-
-    int nextOffset = 0;
-    for (int i=0; i<images.getLength(); i++) {
-      Element image = (Element) images.item(i);
-      Element grandparent = (Element) image.getParentNode();
-      if (grandparent == null) {
-        continue;
-      }
-      grandparent = (Element) grandparent.getParentNode();
-      if (grandparent == null) {
-        continue;
-      }
-      if (!"ProcessingHistory".equals(grandparent.getNodeName())) {
-        // image is being referenced from an event list
-        imageNodes.add(image);
-        if (oldOffsets != null && nextOffset < oldOffsets.length) {
-          offsets.add(oldOffsets[nextOffset]);
-        }
+  /**
+   * Returns the name of the innermost open element, which is an image:
+   * the names of the enclosing Element nodes other than the outermost,
+   * separated by '/'.
+   */
+  private static String getImageName(List<String> names,
+    List<String> elementNames)
+  {
+    final List<String> path = new ArrayList<String>();
+    for (int i=0; i<names.size()-1; i++) {
+      if (names.get(i).equals("Element")) {
+        path.add(elementNames.get(i));
       }
-      grandparent = (Element) grandparent.getParentNode();
-      if (grandparent == null) {
-        continue;
+    }
+    final StringBuilder name = new StringBuilder();
+    for (int i=1; i<path.size(); i++) {
+      name.append(path.get(i));
+      if (i < path.size() - 1) {
+        name.append('/');
       }
-      grandparent = (Element) grandparent.getParentNode();
-      if (grandparent != null) {
-        if (!"Image".equals(grandparent.getNodeName())) {
-          nextOffset++;
+    }
+    return name.toString();
+  }
+
+  /** Returns the element tree of each image. */
+  private static List<Element> getImageElements(List<ImageLayout> images) {
+    List<Element> elements = new ArrayList<Element>(images.size());
+    for (ImageLayout image : images) {
+      elements.add(image.element);
+    }
+    return elements;
+  }
+
+  private void translateMetadata(XMLDescription description)
+    throws FormatException
+  {
+    // NB: sequential master blocks were dropped by getDescription
+
+    boolean pixelsOnly = isPixelsOnly();
+    lazyImages = null;
+    List<ImageLayout> imageNodes = description.images;
+    if (description.imageElements > offsets.size()) {
+      // assign memory blocks to images as recorded while parsing
+      Long[] oldOffsets = offsets.toArray(new Long[offsets.size()]);
+      offsets.clear();
+      for (ImageLayout image : imageNodes) {
+        if (image.offsetIndex < oldOffsets.length) {
+          offsets.add(oldOffsets[image.offsetIndex]);
         }
       }
     }
 
+    if (!pixelsOnly && isLazyMetadata() &&
+      metadataStore instanceof DummyMetadata)
+    {
+      lazyImages = getImageElements(imageNodes);
+    }
+
     tileCount = new int[imageNodes.size()];
     Arrays.fill(tileCount, 1);
     tileBytesInc = new long[imageNodes.size()];
@@ -1175,7 +1562,7 @@ public class LIFReader extends FormatReader {
 
     core.clear();
     for (int i=0; i<imageNodes.size(); i++) {
-      Element image = imageNodes.get(i);
+      ImageLayout layout = imageNodes.get(i);
 
       CoreMetadata ms = new CoreMetadata();
       core.add(ms);
@@ -1183,20 +1570,20 @@ public class LIFReader extends FormatReader {
       int index = core.size() - 1;
       setSeries(index);
 
-      translateImageNames(image, index);
-      translateImageNodes(image, index);
+      imageNames[index] = layout.name;
+      translateImageNodes(layout, index);
+      if (pixelsOnly) {
+        continue;
+      }
+      Element image = layout.element;
+      // NB: tile positions are indexed by series, so attachments are always
+      // translated in image order
       translateAttachmentNodes(image, index);
-      translateScannerSettings(image, index);
-      translateFilterSettings(image, index);
-      translateTimestamps(image, index);
-      translateLaserLines(image, index);
       translateROIs(image, index);
       translateSingleROIs(image, index);
-      translateDetectors(image, index);
-
-      final Deque<String> nameStack = new ArrayDeque<String>();
-      populateOriginalMetadata(image, nameStack);
-      addUserCommentMeta(image, i);
+      if (lazyImages == null) {
+        translateImageSettings(image, index);
+      }
     }
     setSeries(0);
 
@@ -1266,25 +1653,6 @@ public class LIFReader extends FormatReader {
     }
   }
 
-  private void translateImageNames(Element imageNode, int image) {
-    final List<String> names = new ArrayList<String>();
-    Element parent = imageNode;
-    while (true) {
-      parent = (Element) parent.getParentNode();
-      if (parent == null || parent.getNodeName().equals("LEICA")) {
-        break;
-      }
-      if (parent.getNodeName().equals("Element")) {
-        names.add(parent.getAttribute("Name"));
-      }
-    }
-    imageNames[image] = "";
-    for (int i=names.size() - 2; i>=0; i--) {
-      imageNames[image] += names.get(i);
-      if (i > 0) imageNames[image] += '/';
-    }
-  }
-
   private void translateDetectors(Element imageNode, int image)
     throws FormatException
   {
@@ -1992,7 +2360,7 @@ public class LIFReader extends FormatReader {
     }
   }
 
-  private void translateImageNodes(Element imageNode, int i)
+  private void translateImageNodes(ImageLayout imageNode, int i)
     throws FormatException
   {
     CoreMetadata ms = core.get(i);
@@ -2001,8 +2369,8 @@ public class LIFReader extends FormatReader {
     ms.littleEndian = true;
     ms.falseColor = true;
 
-    NodeList channels = getChannelDescriptionNodes(imageNode);
-    NodeList dimensions = getDimensionDescriptionNodes(imageNode);
+    List<String[]> channels = imageNode.channels;
+    List<String[]> dimensions = imageNode.dimensions;
 
     HashMap<Long, String> bytesPerAxis = new HashMap<Long, String>();
 
@@ -2010,12 +2378,12 @@ public class LIFReader extends FormatReader {
     Double physicalSizeY = null;
     Double physicalSizeZ = null;
 
-    ms.sizeC = channels.getLength();
-    for (int ch=0; ch<channels.getLength(); ch++) {
-      Element channel = (Element) channels.item(ch);
+    ms.sizeC = channels.size();
+    for (int ch=0; ch<channels.size(); ch++) {
+      String[] channel = channels.get(ch);
 
-      lutNames.add(channel.getAttribute("LUTName"));
-      String bytesInc = channel.getAttribute("BytesInc");
+      lutNames.add(channel[ImageLayout.LUT_NAME]);
+      String bytesInc = channel[ImageLayout.CHANNEL_BYTES_INC];
       long bytes =
         bytesInc == null || bytesInc.trim().isEmpty() ? 0 :
             Long.parseLong(bytesInc.trim());
@@ -2026,23 +2394,23 @@ public class LIFReader extends FormatReader {
 
     int extras = 1;
 
-    for (int dim=0; dim<dimensions.getLength(); dim++) {
-      Element dimension = (Element) dimensions.item(dim);
+    for (int dim=0; dim<dimensions.size(); dim++) {
+      String[] dimension = dimensions.get(dim);
 
-      String v = dimension.getAttribute("DimID");
+      String v = dimension[ImageLayout.DIM_ID];
       int id = v == null || v.trim().isEmpty() ? 0 : Integer.parseInt(v.trim());
-      v = dimension.getAttribute("NumberOfElements");
+      v = dimension[ImageLayout.NUMBER_OF_ELEMENTS];
       int len = v == null || v.trim().isEmpty() ? 0 : Integer.parseInt(v.trim());
-      v = dimension.getAttribute("BytesInc");
+      v = dimension[ImageLayout.DIMENSION_BYTES_INC];
       long nBytes = v == null || v.trim().isEmpty() ? 0 : Long.parseLong(v.trim());
-      v = dimension.getAttribute("Length");
+      v = dimension[ImageLayout.LENGTH];
       Double physicalLen;
       if (StringUtils.isBlank(v)) {
         physicalLen = 0d;
       } else {
         physicalLen = new Double(v.trim());
       }
-      String unit = dimension.getAttribute("Unit");
+      String unit = dimension[ImageLayout.UNIT];
 
       double offByOnePhysicalLen = 0d;
       if (len > 1) {
@@ -2199,24 +2567,6 @@ public class LIFReader extends FormatReader {
     else return nodes;
   }
 
-  private Element getImageDescription(Element root) {
-    return (Element) root.getElementsByTagName("ImageDescription").item(0);
-  }
-
-  private NodeList getChannelDescriptionNodes(Element root) {
-    Element imageDescription = getImageDescription(root);
-    Element channels =
-      (Element) imageDescription.getElementsByTagName("Channels").item(0);
-    return channels.getElementsByTagName("ChannelDescription");
-  }
-
-  private NodeList getDimensionDescriptionNodes(Element root) {
-    Element imageDescription = getImageDescription(root);
-    Element channels =
-      (Element) imageDescription.getElementsByTagName("Dimensions").item(0);
-    return channels.getElementsByTagName("DimensionDescription");
-  }
-
   private int getChannelIndex(Element filterSetting) {
     String data = filterSetting.getAttribute("data");
     if (data == null || data.equals("")) {
@@ -2227,7 +2577,134 @@ public class LIFReader extends FormatReader {
     return channel - 1;
   }
 
-  // -- Helper class --
+  // -- Helper classes --
+
+  /** Images found in the XML description. */
+  private static class XMLDescription {
+    /** Images that are not part of a processing history, in order. */
+    public final List<ImageLayout> images = new ArrayList<ImageLayout>();
+
+    /** Number of Image elements, including processing history. */
+    public int imageElements;
+  }
+
+  /**
+   * Name, channels, dimensions and memory block of one image, recorded from
+   * the XML event stream.
+   */
+  private static class ImageLayout {
+    // -- Constants --
+
+    /** Indexes of the recorded ChannelDescription attributes. */
+    public static final int LUT_NAME = 0;
+    public static final int CHANNEL_BYTES_INC = 1;
+
+    /** Indexes of the recorded DimensionDescription attributes. */
+    public static final int DIM_ID = 0;
+    public static final int NUMBER_OF_ELEMENTS = 1;
+    public static final int DIMENSION_BYTES_INC = 2;
+    public static final int LENGTH = 3;
+    public static final int UNIT = 4;
+
+    private static final String[] CHANNEL_ATTRIBUTES = {"LUTName", "BytesInc"};
+    private static final String[] DIMENSION_ATTRIBUTES =
+      {"DimID", "NumberOfElements", "BytesInc", "Length", "Unit"};
+
+    // -- Fields --
+
+    public final String name;
+
+    /** Index of the memory block holding the pixels. */
+    public final int offsetIndex;
+
+    /** Element tree of the image; null in pixels-only mode. */
+    public Element element;
+
+    /** Attributes of each channel and dimension description. */
+    public final List<String[]> channels = new ArrayList<String[]>();
+    public final List<String[]> dimensions = new ArrayList<String[]>();
+
+    /**
+     * Depth of the Image element and of its first ImageDescription, and
+     * of the first Channels and Dimensions elements within that, while
+     * they are open; -1 otherwise.
+     */
+    private final int depth;
+    private int descriptionDepth = -1;
+    private int channelsDepth = -1;
+    private int dimensionsDepth = -1;
+    private boolean hasDescription, hasChannels, hasDimensions;
+
+    // -- Constructor --
+
+    public ImageLayout(int depth, int offsetIndex, String name) {
+      this.depth = depth;
+      this.offsetIndex = offsetIndex;
+      this.name = name;
+    }
+
+    // -- ImageLayout API methods --
+
+    /** Records an element that starts within the Image element. */
+    public void startElement(XMLStreamReader reader, String element,
+      int elementDepth)
+    {
+      if (!hasDescription) {
+        if (element.equals("ImageDescription")) {
+          hasDescription = true;
+          descriptionDepth = elementDepth;
+        }
+        return;
+      }
+      if (descriptionDepth < 0) {
+        return;
+      }
+      if (element.equals("Channels") && !hasChannels) {
+        hasChannels = true;
+        channelsDepth = elementDepth;
+      }
+      else if (element.equals("Dimensions") && !hasDimensions) {
+        hasDimensions = true;
+        dimensionsDepth = elementDepth;
+      }
+      else if (element.equals("ChannelDescription") && channelsDepth >= 0) {
+        channels.add(getAttributes(reader, CHANNEL_ATTRIBUTES));
+      }
+      else if (element.equals("DimensionDescription") &&
+        dimensionsDepth >= 0)
+      {
+        dimensions.add(getAttributes(reader, DIMENSION_ATTRIBUTES));
+      }
+    }
+
+    /**
+     * Records the end of an element.
+     *
+     * @return true if the Image element itself has ended
+     */
+    public boolean endElement(int elementDepth) {
+      if (elementDepth == channelsDepth) {
+        channelsDepth = -1;
+      }
+      if (elementDepth == dimensionsDepth) {
+        dimensionsDepth = -1;
+      }
+      if (elementDepth == descriptionDepth) {
+        descriptionDepth = -1;
+      }
+      return elementDepth == depth;
+    }
+
+    private static String[] getAttributes(XMLStreamReader reader,
+      String[] names)
+    {
+      String[] values = new String[names.length];
+      for (int i=0; i<names.length; i++) {
+        values[i] = getAttribute(reader, names[i]);
+      }
+      return values;
+    }
+  }
 
   class ROI {
     // -- Constants --
@@ -27,7 +27,6 @@ package loci.formats.in;
 
 import java.io.BufferedReader;
 import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -65,6 +64,13 @@ public class LiFlimReader extends FormatReader {
 
   // -- Constants --
 
+  public static final String GZIP_INDEX_KEY = "liflim.gzip_index";
+  public static final boolean GZIP_INDEX_DEFAULT = true;
+
+  public static final String GZIP_INDEX_SIDECAR_KEY =
+    "liflim.gzip_index_sidecar";
+  public static final boolean GZIP_INDEX_SIDECAR_DEFAULT = false;
+
   // INI tables
   public static final String INFO_TABLE = "FLIMIMAGE: INFO";
   public static final String LAYOUT_TABLE = "FLIMIMAGE: LAYOUT";
@@ -104,6 +110,12 @@ public class LiFlimReader extends FormatReader {
   public static final String DATATYPE_REAL32 = "REAL32";
   public static final String DATATYPE_REAL64 = "REAL64";
 
+  /**
+   * Smallest number of uncompressed bytes between gzip checkpoints, so that
+   * files with very small planes do not store a history window per plane.
+   */
+  private static final int MIN_CHECKPOINT_SPAN = 64 * 1024;
+
   // -- Fields --
 
   /** Offset to start of pixel data. */
@@ -150,6 +162,15 @@ public class LiFlimReader extends FormatReader {
   /** Series number indicating position in gzip stream. */
   private int gzSeries;
 
+  /**
+   * Checkpoint index into the gzip-compressed pixel data; null until a
+   * plane is read out of order, unless the index sidecar is enabled.
+   */
+  private transient GZipIndex gzIndex;
+
+  /** Reusable buffer holding one uncompressed plane. */
+  private transient byte[] gzBuffer;
+
   // -- Constructor --
 
   /** Constructs a new LI-FLIM reader. */
@@ -158,6 +179,38 @@ public class LiFlimReader extends FormatReader {
     domains = new String[] {FormatTools.FLIM_DOMAIN};
   }
 
+  // -- LiFlimReader API methods --
+
+  /**
+   * Returns true if compressed pixel data should be indexed the first time
+   * a plane is read out of order, so that backward seeks inflate from the
+   * nearest checkpoint instead of from the start of the pixel data.  Planes
+   * read in order are always inflated as a stream.
+   */
+  public boolean useGZipIndex() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        GZIP_INDEX_KEY, GZIP_INDEX_DEFAULT);
+    }
+    return GZIP_INDEX_DEFAULT;
+  }
+
+  /**
+   * Returns true if the gzip checkpoint index should be saved next to the
+   * file and reused the next time the file is opened.  An existing sidecar
+   * is loaded on the first read; otherwise the index is built on the first
+   * read and saved.
+   */
+  public boolean useGZipIndexSidecar() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        GZIP_INDEX_SIDECAR_KEY, GZIP_INDEX_SIDECAR_DEFAULT);
+    }
+    return GZIP_INDEX_SIDECAR_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
   /**
@@ -172,18 +225,48 @@ public class LiFlimReader extends FormatReader {
     int bytesPerPlane = FormatTools.getPlaneSize(this);
 
     if (gzip) {
-      prepareGZipStream(no);
+      if (gzIndex == null &&
+        (useGZipIndexSidecar() || (useGZipIndex() && isBackwardSeek(no))))
+      {
+        gzIndex = openGZipIndex();
+        if (gz != null) {
+          gz.close();
+          gz = null;
+        }
+      }
+      if (gzBuffer == null || gzBuffer.length != bytesPerPlane) {
+        gzBuffer = new byte[bytesPerPlane];
+      }
 
-      // read compressed data
-      byte[] bytes = new byte[bytesPerPlane];
-      try {
-        gz.readFully(bytes);
+      int len;
+      if (gzIndex != null) {
+        // read compressed data, starting from the closest checkpoint
+        long offset = getUncompressedOffset(no);
+        len = (int) Math.max(0, Math.min(bytesPerPlane,
+          gzIndex.getUncompressedLength() - offset));
+        if (len > 0) {
+          gzIndex.read(offset, gzBuffer, 0, len);
+        }
       }
-      catch (EOFException e) {
-        LOGGER.debug("Could not read full plane", e);
+      else {
+        prepareGZipStream(no);
+
+        // read compressed data
+        len = 0;
+        while (len < bytesPerPlane) {
+          int n = gz.read(gzBuffer, len, bytesPerPlane - len);
+          if (n < 0) {
+            break;
+          }
+          len += n;
+        }
+      }
+      if (len < bytesPerPlane) {
+        LOGGER.debug("Could not read full plane");
+        Arrays.fill(gzBuffer, len, bytesPerPlane, (byte) 0);
       }
 
-      RandomAccessInputStream s = new RandomAccessInputStream(bytes);
+      RandomAccessInputStream s = new RandomAccessInputStream(gzBuffer);
       readPlane(s, x, y, w, h, buf);
       s.close();
     }
@@ -214,6 +297,9 @@ public class LiFlimReader extends FormatReader {
       gz = null;
       gzPos = 0;
       gzSeries = 0;
+      if (gzIndex != null) gzIndex.close();
+      gzIndex = null;
+      gzBuffer = null;
       version = null;
       compression = null;
       datatype = null;
@@ -509,9 +595,7 @@ public class LiFlimReader extends FormatReader {
   private void prepareGZipStream(int no) throws IOException {
     int bytesPerPlane = FormatTools.getPlaneSize(this);
 
-    if (gz == null || (no < gzPos && getSeries() == gzSeries) ||
-      gzSeries > getSeries())
-    {
+    if (gz == null || isBackwardSeek(no)) {
       // reinitialize gzip stream
       if (gz != null) gz.close();
 
@@ -532,17 +616,26 @@ public class LiFlimReader extends FormatReader {
       for (int i=gzSeries; i<originalSeries; i++) {
         setSeries(i);
         int nPlanes = getImageCount() - gzPos;
-        int nBytes = FormatTools.getPlaneSize(this) * nPlanes;
+        long nBytes = (long) FormatTools.getPlaneSize(this) * nPlanes;
         skip(gz, nBytes);
         gzPos = 0;
       }
       setSeries(originalSeries);
       gzSeries = getSeries();
     }
-    skip(gz, bytesPerPlane * (no - gzPos));
+    skip(gz, (long) bytesPerPlane * (no - gzPos));
     gzPos = no + 1;
   }
 
+  /**
+   * Returns true if reading the given plane of the current series from the
+   * gzip stream would require inflating it again from the start.
+   */
+  private boolean isBackwardSeek(int no) {
+    return gz != null &&
+      ((no < gzPos && getSeries() == gzSeries) || gzSeries > getSeries());
+  }
+
   private void skip(InputStream is, long num) throws IOException {
     long skipLeft = num;
     while (skipLeft > 0) {
@@ -552,6 +645,54 @@ public class LiFlimReader extends FormatReader {
     }
   }
 
+  /**
+   * Loads the gzip index for the pixel data from its sidecar, or decodes
+   * the compressed pixel data once, recording inflater checkpoints close to
+   * each plane boundary.  The index is saved to the sidecar only if the
+   * sidecar is enabled.
+   */
+  private GZipIndex openGZipIndex() throws IOException {
+    String path = Location.getMappedId(currentId);
+    String sidecar = path + GZipIndex.SIDECAR_SUFFIX;
+    boolean useSidecar = useGZipIndexSidecar();
+    if (useSidecar) {
+      GZipIndex index = GZipIndex.load(sidecar, path, dataOffset);
+      if (index != null) {
+        return index;
+      }
+    }
+
+    LOGGER.info("Indexing compressed pixel data");
+    int span = (int) Math.min(GZipIndex.DEFAULT_SPAN,
+      Math.max(MIN_CHECKPOINT_SPAN, FormatTools.getPlaneSize(this)));
+    GZipIndex index = GZipIndex.build(path, dataOffset, span);
+    if (useSidecar) {
+      try {
+        index.save(sidecar);
+      }
+      catch (IOException e) {
+        LOGGER.debug("Could not save gzip index to {}", sidecar, e);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the offset of the given plane in the current series within the
+   * uncompressed pixel data.  Planes from all series are stored
+   * consecutively, in series order.
+   */
+  private long getUncompressedOffset(int no) {
+    int thisSeries = getSeries();
+    long offset = 0;
+    for (int i=0; i<thisSeries; i++) {
+      setSeries(i);
+      offset += (long) getImageCount() * FormatTools.getPlaneSize(this);
+    }
+    setSeries(thisSeries);
+    return offset + (long) no * FormatTools.getPlaneSize(this);
+  }
+
   // -- Helper class --
 
   private class ROI {
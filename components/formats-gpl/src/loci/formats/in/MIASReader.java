@@ -32,6 +32,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.ArrayUtils;
 
@@ -68,6 +75,15 @@ import ome.units.UNITS;
  */
 public class MIASReader extends FormatReader {
 
+  // -- Constants --
+
+  /**
+   * Reader option giving the number of threads used to read the tiles of
+   * a mosaic plane; 1 reads tiles one at a time on the calling thread.
+   */
+  public static final String STITCH_THREADS_KEY = "mias.stitch_threads";
+  public static final int STITCH_THREADS_DEFAULT = 1;
+
   // -- Fields --
 
   /** TIFF files - indexed by well and file. */
@@ -103,6 +119,15 @@ public class MIASReader extends FormatReader {
   /** Cached tile buffer to avoid re-allocations when reading tiles. */
   private byte[] cachedTileBuffer;
 
+  /** Open TIFF files, reused across planes and tiles. */
+  private transient TiffReaderPool tiffPool;
+
+  /** Threads used to read mosaic tiles concurrently. */
+  private transient ExecutorService stitchExecutor;
+
+  /** Tile readers and buffers owned by each stitching thread. */
+  private transient TileWorker[] tileWorkers;
+
   // -- Constructor --
 
   /** Constructs a new MIAS reader. */
@@ -243,9 +268,13 @@ public class MIASReader extends FormatReader {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     if (tileRows == 1 && tileCols == 1) {
-      readers[getSeries()][no].setId(tiffs[getSeries()][no]);
-      readers[getSeries()][no].openBytes(0, buf, x, y, w, h);
-      readers[getSeries()][no].close();
+      getTiffPool().openBytes(tiffs[getSeries()][no], 0, buf, x, y, w, h);
+      return buf;
+    }
+
+    int threads = Math.min(getStitchThreads(), tileRows * tileCols);
+    if (threads > 1) {
+      openTiles(no, buf, new Region(x, y, w, h), threads);
       return buf;
     }
 
@@ -326,8 +355,11 @@ public class MIASReader extends FormatReader {
         }
       }
     }
+    if (tiffPool != null) tiffPool.close();
+    closeTileWorkers();
     if (!fileOnly) {
       readers = null;
+      tiffPool = null;
       tiffs = null;
       tileRows = tileCols = 0;
       resultFile = null;
@@ -1038,17 +1070,140 @@ public class MIASReader extends FormatReader {
 
     int tileIndex = (no * tileRows + row) * tileCols + col;
 
-    readers[well][tileIndex].setId(tiffs[well][tileIndex]);
     int bpp = FormatTools.getBytesPerPixel(getPixelType());
     int ch = getRGBChannelCount();
     int bufferSize = intersection.width * intersection.height * ch * bpp;
     if (cachedTileBuffer == null || cachedTileBuffer.length != bufferSize) {
       cachedTileBuffer = new byte[bufferSize];
     }
-    byte[] buf = readers[well][tileIndex].openBytes(0, cachedTileBuffer,
-      intersection.x, intersection.y, intersection.width, intersection.height);
-    readers[well][tileIndex].close();
-    return buf;
+    return getTiffPool().openBytes(tiffs[well][tileIndex], 0,
+      cachedTileBuffer, intersection.x, intersection.y, intersection.width,
+      intersection.height);
+  }
+
+  /**
+   * Stops the stitching threads, waiting for any tile reads still in
+   * progress, and then closes the files held open by each tile worker.
+   */
+  private void closeTileWorkers() throws IOException {
+    if (stitchExecutor != null) {
+      stitchExecutor.shutdownNow();
+      try {
+        stitchExecutor.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      stitchExecutor = null;
+    }
+    if (tileWorkers != null) {
+      for (TileWorker worker : tileWorkers) {
+        worker.pool.close();
+      }
+      tileWorkers = null;
+    }
+  }
+
+  /**
+   * Reads the tiles that intersect the given region on several threads and
+   * copies each into place.  Each tile position is always read by the same
+   * worker, so its files stay open in that worker's pool across calls.
+   */
+  private void openTiles(int no, byte[] buf, Region image, int threads)
+    throws FormatException, IOException
+  {
+    if (tileWorkers == null || tileWorkers.length != threads) {
+      closeTileWorkers();
+      int tilesPerWorker = (tileRows * tileCols + threads - 1) / threads;
+      tileWorkers = new TileWorker[threads];
+      for (int i=0; i<threads; i++) {
+        tileWorkers[i] = new TileWorker(new TiffReaderPool(
+          Math.max(TiffReaderPool.DEFAULT_CAPACITY, tilesPerWorker)));
+      }
+      stitchExecutor = Executors.newFixedThreadPool(threads,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "MIASReader-stitch");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+
+    int pixelBytes =
+      getRGBChannelCount() * FormatTools.getBytesPerPixel(getPixelType());
+    int outputRowLen = image.width * bpp[getSeries()];
+    for (TileWorker worker : tileWorkers) {
+      worker.reset(getSeries(), no, buf, image, pixelBytes, outputRowLen);
+    }
+    int busy = 0;
+    for (int row=0; row<tileRows; row++) {
+      for (int col=0; col<tileCols; col++) {
+        Region tile =
+          new Region(col * tileWidth, row * tileHeight, tileWidth, tileHeight);
+        if (tile.intersects(image)) {
+          TileWorker worker = tileWorkers[(row * tileCols + col) % threads];
+          if (worker.tiles.isEmpty()) {
+            busy++;
+          }
+          worker.tiles.add(new int[] {row, col});
+        }
+      }
+    }
+
+    if (busy <= 1) {
+      // nothing to overlap; avoid the thread hand-off
+      for (TileWorker worker : tileWorkers) {
+        if (!worker.tiles.isEmpty()) {
+          worker.call();
+        }
+      }
+      return;
+    }
+
+    List<Future<Object>> reads = new ArrayList<Future<Object>>();
+    for (TileWorker worker : tileWorkers) {
+      if (!worker.tiles.isEmpty()) {
+        reads.add(stitchExecutor.submit(worker));
+      }
+    }
+    Throwable failure = null;
+    for (Future<Object> read : reads) {
+      try {
+        read.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure = e;
+      }
+      catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure instanceof FormatException) {
+      throw (FormatException) failure;
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure != null) {
+      throw new IOException("Could not read mosaic tiles", failure);
+    }
+  }
+
+  private TiffReaderPool getTiffPool() {
+    if (tiffPool == null) {
+      // keep every tile of a mosaic plane open at once
+      tiffPool = new TiffReaderPool(
+        Math.max(TiffReaderPool.DEFAULT_CAPACITY, tileRows * tileCols));
+    }
+    return tiffPool;
   }
 
   /** Parse metadata from the Nugenesistemplate.txt file. */
@@ -1187,6 +1342,22 @@ public class MIASReader extends FormatReader {
 
   // -- MIASReader API methods --
 
+  /**
+   * Returns the number of threads used to read the tiles of a mosaic
+   * plane, as set by {@link #STITCH_THREADS_KEY}.
+   */
+  public int getStitchThreads() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer threads = ((DynamicMetadataOptions) options).getInteger(
+        STITCH_THREADS_KEY, STITCH_THREADS_DEFAULT);
+      if (threads != null) {
+        return Math.max(threads, 1);
+      }
+    }
+    return STITCH_THREADS_DEFAULT;
+  }
+
   /**
    * Populate the MaskPixels.BinData attribute for the Mask identified by the
    * given Image index, ROI index, and Shape index.
@@ -1272,11 +1443,71 @@ public class MIASReader extends FormatReader {
     this.parseMasks = parse;
   }
 
-  // -- Helper class --
+  // -- Helper classes --
 
   class AnalysisFile {
     public String filename;
     public int plate = -1, well = -1;
   }
 
+  /**
+   * Reads a list of tiles into one output plane.  Each worker has its own
+   * TIFF readers and tile buffer, and writes to a disjoint part of the
+   * output, so workers can run at the same time.
+   */
+  class TileWorker implements Callable<Object> {
+    final TiffReaderPool pool;
+    final List<int[]> tiles = new ArrayList<int[]>();
+    private byte[] tileBuffer;
+
+    private int series, no, pixelBytes, outputRowLen;
+    private byte[] buf;
+    private Region image;
+
+    TileWorker(TiffReaderPool pool) {
+      this.pool = pool;
+    }
+
+    void reset(int series, int no, byte[] buf, Region image, int pixelBytes,
+      int outputRowLen)
+    {
+      this.series = series;
+      this.no = no;
+      this.buf = buf;
+      this.image = image;
+      this.pixelBytes = pixelBytes;
+      this.outputRowLen = outputRowLen;
+      tiles.clear();
+    }
+
+    @Override
+    public Object call() throws FormatException, IOException {
+      for (int[] tile : tiles) {
+        int row = tile[0];
+        int col = tile[1];
+        Region intersection = new Region(col * tileWidth, row * tileHeight,
+          tileWidth, tileHeight).intersection(image);
+
+        int rowLen = intersection.width * pixelBytes;
+        int size = rowLen * intersection.height;
+        if (tileBuffer == null || tileBuffer.length != size) {
+          tileBuffer = new byte[size];
+        }
+        int tileIndex = (no * tileRows + row) * tileCols + col;
+        pool.openBytes(tiffs[series][tileIndex], 0, tileBuffer,
+          intersection.x % tileWidth, intersection.y % tileHeight,
+          intersection.width, intersection.height);
+
+        int outputOffset = (intersection.y - image.y) * outputRowLen +
+          (intersection.x - image.x) * pixelBytes;
+        for (int trow=0; trow<intersection.height; trow++) {
+          System.arraycopy(tileBuffer, trow * rowLen, buf, outputOffset,
+            rowLen);
+          outputOffset += outputRowLen;
+        }
+      }
+      return null;
+    }
+  }
+
 }
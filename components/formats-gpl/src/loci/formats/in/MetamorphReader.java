@@ -102,6 +102,10 @@ public class MetamorphReader extends BaseTiffReader {
       "scan\\s+([a-z])(\\d+)", Pattern.CASE_INSENSITIVE
   );
 
+  /** Reader option giving the maximum number of STK files kept open. */
+  public static final String STK_POOL_SIZE_KEY = "metamorph.stk_pool_size";
+  public static final int STK_POOL_SIZE_DEFAULT = 128;
+
   // IFD tag numbers of important fields
   private static final int METAMORPH_ID = 33628;
   private static final int UIC1TAG = METAMORPH_ID;
@@ -141,7 +145,8 @@ public class MetamorphReader extends BaseTiffReader {
 
   private int mmPlanes; //number of metamorph planes
 
-  private MetamorphReader[][] stkReaders;
+  /** Open STK files of a .nd dataset, least recently used first. */
+  private transient TiffReaderPool stkPool;
 
   /** List of STK files in the dataset. */
   private String[][] stks;
@@ -153,8 +158,6 @@ public class MetamorphReader extends BaseTiffReader {
 
   private boolean bizarreMultichannelAcquisition = false;
 
-  private int openFiles = 0;
-
   private boolean hasStagePositions = false;
   private boolean hasChipOffsets = false;
   private boolean hasAbsoluteZ = false;
@@ -172,6 +175,47 @@ public class MetamorphReader extends BaseTiffReader {
       "optional .nd file";
   }
 
+  // -- MetamorphReader API methods --
+
+  /**
+   * Returns the maximum number of STK files of a .nd dataset that are kept
+   * open at once, as set by {@link #STK_POOL_SIZE_KEY}.
+   */
+  public int getSTKPoolSize() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer size = ((DynamicMetadataOptions) options).getInteger(
+        STK_POOL_SIZE_KEY, STK_POOL_SIZE_DEFAULT);
+      if (size != null && size > 0) {
+        return size;
+      }
+    }
+    return STK_POOL_SIZE_DEFAULT;
+  }
+
+  /** Returns the number of STK files opened since the dataset was opened. */
+  public long getSTKOpenCount() {
+    return stkPool == null ? 0 : stkPool.getMissCount();
+  }
+
+  /**
+   * Returns the number of STK files closed to stay within the pool size
+   * since the dataset was opened.
+   */
+  public long getSTKCloseCount() {
+    return stkPool == null ? 0 : stkPool.getEvictionCount();
+  }
+
+  /** Returns the number of plane reads served by an already open STK file. */
+  public long getSTKHitCount() {
+    return stkPool == null ? 0 : stkPool.getHitCount();
+  }
+
+  /** Returns the number of STK files currently open. */
+  public int getOpenSTKCount() {
+    return stkPool == null ? 0 : stkPool.getOpenCount();
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#isThisType(String, boolean) */
@@ -286,31 +330,27 @@ public class MetamorphReader extends BaseTiffReader {
     String file = stks[getSeries()][ndx];
     if (file == null) return buf;
 
-    // the original file is a .nd file, so we need to construct a new reader
-    // for the constituent STK files
-    stkReaders[getSeries()][ndx].setMetadataOptions(
-        new DefaultMetadataOptions(MetadataLevel.MINIMUM));
+    // the original file is a .nd file, so the pixels are read by a reader
+    // for the constituent STK file
+    if (stkPool == null) {
+      stkPool = new TiffReaderPool(getSTKPoolSize()) {
+        @Override
+        protected MinimalTiffReader createReader() {
+          MetamorphReader reader = new MetamorphReader();
+          reader.setCanLookForND(false);
+          reader.setMetadataOptions(
+            new DefaultMetadataOptions(MetadataLevel.MINIMUM));
+          return reader;
+        }
+      };
+    }
     int plane = stks[getSeries()].length == 1 ? no : coords[0];
-    try {
-      if (!file.equals(stkReaders[getSeries()][ndx].getCurrentFile())) {
-        openFiles++;
-      }
-      stkReaders[getSeries()][ndx].setId(file);
-
-      if (bizarreMultichannelAcquisition) {
-        int realX = getZCTCoords(no)[1] == 0 ? x : x + getSizeX();
-        stkReaders[getSeries()][ndx].openBytes(plane, buf, realX, y, w, h);
-      }
-      else {
-        stkReaders[getSeries()][ndx].openBytes(plane, buf, x, y, w, h);
-      }
+    if (bizarreMultichannelAcquisition) {
+      int realX = getZCTCoords(no)[1] == 0 ? x : x + getSizeX();
+      stkPool.openBytes(file, plane, buf, realX, y, w, h);
     }
-    finally {
-      int count = stkReaders[getSeries()][ndx].getImageCount();
-      if (plane == count - 1 || openFiles > 128) {
-        stkReaders[getSeries()][ndx].close();
-        openFiles--;
-      }
+    else {
+      stkPool.openBytes(file, plane, buf, x, y, w, h);
     }
 
     return buf;
@@ -320,14 +360,8 @@ public class MetamorphReader extends BaseTiffReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
-    if (stkReaders != null) {
-      for (MetamorphReader[] s : stkReaders) {
-        if (s != null) {
-          for (MetamorphReader reader : s) {
-            if (reader != null) reader.close(fileOnly);
-          }
-        }
-      }
+    if (stkPool != null) {
+      stkPool.close();
     }
     if (!fileOnly) {
       imageName = imageCreationDate = null;
@@ -347,10 +381,9 @@ public class MetamorphReader extends BaseTiffReader {
       sizeX = sizeY = null;
       tempZ = 0d;
       validZ = false;
-      stkReaders = null;
+      stkPool = null;
       gain = null;
       bizarreMultichannelAcquisition = false;
-      openFiles = 0;
       hasStagePositions = false;
       hasChipOffsets = false;
       hasAbsoluteZ = false;
@@ -719,26 +752,6 @@ public class MetamorphReader extends BaseTiffReader {
       }
     }
 
-    if (stks == null) {
-      stkReaders = new MetamorphReader[1][1];
-      stkReaders[0][0] = new MetamorphReader();
-      stkReaders[0][0].setCanLookForND(false);
-    }
-    else {
-      stkReaders = new MetamorphReader[stks.length][];
-      for (int i=0; i<stks.length; i++) {
-        stkReaders[i] = new MetamorphReader[stks[i].length];
-        for (int j=0; j<stkReaders[i].length; j++) {
-          stkReaders[i][j] = new MetamorphReader();
-          stkReaders[i][j].setCanLookForND(false);
-          if (j > 0) {
-            stkReaders[i][j].setMetadataOptions(
-              new DefaultMetadataOptions(MetadataLevel.MINIMUM));
-          }
-        }
-      }
-    }
-
     // check stage labels for plate data
 
     int rows = 0;
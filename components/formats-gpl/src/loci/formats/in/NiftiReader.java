@@ -51,6 +51,13 @@ public class NiftiReader extends FormatReader {
 
   // -- Constants --
 
+  public static final String GZIP_INDEX_KEY = "nifti.gzip_index";
+  public static final boolean GZIP_INDEX_DEFAULT = true;
+
+  public static final String GZIP_INDEX_SIDECAR_KEY =
+    "nifti.gzip_index_sidecar";
+  public static final boolean GZIP_INDEX_SIDECAR_DEFAULT = false;
+
   /** Code for meters. */
   private static final int UNITS_METER = 1;
 
@@ -72,6 +79,10 @@ public class NiftiReader extends FormatReader {
   private transient RandomAccessInputStream pixelFile;
 
   private String pixelsFilename;
+
+  /** Random access index into a gzip-compressed .nii.gz file. */
+  private transient GZipIndex gzipIndex;
+  private transient byte[] gzipBuffer;
   private short nDimensions;
   private String description;
   private double voxelWidth, voxelHeight, sliceThickness, deltaT;
@@ -91,6 +102,38 @@ public class NiftiReader extends FormatReader {
       " .img file and a similarly-named .hdr file";
   }
 
+  // -- NiftiReader API methods --
+
+  /**
+   * Returns true if a .nii.gz file should be indexed the first time its
+   * pixels are read out of order, so that backward seeks inflate from the
+   * nearest checkpoint instead of from the start of the file.  Planes read
+   * in order are always streamed without building an index.
+   */
+  public boolean useGZipIndex() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        GZIP_INDEX_KEY, GZIP_INDEX_DEFAULT);
+    }
+    return GZIP_INDEX_DEFAULT;
+  }
+
+  /**
+   * Returns true if the gzip index of a .nii.gz file should be saved next
+   * to the file and reused the next time the file is opened.  An existing
+   * sidecar is loaded on the first read; otherwise the index is built on
+   * the first read and saved.
+   */
+  public boolean useGZipIndexSidecar() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        GZIP_INDEX_SIDECAR_KEY, GZIP_INDEX_SIDECAR_DEFAULT);
+    }
+    return GZIP_INDEX_SIDECAR_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#isSingleFile(String) */
@@ -148,9 +191,40 @@ public class NiftiReader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
-    pixelFile.seek(0);
     long planeSize = FormatTools.getPlaneSize(this);
-    pixelFile.seek(pixelOffset + no * planeSize);
+    long offset = pixelOffset + no * planeSize;
+
+    if (isGZipped()) {
+      // going backwards in the stream would inflate it again from the start
+      if (gzipIndex == null && (useGZipIndexSidecar() ||
+        (useGZipIndex() && offset < pixelFile.getFilePointer())))
+      {
+        gzipIndex = openGZipIndex();
+      }
+      if (gzipIndex != null) {
+        // inflate only the requested rows, starting from the nearest
+        // checkpoint instead of from the beginning of the file
+        int rowSize = (int) (planeSize / getSizeY());
+        int len = rowSize * h;
+        if (gzipBuffer == null || gzipBuffer.length != len) {
+          gzipBuffer = new byte[len];
+        }
+        gzipIndex.read(offset + (long) y * rowSize, gzipBuffer, 0, len);
+        RandomAccessInputStream rows =
+          new RandomAccessInputStream(gzipBuffer);
+        try {
+          readPlane(rows, x, 0, w, h, buf);
+        }
+        finally {
+          rows.close();
+        }
+        return buf;
+      }
+    }
+    else {
+      pixelFile.seek(0);
+    }
+    pixelFile.seek(offset);
     readPlane(pixelFile, x, y, w, h, buf);
 
     return buf;
@@ -178,9 +252,12 @@ public class NiftiReader extends FormatReader {
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
     if (pixelFile != null) pixelFile.close();
+    if (gzipIndex != null) gzipIndex.close();
     if (!fileOnly) {
       pixelOffset = 0;
       pixelFile = null;
+      gzipIndex = null;
+      gzipBuffer = null;
       pixelsFilename = null;
       nDimensions = 0;
       description = null;
@@ -302,6 +379,40 @@ public class NiftiReader extends FormatReader {
 
   // -- Helper methods --
 
+  private boolean isGZipped() {
+    return pixelsFilename != null &&
+      pixelsFilename.toLowerCase().endsWith(".gz");
+  }
+
+  /**
+   * Loads the gzip index for the pixels file from its sidecar, or builds it
+   * with a single pass over the compressed data.
+   */
+  private GZipIndex openGZipIndex() throws IOException {
+    String path = new Location(pixelsFilename).getAbsolutePath();
+    String sidecar = path + GZipIndex.SIDECAR_SUFFIX;
+    boolean useSidecar = useGZipIndexSidecar();
+
+    if (useSidecar) {
+      GZipIndex index = GZipIndex.load(sidecar, path, 0);
+      if (index != null) {
+        return index;
+      }
+    }
+
+    LOGGER.info("Indexing compressed pixel data");
+    GZipIndex index = GZipIndex.build(path, 0, GZipIndex.DEFAULT_SPAN);
+    if (useSidecar) {
+      try {
+        index.save(sidecar);
+      }
+      catch (IOException e) {
+        LOGGER.debug("Could not save gzip index to {}", sidecar, e);
+      }
+    }
+    return index;
+  }
+
   private void populatePixelType(int dataType) throws FormatException {
     CoreMetadata m = core.get(0);
 
@@ -67,7 +67,11 @@ public class OperettaReader extends FormatReader {
   // -- Fields --
 
   private Plane[][] planes;
-  private MinimalTiffReader reader;
+  private transient TiffReaderPool tiffPool;
+  private transient FileExistenceCache fileCache;
+  private transient PlanePrefetcher prefetcher;
+  private transient TiffReaderPool prefetchPool;
+  private int prefetchDepth;
 
   // -- Constructor --
 
@@ -80,6 +84,18 @@ public class OperettaReader extends FormatReader {
       "Directory with XML file and one .tif/.tiff file per plane";
   }
 
+  // -- OperettaReader API methods --
+
+  /**
+   * Discards the cached file existence checks, so that files written or
+   * removed since the dataset was opened are seen by later calls.
+   */
+  public void refreshFileCache() {
+    if (fileCache != null) {
+      fileCache.refresh();
+    }
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#getRequiredDirectories(String[]) */
@@ -139,9 +155,7 @@ public class OperettaReader extends FormatReader {
     ArrayList<String> files = new ArrayList<String>();
     files.add(currentId);
     for (Plane p : planes[getSeries()]) {
-      if (p != null && p.filename != null &&
-        new Location(p.filename).exists())
-      {
+      if (p != null && getFileCache().exists(p.filename)) {
         files.add(p.filename);
       }
     }
@@ -153,11 +167,21 @@ public class OperettaReader extends FormatReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
+    if (tiffPool != null) {
+      tiffPool.close();
+    }
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+    if (prefetchPool != null) {
+      prefetchPool.close();
+      prefetchPool = null;
+    }
     if (!fileOnly) {
-      if (reader != null) {
-        reader.close();
-      }
-      reader = null;
+      tiffPool = null;
+      fileCache = null;
+      prefetchDepth = 0;
       planes = null;
     }
   }
@@ -171,17 +195,26 @@ public class OperettaReader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
+    if (prefetchDepth > 0 && !isRGB()) {
+      if (prefetcher == null) {
+        createPrefetcher();
+      }
+      if (prefetcher.openBytes(getSeries(), no, buf, x, y, w, h, getSizeX(),
+        FormatTools.getBytesPerPixel(getPixelType())))
+      {
+        return buf;
+      }
+    }
+
     Arrays.fill(buf, (byte) 0);
     if (getSeries() < planes.length && no < planes[getSeries()].length) {
       Plane p = planes[getSeries()][no];
 
-      if (p != null && p.filename != null && new Location(p.filename).exists()) {
-        if (reader == null) {
-          reader = new MinimalTiffReader();
+      if (p != null && getFileCache().exists(p.filename)) {
+        if (tiffPool == null) {
+          tiffPool = new TiffReaderPool();
         }
-        reader.setId(p.filename);
-        reader.openBytes(0, buf, x, y, w, h);
-        reader.close();
+        tiffPool.openBytes(p.filename, 0, buf, x, y, w, h);
       }
     }
 
@@ -292,7 +325,15 @@ public class OperettaReader extends FormatReader {
       }
     }
 
-    reader = new MinimalTiffReader();
+    tiffPool = new TiffReaderPool();
+
+    // list each image directory once, instead of checking each file
+    fileCache =
+      new FileExistenceCache(FileExistenceCache.isEnabled(getMetadataOptions()));
+    for (Plane p : planeList) {
+      getFileCache().exists(p.filename);
+    }
+    prefetchDepth = PlanePrefetcher.getDepth(getMetadataOptions());
 
     for (int i=0; i<seriesCount; i++) {
       CoreMetadata ms = new CoreMetadata();
@@ -324,7 +365,7 @@ public class OperettaReader extends FormatReader {
         ms.sizeX = planes[i][planeIndex].x;
         ms.sizeY = planes[i][planeIndex].y;
         String filename = planes[i][planeIndex].filename;
-        while ((filename == null || !new Location(filename).exists()) &&
+        while (!getFileCache().exists(filename) &&
           planeIndex < planes[i].length - 1)
         {
           LOGGER.debug("Missing TIFF file: {}", filename);
@@ -332,7 +373,7 @@ public class OperettaReader extends FormatReader {
           filename = planes[i][planeIndex].filename;
         }
 
-        if (filename != null && new Location(filename).exists()) {
+        if (getFileCache().exists(filename)) {
           RandomAccessInputStream s =
             new RandomAccessInputStream(filename, 16);
           TiffParser parser = new TiffParser(s);
@@ -462,6 +503,44 @@ public class OperettaReader extends FormatReader {
     }
   }
 
+  // -- Helper methods --
+
+  /**
+   * Returns the file existence cache, creating it if the reader was
+   * restored without one.
+   */
+  private FileExistenceCache getFileCache() {
+    if (fileCache == null) {
+      fileCache = new FileExistenceCache(
+        FileExistenceCache.isEnabled(getMetadataOptions()));
+    }
+    return fileCache;
+  }
+
+  /**
+   * Starts reading planes ahead in series order.  Only used for non-RGB
+   * data, so that every plane is a single sample per pixel.
+   */
+  private void createPrefetcher() {
+    int[] planeCounts = new int[planes.length];
+    for (int i=0; i<planeCounts.length; i++) {
+      planeCounts[i] = planes[i].length;
+    }
+    prefetchPool = new TiffReaderPool();
+    prefetcher = new PlanePrefetcher(new PlanePrefetcher.PlaneLoader() {
+      @Override
+      public byte[] loadPlane(int series, int no)
+        throws FormatException, IOException
+      {
+        Plane p = planes[series][no];
+        if (p == null || p.filename == null) {
+          return null;
+        }
+        return prefetchPool.get(p.filename).openBytes(0);
+      }
+    }, planeCounts, prefetchDepth);
+  }
+
   // -- Helper classes --
 
   class OperettaHandler extends BaseHandler {
@@ -73,6 +73,12 @@ public class PCIReader extends FormatReader {
   private int binning;
   private List<Double> uniqueZ;
 
+  /**
+   * First IFD of each embedded TIFF stream, keyed by stream name; streams
+   * holding raw pixel data map to null.
+   */
+  private transient HashMap<String, IFD> firstIFDs;
+
   // -- Constructor --
 
   /** Constructs a new SimplePCI reader. */
@@ -102,14 +108,10 @@ public class PCIReader extends FormatReader {
        initPOIService();
       }
 
-      RandomAccessInputStream s = poi.getDocumentStream(file);
-      TiffParser tp = new TiffParser(s);
-      if (tp.isValidHeader()) {
-        IFD ifd = tp.getFirstIFD();
-        s.close();
+      IFD ifd = getFirstIFD(file);
+      if (ifd != null) {
         return (int) ifd.getTileWidth();
       }
-      s.close();
     }
     catch (FormatException e) {
       LOGGER.debug("Could not retrieve tile width", e);
@@ -131,14 +133,10 @@ public class PCIReader extends FormatReader {
         initPOIService();
       }
 
-      RandomAccessInputStream s = poi.getDocumentStream(file);
-      TiffParser tp = new TiffParser(s);
-      if (tp.isValidHeader()) {
-        IFD ifd = tp.getFirstIFD();
-        s.close();
+      IFD ifd = getFirstIFD(file);
+      if (ifd != null) {
         return (int) ifd.getTileLength();
       }
-      s.close();
     }
     catch (FormatException e) {
       LOGGER.debug("Could not retrieve tile height", e);
@@ -164,13 +162,13 @@ public class PCIReader extends FormatReader {
 
     String file = imageFiles.get(no);
     RandomAccessInputStream s = poi.getDocumentStream(file);
-    TiffParser tp = new TiffParser(s);
 
     // can be raw pixel data or an embedded TIFF file
 
-    if (tp.isValidHeader()) {
-      IFD ifd = tp.getFirstIFD();
-      tp.getSamples(ifd, buf, x, y, w, h);
+    IFD ifd = getFirstIFD(file, s);
+    if (ifd != null) {
+      s.order(ifd.isLittleEndian());
+      new TiffParser(s).getSamples(ifd, buf, x, y, w, h);
     }
     else {
       s.seek(0);
@@ -194,6 +192,7 @@ public class PCIReader extends FormatReader {
       creationDate = null;
       uniqueZ = null;
     }
+    firstIFDs = null;
   }
 
   // -- Internal FormatReader API methods --
@@ -447,6 +446,43 @@ public class PCIReader extends FormatReader {
 
   // -- Helper methods --
 
+  /**
+   * Returns the first IFD of the TIFF file embedded in the given stream, or
+   * null if the stream holds raw pixel data.
+   */
+  private IFD getFirstIFD(String file) throws FormatException, IOException {
+    if (firstIFDs != null && firstIFDs.containsKey(file)) {
+      return firstIFDs.get(file);
+    }
+    RandomAccessInputStream s = poi.getDocumentStream(file);
+    try {
+      return getFirstIFD(file, s);
+    }
+    finally {
+      s.close();
+    }
+  }
+
+  /**
+   * Returns the first IFD of the TIFF file embedded in the given stream,
+   * parsing and caching it on first use, or null if the stream holds raw
+   * pixel data.
+   */
+  private IFD getFirstIFD(String file, RandomAccessInputStream s)
+    throws FormatException, IOException
+  {
+    if (firstIFDs == null) {
+      firstIFDs = new HashMap<String, IFD>();
+    }
+    else if (firstIFDs.containsKey(file)) {
+      return firstIFDs.get(file);
+    }
+    TiffParser tp = new TiffParser(s);
+    IFD ifd = tp.isValidHeader() ? tp.getFirstIFD() : null;
+    firstIFDs.put(file, ifd);
+    return ifd;
+  }
+
   private void initPOIService() throws FormatException, IOException {
    try {
       ServiceFactory factory = new ServiceFactory();
@@ -456,6 +492,11 @@ public class PCIReader extends FormatReader {
       throw new FormatException("POI library not found", de);
     }
 
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      poi.setIndexSidecarEnabled(((DynamicMetadataOptions) options).getBoolean(
+        POIService.INDEX_SIDECAR_KEY, POIService.INDEX_SIDECAR_DEFAULT));
+    }
     poi.initialize(Location.getMappedId(getCurrentFile()));
   }
 
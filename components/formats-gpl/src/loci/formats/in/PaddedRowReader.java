@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.IOException;
+
+import loci.common.RandomAccessInputStream;
+
+/**
+ * PaddedRowReader reads a region of a plane whose rows are followed by
+ * padding bytes.  Rows are read in blocks spanning as many rows as fit in
+ * a reusable buffer, so a padded plane needs one read per block instead of
+ * several calls per row.
+ *
+ * Interleaved 3 channel data can optionally have its first and last
+ * channels swapped while copying, which converts BGR to RGB without a
+ * second pass over the plane.
+ */
+public class PaddedRowReader {
+
+  // -- Constants --
+
+  /** Default maximum size in bytes of the row buffer. */
+  public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  // -- Fields --
+
+  private final int maxBufferSize;
+  private byte[] rowBuffer;
+
+  // -- Constructors --
+
+  /** Constructs a reader with the default maximum buffer size. */
+  public PaddedRowReader() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructs a reader whose row buffer is at most
+   * <code>maxBufferSize</code> bytes, or a single row if that is larger.
+   */
+  public PaddedRowReader(int maxBufferSize) {
+    this.maxBufferSize = maxBufferSize;
+  }
+
+  // -- PaddedRowReader API methods --
+
+  /**
+   * Reads <code>h</code> rows of <code>len</code> bytes, the first starting
+   * at <code>start</code> and each following one <code>rowStride</code>
+   * bytes later, into consecutive rows of <code>buf</code>.  If the stream
+   * ends early, only the rows (or whole pixels) that are present are
+   * copied and the rest of <code>buf</code> is left as it is.
+   *
+   * @param swapBytes if positive, the number of bytes per sample of
+   *   interleaved 3 channel data whose first and last channels should be
+   *   swapped while copying; 0 to copy the rows unchanged
+   */
+  public void read(RandomAccessInputStream in, long start, int rowStride,
+    byte[] buf, int len, int h, int swapBytes) throws IOException
+  {
+    long available = in.length() - start;
+    int rowsPerBlock = Math.max(1, maxBufferSize / rowStride);
+    for (int row=0; row<h; row+=rowsPerBlock) {
+      int rows = Math.min(rowsPerBlock, h - row);
+      long blockOffset = (long) row * rowStride;
+      if (blockOffset >= available) {
+        break;
+      }
+      int blockSize = (int)
+        Math.min((long) (rows - 1) * rowStride + len, available - blockOffset);
+      if (rowBuffer == null || rowBuffer.length < blockSize) {
+        rowBuffer = new byte[blockSize];
+      }
+      in.seek(start + blockOffset);
+      in.readFully(rowBuffer, 0, blockSize);
+
+      for (int r=0; r<rows; r++) {
+        int src = r * rowStride;
+        int dest = (row + r) * len;
+        int n = Math.min(len, blockSize - src);
+        if (n <= 0) {
+          break;
+        }
+        if (swapBytes > 0) {
+          copyBGR(rowBuffer, src, buf, dest, n, swapBytes);
+        }
+        else {
+          System.arraycopy(rowBuffer, src, buf, dest, n);
+        }
+      }
+    }
+  }
+
+  /** Releases the row buffer. */
+  public void clear() {
+    rowBuffer = null;
+  }
+
+  // -- Utility methods --
+
+  /**
+   * Copies interleaved 3 channel pixels, swapping the first and last
+   * channel of each pixel.  Trailing bytes that do not make up a whole
+   * pixel are not copied.
+   */
+  public static void copyBGR(byte[] src, int srcOffset, byte[] dest,
+    int destOffset, int len, int bytes)
+  {
+    int pixel = bytes * 3;
+    int end = srcOffset + len - len % pixel;
+    for (int s=srcOffset, d=destOffset; s<end; s+=pixel, d+=pixel) {
+      System.arraycopy(src, s + 2 * bytes, dest, d, bytes);
+      System.arraycopy(src, s + bytes, dest, d + bytes, bytes);
+      System.arraycopy(src, s, dest, d + 2 * bytes, bytes);
+    }
+  }
+
+}
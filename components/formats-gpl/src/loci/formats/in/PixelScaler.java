@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import loci.common.DataTools;
+
+/**
+ * PixelScaler multiplies integer pixels by a constant factor in place,
+ * optionally widening them, as needed for Flex planes whose stored values
+ * must be scaled by a per-plane factor.
+ */
+public final class PixelScaler {
+
+  // -- Constructor --
+
+  private PixelScaler() { }
+
+  // -- Utility methods --
+
+  /**
+   * Multiplies each of the first <code>num</code> pixels by the given
+   * factor, widening them from <code>nBytes</code> to <code>bpp</code>
+   * bytes in place.  Pixels are processed from the end of the buffer so
+   * that widened values never overwrite unread input.
+   */
+  public static void expand(byte[] buf, int num, int nBytes, int bpp,
+    double factor, boolean little)
+  {
+    if (nBytes == 1 && bpp == 2) {
+      int[] lut = new int[256];
+      for (int v=0; v<lut.length; v++) {
+        lut[v] = (int) (v * factor);
+      }
+      int lo = little ? 0 : 1;
+      int hi = 1 - lo;
+      for (int i=num-1; i>=0; i--) {
+        int q = lut[buf[i] & 0xff];
+        int o = i << 1;
+        buf[o + lo] = (byte) q;
+        buf[o + hi] = (byte) (q >>> 8);
+      }
+    }
+    else if (nBytes == 2 && (bpp == 2 || bpp == 4)) {
+      int in0 = little ? 0 : 1;
+      int in1 = 1 - in0;
+      for (int i=num-1; i>=0; i--) {
+        int p = i << 1;
+        int q = (buf[p + in0] & 0xff) | ((buf[p + in1] & 0xff) << 8);
+        q = (int) (q * factor);
+        int o = i * bpp;
+        if (little) {
+          for (int b=0; b<bpp; b++) {
+            buf[o + b] = (byte) (q >>> (b << 3));
+          }
+        }
+        else {
+          for (int b=0; b<bpp; b++) {
+            buf[o + bpp - 1 - b] = (byte) (q >>> (b << 3));
+          }
+        }
+      }
+    }
+    else {
+      for (int i=num-1; i>=0; i--) {
+        int q = nBytes == 1 ? buf[i] & 0xff :
+          DataTools.bytesToInt(buf, i * nBytes, nBytes, little);
+        q = (int) (q * factor);
+        DataTools.unpackBytes(q, buf, i * bpp, bpp, little);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * PlaneCache keeps decoded planes in memory, keyed by a caller-defined
+ * plane number, up to a fixed number of bytes.  The least recently used
+ * planes are evicted first, and an evicted buffer of the right size is
+ * handed back for the next plane to avoid reallocating it.
+ *
+ * It is meant for readers that decode a multi-channel plane as a whole but
+ * return one channel at a time, so that reading every channel of a plane
+ * decodes it only once.  Caches are not thread-safe.
+ */
+public class PlaneCache {
+
+  // -- Fields --
+
+  private final long maxBytes;
+
+  /** Cached planes, least recently used first. */
+  private final LinkedHashMap<Long, byte[]> planes =
+    new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+
+  private long size;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a cache holding up to <code>maxBytes</code> bytes of planes.
+   * A cache with a size of 0 never holds a plane.
+   */
+  public PlaneCache(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  // -- PlaneCache API methods --
+
+  /** Returns true if a plane of the given size can be cached. */
+  public boolean fits(long planeSize) {
+    return planeSize > 0 && planeSize <= maxBytes;
+  }
+
+  /** Returns the cached plane with the given key, or null. */
+  public byte[] get(long key) {
+    return planes.get(key);
+  }
+
+  /**
+   * Evicts the least recently used planes until a plane of the given size
+   * fits, and returns a buffer for it.  The buffer is not cached until it
+   * is passed to {@link #put(long, byte[])}.
+   */
+  public byte[] allocate(int planeSize) {
+    byte[] samples = null;
+    Iterator<byte[]> eldest = planes.values().iterator();
+    while (eldest.hasNext() && size + planeSize > maxBytes) {
+      byte[] evicted = eldest.next();
+      eldest.remove();
+      size -= evicted.length;
+      if (evicted.length == planeSize) {
+        samples = evicted;
+      }
+    }
+    return samples == null ? new byte[planeSize] : samples;
+  }
+
+  /** Caches the given plane, which should come from {@link #allocate}. */
+  public void put(long key, byte[] samples) {
+    byte[] old = planes.put(key, samples);
+    if (old != null) {
+      size -= old.length;
+    }
+    size += samples.length;
+  }
+
+  /** Returns the number of bytes of cached planes. */
+  public long getSize() {
+    return size;
+  }
+
+  /** Removes all cached planes. */
+  public void clear() {
+    planes.clear();
+    size = 0;
+  }
+
+  // -- Utility methods --
+
+  /**
+   * Copies a region of one channel out of a plane whose channels are
+   * stored one after another.
+   *
+   * @param samples the whole plane, channel by channel
+   * @param buf the destination for the region, row by row
+   * @param channel the index of the channel to copy
+   * @param sizeX the width of the plane in pixels
+   * @param sizeY the height of the plane in pixels
+   * @param bpp the number of bytes per pixel
+   */
+  public static void copyChannel(byte[] samples, byte[] buf, int channel,
+    int sizeX, int sizeY, int bpp, int x, int y, int w, int h)
+  {
+    int rowLen = w * bpp;
+    int channelOffset = channel * sizeX * sizeY * bpp;
+    for (int row=0; row<h; row++) {
+      int src = channelOffset + ((y + row) * sizeX + x) * bpp;
+      System.arraycopy(samples, src, buf, row * rowLen, rowLen);
+    }
+  }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import loci.formats.FormatException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PlanePrefetcher reads planes ahead of the caller on a background thread,
+ * for multi-file readers whose planes are normally requested in a known
+ * order (series after series, plane after plane).
+ *
+ * Each call to {@link #openBytes} schedules the next <code>depth</code>
+ * planes after the requested one; at most <code>depth</code> planes are
+ * buffered, and planes that fall out of the window are discarded.  A
+ * requested plane that is already being read is waited for rather than
+ * read twice.
+ *
+ * The {@link PlaneLoader} is only ever called from the single prefetch
+ * thread, so it may keep its own (non thread-safe) readers, but must not
+ * touch mutable state of the reader that owns this prefetcher.
+ */
+public class PlanePrefetcher implements Closeable {
+
+  // -- Constants --
+
+  /**
+   * Reader option giving the number of planes to read ahead; 0 (the
+   * default) disables prefetching.
+   */
+  public static final String DEPTH_KEY = "hcs.prefetch_planes";
+  public static final int DEPTH_DEFAULT = 0;
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(PlanePrefetcher.class);
+
+  // -- Fields --
+
+  private final PlaneLoader loader;
+  private final int[] planeCounts;
+  private final int depth;
+  private final ExecutorService executor;
+
+  /** Scheduled and completed reads, in plate order. */
+  private final LinkedHashMap<Long, Future<byte[]>> pending =
+    new LinkedHashMap<Long, Future<byte[]>>();
+
+  private long hits, misses;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a prefetcher.
+   *
+   * @param loader reads a complete plane on the prefetch thread
+   * @param planeCounts number of planes in each series
+   * @param depth maximum number of planes to read ahead; must be >= 1
+   */
+  public PlanePrefetcher(PlaneLoader loader, int[] planeCounts, int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("Invalid prefetch depth: " + depth);
+    }
+    this.loader = loader;
+    this.planeCounts = planeCounts;
+    this.depth = depth;
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "PlanePrefetcher");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  // -- PlanePrefetcher API methods --
+
+  /**
+   * Returns the prefetch depth requested by the given reader options.
+   * Options that are not {@link DynamicMetadataOptions} use
+   * {@link #DEPTH_DEFAULT}.
+   */
+  public static int getDepth(MetadataOptions options) {
+    if (options instanceof DynamicMetadataOptions) {
+      Integer depth = ((DynamicMetadataOptions) options).getInteger(
+        DEPTH_KEY, DEPTH_DEFAULT);
+      return depth == null ? DEPTH_DEFAULT : Math.max(depth, 0);
+    }
+    return DEPTH_DEFAULT;
+  }
+
+  /**
+   * Copies a region of the given plane into <code>buf</code> if the plane
+   * was prefetched, and schedules the planes that follow it.
+   *
+   * @param sizeX width of the full plane in pixels
+   * @param pixelBytes number of bytes per (interleaved) pixel
+   * @return true if <code>buf</code> was filled, false if the caller must
+   *   read the plane itself
+   */
+  public boolean openBytes(int series, int no, byte[] buf, int x, int y,
+    int w, int h, int sizeX, int pixelBytes)
+  {
+    long key = getKey(series, no);
+    Future<byte[]> read = pending.remove(key);
+    schedule(series, no);
+
+    byte[] plane = null;
+    if (read != null) {
+      try {
+        plane = read.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        LOGGER.debug("Could not prefetch series {}, plane {}",
+          new Object[] {series, no, e.getCause()});
+      }
+    }
+
+    int rowLen = sizeX * pixelBytes;
+    if (plane == null || plane.length < rowLen * (y + h)) {
+      misses++;
+      return false;
+    }
+    hits++;
+    int len = w * pixelBytes;
+    for (int row=0; row<h; row++) {
+      System.arraycopy(plane, (y + row) * rowLen + x * pixelBytes,
+        buf, row * len, len);
+    }
+    return true;
+  }
+
+  /** Returns the number of requests served from prefetched planes. */
+  public long getHitCount() {
+    return hits;
+  }
+
+  /** Returns the number of requests that the caller had to read itself. */
+  public long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Discards all buffered planes and stops the prefetch thread, waiting
+   * for a read in progress to finish.
+   */
+  @Override
+  public void close() throws IOException {
+    for (Future<byte[]> read : pending.values()) {
+      read.cancel(false);
+    }
+    pending.clear();
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Makes the window of planes after (series, no) the pending set. */
+  private void schedule(int series, int no) {
+    LinkedHashMap<Long, Future<byte[]>> window =
+      new LinkedHashMap<Long, Future<byte[]>>();
+    int s = series;
+    int n = no;
+    while (window.size() < depth) {
+      n++;
+      while (s < planeCounts.length && n >= planeCounts[s]) {
+        s++;
+        n = 0;
+      }
+      if (s >= planeCounts.length) {
+        break;
+      }
+      long key = getKey(s, n);
+      Future<byte[]> read = pending.remove(key);
+      if (read == null) {
+        final int nextSeries = s;
+        final int nextPlane = n;
+        read = executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws FormatException, IOException {
+            return loader.loadPlane(nextSeries, nextPlane);
+          }
+        });
+      }
+      window.put(key, read);
+    }
+
+    // anything left over is outside the new window
+    Iterator<Map.Entry<Long, Future<byte[]>>> stale =
+      pending.entrySet().iterator();
+    while (stale.hasNext()) {
+      stale.next().getValue().cancel(false);
+      stale.remove();
+    }
+    pending.putAll(window);
+  }
+
+  private static long getKey(int series, int no) {
+    return ((long) series << 32) | (no & 0xffffffffL);
+  }
+
+  // -- Helper interface --
+
+  /** Reads complete planes on behalf of a {@link PlanePrefetcher}. */
+  public interface PlaneLoader {
+
+    /**
+     * Reads the full given plane, or returns null if the plane has no
+     * pixel data.  Called on the prefetch thread only.
+     */
+    byte[] loadPlane(int series, int no) throws FormatException, IOException;
+
+  }
+
+}
@@ -25,6 +25,9 @@
 
 package loci.formats.in;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -32,6 +35,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import loci.common.xml.BaseHandler;
 import ome.units.UNITS;
 import ome.units.quantity.Length;
 
@@ -39,6 +46,10 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Metadata structure for Prairie Technologies' TIFF-based format.
@@ -92,6 +103,51 @@ public class PrairieMetadata {
     parseChannels();
   }
 
+  /** Creates an empty Prairie metadata, to be filled by a streaming parse. */
+  private PrairieMetadata() {
+  }
+
+  /**
+   * Creates a new Prairie metadata by streaming through the given XML, CFG
+   * and/or ENV documents with a SAX parser.
+   * <p>
+   * The result is the same as that of
+   * {@link #PrairieMetadata(Document, Document, Document)}, but no DOM is
+   * built: each {@code <Sequence>}, {@code <Frame>} and {@code <File>} is
+   * recorded as soon as its start tag is read.  When the readers stream
+   * from the files, memory use grows only with the size of the resulting
+   * metadata.
+   * </p>
+   *
+   * @param xml The XML document to parse, or null if none available.
+   * @param cfg The CFG document to parse, or null if none available.
+   * @param env The ENV document to parse, or null if none available.
+   */
+  public static PrairieMetadata parse(final Reader xml, final Reader cfg,
+    final Reader env) throws IOException
+  {
+    final PrairieMetadata meta = new PrairieMetadata();
+    if (xml != null) parseSAX(xml, meta.new PrairieHandler("PVScan"));
+    if (cfg != null) parseSAX(cfg, meta.new PrairieHandler("PVConfig"));
+    if (env != null) parseSAX(env, meta.new PrairieHandler("Environment"));
+    meta.parseChannels();
+    return meta;
+  }
+
+  /**
+   * Creates a new Prairie metadata by streaming through the given XML, CFG
+   * and/or ENV documents with a SAX parser.
+   *
+   * @see #parse(Reader, Reader, Reader)
+   */
+  public static PrairieMetadata parse(final String xml, final String cfg,
+    final String env) throws IOException
+  {
+    return parse(xml == null ? null : new StringReader(xml),
+      cfg == null ? null : new StringReader(cfg),
+      env == null ? null : new StringReader(env));
+  }
+
   // -- PrairieMetadata methods --
 
   /** Gets the {@code waitTime} recorded in the configuration. */
@@ -233,6 +289,22 @@ public class PrairieMetadata {
 
   // -- Helper methods --
 
+  /** Streams the XML document read from the given reader to a handler. */
+  private static void parseSAX(final Reader xml, final DefaultHandler handler)
+    throws IOException
+  {
+    try {
+      SAXParserFactory.newInstance().newSAXParser().parse(
+        new InputSource(xml), handler);
+    }
+    catch (ParserConfigurationException e) {
+      throw new IOException(e);
+    }
+    catch (SAXException e) {
+      throw new IOException(e);
+    }
+  }
+
   /** Parses metadata from Prairie XML file. */
   private void parseXML(final Document doc) {
     final Element pvScan = doc.getDocumentElement();
@@ -250,15 +322,19 @@ public class PrairieMetadata {
       final Element sequenceElement = el(sequenceNodes, s);
       if (sequenceElement == null) continue;
 
-      final Sequence sequence = new Sequence(sequenceElement);
-      if (firstSequence == null) firstSequence = sequence;
+      addSequence(new Sequence(sequenceElement));
+    }
+  }
+
+  /** Records a parsed {@code <Sequence>}, in document order. */
+  private void addSequence(final Sequence sequence) {
+    if (firstSequence == null) firstSequence = sequence;
 
-      final int cycle = sequence.getCycle();
-      if (cycle < cycleMin) cycleMin = cycle;
-      if (cycle > cycleMax) cycleMax = cycle;
+    final int cycle = sequence.getCycle();
+    if (cycle < cycleMin) cycleMin = cycle;
+    if (cycle > cycleMax) cycleMax = cycle;
 
-      sequences.put(cycle, sequence);
-    }
+    sequences.put(cycle, sequence);
   }
 
   /**
@@ -297,34 +373,39 @@ public class PrairieMetadata {
     for (int k = 0; k < keyNodes.getLength(); k++) {
       final Element keyElement = el(keyNodes, k);
       if (keyElement == null) continue;
-      final String key = attr(keyElement, "key");
-      final String value = attr(keyElement, "value");
-      final int underscore = key.indexOf('_');
-      if (underscore < 0) {
-        // single key/value pair
-        table.put(key, new ValueItem(value, null));
+      putKey(table, attr(keyElement, "key"), attr(keyElement, "value"));
+    }
+  }
+
+  /** Adds the value of a single {@code <Key>} element to the given table. */
+  private void putKey(final ValueTable table, final String key,
+    final String value)
+  {
+    final int underscore = key.indexOf('_');
+    if (underscore < 0) {
+      // single key/value pair
+      table.put(key, new ValueItem(value, null));
+    }
+    else {
+      // table of key/value pairs
+      final String prefix = key.substring(0, underscore);
+      final String index = key.substring(underscore + 1);
+      if (!table.containsKey(prefix)) {
+        table.put(prefix, new ValueTable());
+      }
+      final ValueTable subTable = (ValueTable) table.get(prefix);
+      final String[] tokens = value.split(",");
+      if (tokens.length == 1) {
+        // single value
+        subTable.put(index, new ValueItem(value, null));
       }
       else {
-        // table of key/value pairs
-        final String prefix = key.substring(0, underscore);
-        final String index = key.substring(underscore + 1);
-        if (!table.containsKey(prefix)) {
-          table.put(prefix, new ValueTable());
-        }
-        final ValueTable subTable = (ValueTable) table.get(prefix);
-        final String[] tokens = value.split(",");
-        if (tokens.length == 1) {
-          // single value
-          subTable.put(index, new ValueItem(value, null));
-        }
-        else {
-          // sub-table of values
-          final ValueTable subSubTable = new ValueTable();
-          for (int i=0; i<tokens.length; i++) {
-            subSubTable.put("" + i, new ValueItem(tokens[i], null));
-          }
-          subTable.put(index, subSubTable);
+        // sub-table of values
+        final ValueTable subSubTable = new ValueTable();
+        for (int i=0; i<tokens.length; i++) {
+          subSubTable.put("" + i, new ValueItem(tokens[i], null));
         }
+        subTable.put(index, subSubTable);
       }
     }
   }
@@ -538,8 +619,252 @@ public class PrairieMetadata {
     return values;
   }
 
+  /** Returns a deep copy of the given value. */
+  private static Value copy(final Value value) {
+    if (!(value instanceof ValueTable)) {
+      return new ValueItem(value.value(), value.description());
+    }
+    final ValueTable table = new ValueTable();
+    for (final Map.Entry<String, Value> entry :
+      ((ValueTable) value).entrySet())
+    {
+      table.put(entry.getKey(), copy(entry.getValue()));
+    }
+    return table;
+  }
+
   // -- Helper classes --
 
+  /**
+   * SAX handler that fills this metadata from a Prairie XML, CFG or ENV
+   * document, following the same rules as the DOM-based parse methods.
+   */
+  private class PrairieHandler extends BaseHandler {
+
+    /** Expected name of the root element. */
+    private final String rootName;
+
+    /** Depth of the current element; the root element has depth 1. */
+    private int depth;
+
+    /** Open elements whose {@code <PVStateShard>} values are collected. */
+    private final ArrayList<Scope> scopes = new ArrayList<Scope>();
+
+    /** Whether a {@code <PVTSeriesElementWait>} has been seen. */
+    private boolean foundWait;
+
+    /** Depth of the open {@code <PVStateValue>}, or 0 if none. */
+    private int stateDepth;
+
+    /** Key and value of the open {@code <PVStateValue>}. */
+    private String stateKey;
+    private Value stateValue;
+
+    /** {@code <IndexedValue>} and {@code <SubindexedValues>} tables. */
+    private ValueTable indexedValues, subindexedValues;
+
+    /** The open {@code <SubindexedValues>} table, if any. */
+    private ValueTable subindexedTable;
+
+    public PrairieHandler(final String rootName) {
+      this.rootName = rootName;
+    }
+
+    // -- DefaultHandler API methods --
+
+    @Override
+    public void startElement(final String uri, final String localName,
+      final String qName, final Attributes attributes)
+    {
+      depth++;
+      if (depth == 1) {
+        if (!rootName.equals(qName)) {
+          throw new IllegalArgumentException("Not a " + rootName + " element");
+        }
+        if ("PVScan".equals(qName)) {
+          date = attributes.getValue("date");
+          scopes.add(new Scope(depth, scanValues, null, null));
+        }
+        else if ("Environment".equals(qName)) {
+          scopes.add(new Scope(depth, config, null, null));
+        }
+        return;
+      }
+
+      final boolean isXML = "PVScan".equals(rootName);
+      if ("PVStateShard".equals(qName)) {
+        final Scope scope = getScope();
+        if (scope != null && scope.depth == depth - 1) scope.hasShard = true;
+      }
+      else if ("PVStateValue".equals(qName)) {
+        if (stateDepth == 0) startStateValue(attributes);
+      }
+      else if ("IndexedValue".equals(qName)) {
+        final String index = attributes.getValue("index");
+        if (indexedValues != null && index != null) {
+          indexedValues.put(index, new ValueItem(attributes.getValue("value"),
+            attributes.getValue("description")));
+        }
+      }
+      else if ("SubindexedValues".equals(qName)) {
+        final String index = attributes.getValue("index");
+        if (subindexedValues != null && index != null) {
+          subindexedTable = new ValueTable();
+          subindexedValues.put(index, subindexedTable);
+        }
+      }
+      else if ("SubindexedValue".equals(qName)) {
+        final String subindex = attributes.getValue("subindex");
+        if (subindexedTable != null && subindex != null) {
+          subindexedTable.put(subindex, new ValueItem(
+            attributes.getValue("value"), attributes.getValue("description")));
+        }
+      }
+      else if (isXML && "Sequence".equals(qName)) {
+        final Sequence sequence = new Sequence(attributes);
+        addSequence(sequence);
+        scopes.add(new Scope(depth, sequence.sequenceValues, sequence, null));
+      }
+      else if (isXML && "Frame".equals(qName)) {
+        final Sequence sequence = getSequence();
+        if (sequence == null) return;
+        final Frame frame = new Frame(sequence, attributes);
+        sequence.addFrame(frame);
+        scopes.add(new Scope(depth, frame.frameValues, sequence, frame));
+      }
+      else if (isXML && "File".equals(qName)) {
+        final Frame frame = getFrame();
+        if (frame != null) frame.addFile(new PFile(frame, attributes));
+      }
+      else if ("Key".equals(qName)) {
+        final String key = attributes.getValue("key");
+        final String value = attributes.getValue("value");
+        if ("PVConfig".equals(rootName)) putKey(config, key, value);
+        else {
+          // keys are applied to their frames once the frames end
+          for (final Scope scope : scopes) {
+            if (scope.keys != null) scope.keys.add(new String[] {key, value});
+          }
+        }
+      }
+      else if ("PVTSeriesElementWait".equals(qName)) {
+        if ("PVConfig".equals(rootName) && !foundWait) {
+          waitTime = d(attributes.getValue("waitTime"));
+          foundWait = true;
+        }
+      }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName,
+      final String qName)
+    {
+      if (depth == stateDepth) endStateValue();
+      else if ("SubindexedValues".equals(qName)) subindexedTable = null;
+
+      final Scope scope = getScope();
+      if (scope != null && scope.depth == depth) {
+        scopes.remove(scopes.size() - 1);
+        if (scope.hasShard) scope.table.putAll(scope.stateValues);
+        if (scope.keys != null) {
+          for (final String[] key : scope.keys) {
+            putKey(scope.table, key[0], key[1]);
+          }
+        }
+      }
+      depth--;
+    }
+
+    // -- Helper methods --
+
+    private void startStateValue(final Attributes attributes) {
+      stateDepth = depth;
+      stateKey = attributes.getValue("key");
+      final String value = attributes.getValue("value");
+      if (value != null) {
+        stateValue = new ValueItem(value, attributes.getValue("description"));
+      }
+      else {
+        indexedValues = new ValueTable();
+        subindexedValues = new ValueTable();
+      }
+    }
+
+    private void endStateValue() {
+      Value value = stateValue;
+      if (value == null) {
+        // NB: <SubindexedValues> win over <IndexedValue> with the same index
+        final ValueTable table = new ValueTable();
+        table.putAll(indexedValues);
+        table.putAll(subindexedValues);
+        value = table;
+      }
+
+      // each enclosing scope gets its own copy, since <Key>s may modify it
+      for (int s = 0; s < scopes.size(); s++) {
+        scopes.get(s).stateValues.put(stateKey, s == 0 ? value : copy(value));
+      }
+
+      stateDepth = 0;
+      stateKey = null;
+      stateValue = null;
+      indexedValues = subindexedValues = subindexedTable = null;
+    }
+
+    /** Gets the innermost open scope, or null if none. */
+    private Scope getScope() {
+      return scopes.isEmpty() ? null : scopes.get(scopes.size() - 1);
+    }
+
+    /** Gets the innermost open {@code <Sequence>}, or null if none. */
+    private Sequence getSequence() {
+      final Scope scope = getScope();
+      return scope == null ? null : scope.sequence;
+    }
+
+    /** Gets the innermost open {@code <Frame>}, or null if none. */
+    private Frame getFrame() {
+      final Scope scope = getScope();
+      return scope == null ? null : scope.frame;
+    }
+  }
+
+  /**
+   * An element being streamed whose {@code <PVStateShard>} values (and, for
+   * frames, {@code <Key>} values) go into a {@link ValueTable}.
+   */
+  private static class Scope {
+
+    /** Depth of the element. */
+    private final int depth;
+
+    /** The table filled when the element ends. */
+    private final ValueTable table;
+
+    /** The innermost open sequence and frame, or null if none. */
+    private final Sequence sequence;
+    private final Frame frame;
+
+    /** Values of all descendant {@code <PVStateValue>} elements. */
+    private final ValueTable stateValues = new ValueTable();
+
+    /** Descendant {@code <Key>} key/value pairs, for frames only. */
+    private final ArrayList<String[]> keys;
+
+    /** Whether the element has a direct {@code <PVStateShard>} child. */
+    private boolean hasShard;
+
+    private Scope(final int depth, final ValueTable table,
+      final Sequence sequence, final Frame frame)
+    {
+      this.depth = depth;
+      this.table = table;
+      this.sequence = sequence;
+      this.frame = frame;
+      keys = frame == null ? null : new ArrayList<String[]>();
+    }
+  }
+
   /** A Prairie {@code <Sequence>}. */
   public class Sequence {
 
@@ -578,6 +903,15 @@ public class PrairieMetadata {
       parse(sequenceElement);
     }
 
+    /**
+     * Creates a new, empty sequence from the attributes of a streamed
+     * {@code <Sequence>} element.
+     */
+    private Sequence(final Attributes attributes) {
+      parseAttributes(attributes.getValue("type"),
+        attributes.getValue("cycle"), attributes.getValue("SpectralMode"));
+    }
+
     /** Parses metadata from the given {@code Sequence} element. */
     public void parse(final Element sequenceElement) {
       checkElement(sequenceElement, "Sequence");
@@ -585,12 +919,8 @@ public class PrairieMetadata {
       // parse <PVStateShard> key/value block
       parsePVStateShard(sequenceElement, sequenceValues);
 
-      type = attr(sequenceElement, "type");
-      cycle = i(attr(sequenceElement, "cycle"));
-      if (cycle == null) {
-        throw new IllegalArgumentException("Sequence missing cycle attribute");
-      }
-      spectralMode = b(attr(sequenceElement, "SpectralMode"));
+      parseAttributes(attr(sequenceElement, "type"),
+        attr(sequenceElement, "cycle"), attr(sequenceElement, "SpectralMode"));
 
       // iterate over all Frame elements
       final NodeList frameNodes = sequenceElement.getElementsByTagName("Frame");
@@ -598,15 +928,31 @@ public class PrairieMetadata {
         final Element frameElement = el(frameNodes, f);
         if (frameElement == null) continue;
 
-        final Frame frame = new Frame(this, frameElement);
-        if (firstFrame == null) firstFrame = frame;
-
-        final int index = frame.getIndex();
-        if (index < indexMin) indexMin = index;
-        if (index > indexMax) indexMax = index;
+        addFrame(new Frame(this, frameElement));
+      }
+    }
 
-        frames.put(index, frame);
+    /** Parses the attributes of a {@code <Sequence>} element. */
+    private void parseAttributes(final String typeAttr,
+      final String cycleAttr, final String spectralModeAttr)
+    {
+      type = typeAttr;
+      cycle = i(cycleAttr);
+      if (cycle == null) {
+        throw new IllegalArgumentException("Sequence missing cycle attribute");
       }
+      spectralMode = b(spectralModeAttr);
+    }
+
+    /** Records a parsed {@code <Frame>}, in document order. */
+    private void addFrame(final Frame frame) {
+      if (firstFrame == null) firstFrame = frame;
+
+      final int index = frame.getIndex();
+      if (index < indexMin) indexMin = index;
+      if (index > indexMax) indexMax = index;
+
+      frames.put(index, frame);
     }
 
     /** Gets the {@code type} associated with this {@code Sequence}. */
@@ -726,6 +1072,16 @@ public class PrairieMetadata {
       parse(frameElement);
     }
 
+    /**
+     * Creates a new frame, without files, from the attributes of a streamed
+     * {@code <Frame>} element.
+     */
+    private Frame(final Sequence sequence, final Attributes attributes) {
+      this.sequence = sequence;
+      parseAttributes(attributes.getValue("relativeTime"),
+        attributes.getValue("absoluteTime"), attributes.getValue("index"));
+    }
+
     // -- Frame methods --
 
     /** Gets the {@code <Sequence>} containing this {@code <Frame>}. */
@@ -740,12 +1096,8 @@ public class PrairieMetadata {
       // parse <PVStateShard> key/value block
       parsePVStateShard(frameElement, frameValues);
 
-      relativeTime = d(attr(frameElement, "relativeTime"));
-      absoluteTime = d(attr(frameElement, "absoluteTime"));
-      index = i(attr(frameElement, "index"));
-      if (index == null) {
-        throw new IllegalArgumentException("Frame missing index attribute");
-      }
+      parseAttributes(attr(frameElement, "relativeTime"),
+        attr(frameElement, "absoluteTime"), attr(frameElement, "index"));
 
       // iterate over all File elements
       final NodeList fileNodes = frameElement.getElementsByTagName("File");
@@ -753,16 +1105,32 @@ public class PrairieMetadata {
         final Element fileElement = el(fileNodes, f);
         if (fileElement == null) continue;
 
-        final PFile file = new PFile(this, fileElement);
-        if (firstFile == null) firstFile = file;
-
-        final int channel = file.getChannel();
-        files.put(channel, file);
+        addFile(new PFile(this, fileElement));
       }
 
       parseKeys(frameElement, frameValues);
     }
 
+    /** Parses the attributes of a {@code <Frame>} element. */
+    private void parseAttributes(final String relativeTimeAttr,
+      final String absoluteTimeAttr, final String indexAttr)
+    {
+      relativeTime = d(relativeTimeAttr);
+      absoluteTime = d(absoluteTimeAttr);
+      index = i(indexAttr);
+      if (index == null) {
+        throw new IllegalArgumentException("Frame missing index attribute");
+      }
+    }
+
+    /** Records a parsed {@code <File>}, in document order. */
+    private void addFile(final PFile file) {
+      if (firstFile == null) firstFile = file;
+
+      final int channel = file.getChannel();
+      files.put(channel, file);
+    }
+
     /** Gets the {@code relativeTime} associated with this {@code Frame}. */
     public double getRelativeTime() {
       return relativeTime;
@@ -943,6 +1311,15 @@ public class PrairieMetadata {
       parse(fileElement);
     }
 
+    /** Creates a new file from the attributes of a streamed {@code <File>}. */
+    private PFile(final Frame frame, final Attributes attributes) {
+      this.frame = frame;
+      parseAttributes(attributes.getValue("channel"),
+        attributes.getValue("channelName"), attributes.getValue("filename"),
+        attributes.getValue("wavelengthMin"),
+        attributes.getValue("wavelengthMax"));
+    }
+
     // -- PFile methods --
 
     /** Gets the {@code <Frame>} containing this {@code <File>}. */
@@ -954,17 +1331,27 @@ public class PrairieMetadata {
     public void parse(final Element fileElement) {
       checkElement(fileElement, "File");
 
-      channel = i(attr(fileElement, "channel"));
+      parseAttributes(attr(fileElement, "channel"),
+        attr(fileElement, "channelName"), attr(fileElement, "filename"),
+        attr(fileElement, "wavelengthMin"), attr(fileElement, "wavelengthMax"));
+    }
+
+    /** Parses the attributes of a {@code <File>} element. */
+    private void parseAttributes(final String channelAttr,
+      final String channelNameAttr, final String filenameAttr,
+      final String waveMinAttr, final String waveMaxAttr)
+    {
+      channel = i(channelAttr);
       if (channel == null) {
         throw new IllegalArgumentException("File missing channel attribute");
       }
       activeChannels.add(channel);
 
-      channelName = attr(fileElement, "channelName");
-      filename = attr(fileElement, "filename");
+      channelName = channelNameAttr;
+      filename = filenameAttr;
 
-      waveMin = d(attr(fileElement, "wavelengthMin"));
-      waveMax = d(attr(fileElement, "wavelengthMax"));
+      waveMin = d(waveMinAttr);
+      waveMax = d(waveMaxAttr);
     }
 
     /** Gets the {@code channel} associated with this {@code File}. */
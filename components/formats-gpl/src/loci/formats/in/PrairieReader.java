@@ -25,17 +25,18 @@
 
 package loci.formats.in;
 
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
-
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.HashMap;
 
 import loci.common.Constants;
 import loci.common.DateTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
-import loci.common.xml.XMLTools;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
@@ -47,6 +48,8 @@ import loci.formats.in.PrairieMetadata.Sequence;
 import loci.formats.in.PrairieMetadata.ValueTable;
 import loci.formats.meta.MetadataStore;
 import loci.formats.tiff.IFD;
+import loci.formats.tiff.PhotoInterp;
+import loci.formats.tiff.TiffCompression;
 import loci.formats.tiff.TiffParser;
 import ome.xml.model.primitives.PositiveFloat;
 import ome.xml.model.primitives.Timestamp;
@@ -56,9 +59,6 @@ import ome.units.quantity.Power;
 import ome.units.quantity.Time;
 import ome.units.UNITS;
 
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
-
 /**
  * PrairieReader is the file format reader for
  * Prairie Technologies' TIFF variant.
@@ -85,11 +85,23 @@ public class PrairieReader extends FormatReader {
 
   private static final String DATE_FORMAT = "MM/dd/yyyy h:mm:ss a";
 
+  /**
+   * Reader option indicating that every TIFF file in a dataset has the same
+   * structure as the first one, so that pixels can be read using the first
+   * file's IFD with only the strip offsets re-read.
+   */
+  public static final String HOMOGENEOUS_TIFFS_KEY =
+    "prairie.assume_homogeneous_tiffs";
+  public static final boolean HOMOGENEOUS_TIFFS_DEFAULT = false;
+
   // -- Fields --
 
   /** Helper reader for opening images. */
   private TiffReader tiff;
 
+  /** Open per-frame TIFF files, reused across calls to openBytes. */
+  private transient TiffReaderPool tiffPool;
+
   /** The associated XML files. */
   private Location xmlFile, cfgFile, envFile;
 
@@ -124,6 +136,27 @@ public class PrairieReader extends FormatReader {
    */
   private boolean singleTiffMode;
 
+  /** Path to the TIFF file whose first IFD describes every TIFF file. */
+  private String templateFile;
+
+  /** First IFD of {@link #templateFile}, or null if it cannot be used. */
+  private transient IFD templateIFD;
+
+  /** Whether {@link #templateIFD} has been read. */
+  private transient boolean templateChecked;
+
+  /**
+   * Whether the template's pixels are a single uncompressed block of
+   * whole-byte samples that can be read with one seek.
+   */
+  private transient boolean contiguousTemplate;
+
+  /** Strip offsets of each TIFF file read so far, keyed by path. */
+  private transient HashMap<String, long[]> stripOffsets;
+
+  /** TIFF files read using {@link #templateIFD}. */
+  private transient TiffParserPool templateFiles;
+
   // -- Constructor --
 
   /** Constructs a new Prairie TIFF reader. */
@@ -135,6 +168,21 @@ public class PrairieReader extends FormatReader {
       ".tif/.tiff files";
   }
 
+  // -- PrairieReader API methods --
+
+  /**
+   * Returns true if every TIFF file is assumed to have the same structure
+   * as the first one.
+   */
+  public boolean assumeHomogeneousTiffs() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        HOMOGENEOUS_TIFFS_KEY, HOMOGENEOUS_TIFFS_DEFAULT);
+    }
+    return HOMOGENEOUS_TIFFS_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
   @Override
@@ -293,17 +341,40 @@ public class PrairieReader extends FormatReader {
       return blank(buf);
     }
 
-    tiff.setId(getPath(file));
-    return tiff.openBytes(0, buf, x, y, w, h);
+    final String path = getPath(file);
+    if (assumeHomogeneousTiffs() &&
+      openHomogeneousBytes(path, buf, x, y, w, h))
+    {
+      return buf;
+    }
+
+    if (tiffPool == null) {
+      tiffPool = new TiffReaderPool() {
+        @Override
+        protected MinimalTiffReader createReader() {
+          return new TiffReader();
+        }
+      };
+    }
+    return tiffPool.openBytes(path, 0, buf, x, y, w, h);
   }
 
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
     if (tiff != null) tiff.close(fileOnly);
+    if (tiffPool != null) tiffPool.close();
+    if (templateFiles != null) templateFiles.close();
     if (!fileOnly) {
       xmlFile = cfgFile = envFile = null;
       tiff = null;
+      tiffPool = null;
+      templateFiles = null;
+      templateFile = null;
+      templateIFD = null;
+      templateChecked = false;
+      contiguousTemplate = false;
+      stripOffsets = null;
       meta = null;
       sequences = null;
       channels = null;
@@ -370,20 +441,19 @@ public class PrairieReader extends FormatReader {
   private void parsePrairieMetadata() throws FormatException, IOException {
     LOGGER.info("Parsing Prairie metadata");
 
-    final Document xml, cfg, env;
+    // NB: The metadata is built with a streaming parser rather than from a
+    // DOM, since the XML of a long time series can be hundreds of megabytes.
+    final Reader xml = openXML(xmlFile);
+    final Reader cfg = openXML(cfgFile);
+    final Reader env = openXML(envFile);
     try {
-      xml = parseDOM(xmlFile);
-      cfg = parseDOM(cfgFile);
-      env = parseDOM(envFile);
+      meta = PrairieMetadata.parse(xml, cfg, env);
     }
-    catch (ParserConfigurationException exc) {
-      throw new FormatException(exc);
+    finally {
+      if (xml != null) xml.close();
+      if (cfg != null) cfg.close();
+      if (env != null) env.close();
     }
-    catch (SAXException exc) {
-      throw new FormatException(exc);
-    }
-
-    meta = new PrairieMetadata(xml, cfg, env);
     sequences = meta.getSequences();
     channels = meta.getActiveChannels();
     if (channels == null || channels.length == 0) {
@@ -424,7 +494,8 @@ public class PrairieReader extends FormatReader {
       // this assumption, but if not, removing the "if (s == 0)" test here
       // should remedy any resultant inaccuracies in the metadata.
       if (s == 0) {
-        tiff.setId(getPath(file));
+        templateFile = getPath(file);
+        tiff.setId(templateFile);
         if (bpp <= 0) bpp = tiff.getBitsPerPixel();
       }
 
@@ -664,13 +735,15 @@ public class PrairieReader extends FormatReader {
     return getMetadataOptions().getMetadataLevel() == MetadataLevel.MINIMUM;
   }
 
-  /** Parses a {@link Document} from the data in the given file. */
-  private Document parseDOM(final Location file)
-    throws ParserConfigurationException, SAXException, IOException
-  {
+  /**
+   * Opens the XML in the given file, ready to be parsed.  The file is
+   * streamed rather than read into memory, so the caller must close the
+   * returned reader.
+   */
+  private Reader openXML(final Location file) throws IOException {
     if (file == null) return null;
 
-    // NB: The simplest approach here would be to call XMLTools.parseDOM(file)
+    // NB: The simplest approach here would be to parse the file
     // directly, but we cannot do that because Prairie XML files are technically
     // invalid and must be preprocessed in order for Java to parse them.
     //
@@ -685,23 +758,16 @@ public class PrairieReader extends FormatReader {
     // mangled (e.g., XML attributes have invalid values).
     //
     // So we hack around it another way: by filtering out all invalid characters
-    // manually, so the data becomes valid XML version 1.0.
+    // manually, so the data becomes valid XML version 1.0.  This is done as
+    // the file is read, in the same way as XMLTools.sanitizeXML.
     //
     // For details, see:
     // http://stackoverflow.com/questions/2997255
 
-    // read entire XML document into a giant byte array
-    final byte[] buf = new byte[(int) file.length()];
     final RandomAccessInputStream is =
       new RandomAccessInputStream(file.getAbsolutePath());
-    is.readFully(buf);
-    is.close();
-
-    // filter out invalid characters from the XML
-    final String xml =
-      XMLTools.sanitizeXML(new String(buf, Constants.ENCODING));
-
-    return XMLTools.parseDOM(xml);
+    return new SanitizingReader(
+      new InputStreamReader(is, Constants.ENCODING));
   }
 
   /** Emits a warning about a missing {@code <Frame>}. */
@@ -731,6 +797,128 @@ public class PrairieReader extends FormatReader {
     return f.getAbsolutePath();
   }
 
+  /**
+   * Reads pixels from the given TIFF file using the template IFD, with only
+   * the strip offsets read from the file itself.
+   *
+   * @return false if the template cannot be used for this file, in which
+   *   case the file must be read normally
+   */
+  private boolean openHomogeneousBytes(final String path, final byte[] buf,
+    final int x, final int y, final int w, final int h)
+    throws FormatException, IOException
+  {
+    if (!templateChecked) {
+      readTemplate();
+    }
+    if (templateIFD == null) return false;
+
+    final TiffParser parser = getTemplateFile(path);
+    final RandomAccessInputStream s = parser.getStream();
+    long[] offsets = stripOffsets.get(path);
+    if (offsets == null) {
+      offsets = readStripOffsets(s);
+      if (offsets == null ||
+        offsets.length != templateIFD.getStripOffsets().length)
+      {
+        LOGGER.debug("{} does not match the template TIFF layout", path);
+        return false;
+      }
+      stripOffsets.put(path, offsets);
+    }
+
+    s.order(templateIFD.isLittleEndian());
+    if (contiguousTemplate) {
+      s.seek(offsets[0]);
+      readPlane(s, x, y, w, h, buf);
+    }
+    else {
+      final IFD ifd = new IFD(templateIFD);
+      ifd.putIFDValue(IFD.STRIP_OFFSETS, offsets);
+      parser.getSamples(ifd, buf, x, y, w, h);
+    }
+    return true;
+  }
+
+  /**
+   * Returns a parser for the given TIFF file, keeping recently read files
+   * open so that each file is opened once however many times it is read.
+   */
+  private TiffParser getTemplateFile(final String path) throws IOException {
+    if (templateFiles == null) {
+      templateFiles = new TiffParserPool(TiffReaderPool.DEFAULT_CAPACITY);
+    }
+    return templateFiles.get(path);
+  }
+
+  /** Reads and checks the first IFD of {@link #templateFile}. */
+  private void readTemplate() throws FormatException, IOException {
+    templateChecked = true;
+    stripOffsets = new HashMap<String, long[]>();
+    final TiffParser parser = getTemplateFile(templateFile);
+    final RandomAccessInputStream s = parser.getStream();
+    final IFD ifd = parser.getFirstIFD();
+    if (ifd == null || ifd.isTiled() || readStripOffsets(s) == null) {
+      LOGGER.debug("Cannot use {} as a template TIFF", templateFile);
+      return;
+    }
+    parser.fillInIFD(ifd);
+
+    final long[] offsets = ifd.getStripOffsets();
+    final long[] counts = ifd.getStripByteCounts();
+    boolean contiguous =
+      ifd.getCompression() == TiffCompression.UNCOMPRESSED &&
+      ifd.getSamplesPerPixel() == 1 &&
+      ifd.getBitsPerSample()[0] % 8 == 0 &&
+      ifd.getPhotometricInterpretation() != PhotoInterp.WHITE_IS_ZERO &&
+      ifd.getImageWidth() == getSizeX() &&
+      ifd.getImageLength() == getSizeY();
+    for (int i=1; contiguous && i<offsets.length; i++) {
+      contiguous = offsets[i] == offsets[i - 1] + counts[i - 1];
+    }
+    contiguousTemplate = contiguous;
+    templateIFD = ifd;
+  }
+
+  /**
+   * Reads only the strip offsets of the first IFD in the given classic
+   * (non-BigTIFF) TIFF stream, or returns null if they cannot be found.
+   */
+  private static long[] readStripOffsets(final RandomAccessInputStream s)
+    throws IOException
+  {
+    s.seek(0);
+    final int order = s.readShort();
+    if (order != 0x4949 && order != 0x4d4d) return null;
+    s.order(order == 0x4949);
+    if (s.readShort() != 42) return null;
+
+    s.seek(s.readInt() & 0xffffffffL);
+    final int entries = s.readShort() & 0xffff;
+    for (int i=0; i<entries; i++) {
+      final int tag = s.readShort() & 0xffff;
+      final int type = s.readShort() & 0xffff;
+      final int count = s.readInt();
+      if (tag != IFD.STRIP_OFFSETS) {
+        s.skipBytes(4);
+        continue;
+      }
+      // SHORT (3) or LONG (4)
+      final int size = type == 3 ? 2 : type == 4 ? 4 : -1;
+      if (size < 0 || count <= 0) return null;
+      if ((long) count * size > 4) {
+        s.seek(s.readInt() & 0xffffffffL);
+      }
+      final long[] offsets = new long[count];
+      for (int v=0; v<count; v++) {
+        offsets[v] = size == 2 ?
+          s.readShort() & 0xffff : s.readInt() & 0xffffffffL;
+      }
+      return offsets;
+    }
+    return null;
+  }
+
   /** Blanks out and returns the given buffer. */
   private byte[] blank(final byte[] buf) {
     // missing data; return empty plane
@@ -882,4 +1070,93 @@ public class PrairieReader extends FormatReader {
     if (xPos == null) return false;
     return xPos.equals(xInitial);
   }
+
+  // -- Helper classes --
+
+  /**
+   * Reader that replaces characters that are invalid in XML 1.0 with
+   * spaces, and breaks up {@code &#} sequences, as the text is read.
+   */
+  private static class SanitizingReader extends FilterReader {
+
+    /** Character read ahead of the last chunk returned, or -1 if none. */
+    private int pending = -1;
+
+    SanitizingReader(final Reader in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final char[] c = new char[1];
+      return read(c, 0, 1) < 0 ? -1 : c[0];
+    }
+
+    @Override
+    public int read(final char[] buf, final int off, final int len)
+      throws IOException
+    {
+      if (len <= 0) return 0;
+      int count = 0;
+      if (pending >= 0) {
+        buf[off] = (char) pending;
+        pending = -1;
+        count = 1;
+      }
+      if (count < len) {
+        final int n = in.read(buf, off + count, len - count);
+        if (n > 0) count += n;
+      }
+      if (count == 0) return -1;
+
+      // look at the character after a trailing '&' before returning it
+      if (buf[off + count - 1] == '&') {
+        pending = in.read();
+        if (pending == '#') buf[off + count - 1] = ' ';
+      }
+
+      for (int i=off; i<off + count; i++) {
+        if (Character.isISOControl(buf[i]) || !Character.isDefined(buf[i])) {
+          buf[i] = ' ';
+        }
+        // eliminate invalid &# sequences
+        if (i > off && buf[i - 1] == '&' && buf[i] == '#') buf[i - 1] = ' ';
+      }
+      return count;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+      return pending >= 0 || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException {
+      throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+      throw new IOException("reset() not supported");
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final char[] buf = new char[(int) Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n) {
+        final int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+        if (r < 0) break;
+        skipped += r;
+      }
+      return skipped;
+    }
+
+  }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RegionInflater decompresses only the rows of a zlib-compressed plane
+ * that fall within a requested region, so that reading a small tile does
+ * not require the whole plane to be decompressed into a temporary buffer.
+ *
+ * The underlying {@link Inflater} is reused between calls and released by
+ * {@link #close()}.
+ */
+public class RegionInflater implements Closeable {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(RegionInflater.class);
+
+  /** Size of the compressed input buffer. */
+  private static final int BUFFER_SIZE = 8192;
+
+  // -- Fields --
+
+  private Inflater inflater;
+
+  // -- RegionInflater API methods --
+
+  /**
+   * Inflates the rows of a zlib-compressed plane that are needed for the
+   * requested region directly into <code>buf</code>, stopping after the last
+   * requested row.  If the compressed data is truncated, the remaining rows
+   * of <code>buf</code> are left as they are.
+   *
+   * @param s stream positioned at the start of the compressed plane
+   * @param buf destination for <code>h</code> rows of <code>len</code> bytes
+   * @param xOffset offset in bytes of the region within each row
+   * @param y index of the first row to copy
+   * @param len number of bytes to copy from each row
+   * @param row number of bytes in each row of the plane
+   * @param h number of rows to copy
+   */
+  public void inflate(InputStream s, byte[] buf, int xOffset, int y, int len,
+    int row, int h) throws IOException
+  {
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+    inflater.reset();
+    InflaterInputStream in = new InflaterInputStream(s, inflater, BUFFER_SIZE);
+    try {
+      skipFully(in, (long) y * row + xOffset);
+      for (int yy=0; yy<h; yy++) {
+        int dest = yy * len;
+        int n = 0;
+        while (n < len) {
+          int r = in.read(buf, dest + n, len - n);
+          if (r <= 0) {
+            return;
+          }
+          n += r;
+        }
+        if (yy < h - 1) {
+          skipFully(in, row - len);
+        }
+      }
+    }
+    catch (EOFException e) {
+      LOGGER.debug("Truncated zlib-compressed plane", e);
+    }
+  }
+
+  // -- Closeable API methods --
+
+  @Override
+  public void close() {
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+  }
+
+  // -- Helper methods --
+
+  private static void skipFully(InflaterInputStream in, long n)
+    throws IOException
+  {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      n -= skipped;
+    }
+  }
+
+}
@@ -27,7 +27,6 @@ package loci.formats.in;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -35,7 +34,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import loci.common.ByteArrayHandle;
 import loci.common.DataTools;
 import loci.common.Location;
 import loci.common.RandomAccessInputStream;
@@ -90,6 +88,10 @@ public class ScanrReader extends FormatReader {
 
   private String[] tiffs;
   private MinimalTiffReader reader;
+  private transient TiffReaderPool tiffPool;
+  private transient PlanePrefetcher prefetcher;
+  private transient TiffReaderPool prefetchPool;
+  private int prefetchDepth;
 
   private boolean foundPositions = false;
   private Length[] fieldPositionX;
@@ -207,11 +209,24 @@ public class ScanrReader extends FormatReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
+    if (tiffPool != null) {
+      tiffPool.close();
+    }
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+    if (prefetchPool != null) {
+      prefetchPool.close();
+      prefetchPool = null;
+    }
     if (!fileOnly) {
       if (reader != null) {
         reader.close();
       }
       reader = null;
+      tiffPool = null;
+      prefetchDepth = 0;
       tiffs = null;
       plateName = null;
       channelNames.clear();
@@ -242,32 +257,32 @@ public class ScanrReader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
+    if (prefetchDepth > 0 && !isRGB()) {
+      if (prefetcher == null) {
+        createPrefetcher();
+      }
+      if (prefetcher.openBytes(getSeries(), no, buf, x, y, w, h, getSizeX(),
+        FormatTools.getBytesPerPixel(getPixelType())))
+      {
+        return buf;
+      }
+    }
+
     int index = getSeries() * getImageCount() + no;
     if (index < tiffs.length && tiffs[index] != null) {
+      if (tiffPool == null) {
+        tiffPool = new TiffReaderPool();
+      }
       try {
-        reader.setId(tiffs[index]);
-        reader.openBytes(0, buf, x, y, w, h);
-        reader.close();
+        tiffPool.openBytes(tiffs[index], 0, buf, x, y, w, h);
       }
       catch (FormatException e) {
-        reader.close();
+        tiffPool.release(tiffs[index]);
         Arrays.fill(buf, (byte) 0);
         return buf;
       }
 
-      // mask out the sign bit
-      ByteArrayHandle pixels = new ByteArrayHandle(buf);
-      pixels.setOrder(
-        isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
-      for (int i=0; i<buf.length; i+=2) {
-        pixels.seek(i);
-        short value = pixels.readShort();
-        value = (short) (value & 0xfff);
-        pixels.seek(i);
-        pixels.writeShort(value);
-      }
-      buf = pixels.getBytes();
-      pixels.close();
+      maskSignBit(buf, isLittleEndian());
     }
 
     return buf;
@@ -293,6 +308,7 @@ public class ScanrReader extends FormatReader {
   @Override
   protected void initFile(String id) throws FormatException, IOException {
     super.initFile(id);
+    prefetchDepth = PlanePrefetcher.getDepth(getMetadataOptions());
     if (metadataFiles.size() > 0) {
       // this dataset has already been initialized
       return;
@@ -852,6 +868,41 @@ public class ScanrReader extends FormatReader {
 
   // -- Helper methods --
 
+  /** Masks out the sign bit, keeping the low 12 bits of each pixel. */
+  private static void maskSignBit(byte[] buf, boolean little) {
+    int high = little ? 1 : 0;
+    for (int i=0; i<buf.length - 1; i+=2) {
+      buf[i + high] &= 0xf;
+    }
+  }
+
+  /**
+   * Starts reading planes ahead in series order.  Only used for non-RGB
+   * data, so that every plane is a single sample per pixel.
+   */
+  private void createPrefetcher() {
+    int[] planeCounts = new int[getSeriesCount()];
+    for (int i=0; i<planeCounts.length; i++) {
+      planeCounts[i] = core.get(i).imageCount;
+    }
+    prefetchPool = new TiffReaderPool();
+    prefetcher = new PlanePrefetcher(new PlanePrefetcher.PlaneLoader() {
+      @Override
+      public byte[] loadPlane(int series, int no)
+        throws FormatException, IOException
+      {
+        CoreMetadata ms = core.get(series);
+        int index = series * ms.imageCount + no;
+        if (index >= tiffs.length || tiffs[index] == null) {
+          return null;
+        }
+        byte[] plane = prefetchPool.get(tiffs[index]).openBytes(0);
+        maskSignBit(plane, ms.littleEndian);
+        return plane;
+      }
+    }, planeCounts, prefetchDepth);
+  }
+
   private String getBlock(int index, String axis) {
     String b = String.valueOf(index);
     while (b.length() < 5) b = "0" + b;
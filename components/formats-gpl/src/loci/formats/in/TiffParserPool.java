@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.tiff.TiffParser;
+
+/**
+ * TiffParserPool keeps a bounded number of TIFF files open, keyed by file
+ * path, for readers that parse IFDs themselves and read pixels from one of
+ * several files per plane.
+ *
+ * Once more than <code>capacity</code> files are open, the least recently
+ * used file is closed.  Pools are not thread-safe and are meant to be owned
+ * by a single reader instance.
+ *
+ * @see TiffReaderPool
+ */
+public class TiffParserPool implements Closeable {
+
+  // -- Fields --
+
+  private final int capacity;
+
+  /** Open parsers, least recently used first. */
+  private final LinkedHashMap<String, TiffParser> parsers;
+
+  // -- Constructor --
+
+  /** Constructs a pool holding up to <code>capacity</code> open files. */
+  public TiffParserPool(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid pool capacity: " + capacity);
+    }
+    this.capacity = capacity;
+    parsers = new LinkedHashMap<String, TiffParser>(
+      Math.min(capacity, 64) * 2, 0.75f, true);
+  }
+
+  // -- TiffParserPool API methods --
+
+  /**
+   * Returns a parser for the given file, opening the file if it is not
+   * already open.  The returned parser must not be closed by the caller.
+   */
+  public TiffParser get(String path) throws IOException {
+    TiffParser parser = parsers.get(path);
+    if (parser != null) {
+      return parser;
+    }
+
+    // close the least recently used files
+    Iterator<TiffParser> eldest = parsers.values().iterator();
+    while (parsers.size() >= capacity && eldest.hasNext()) {
+      TiffParser evicted = eldest.next();
+      eldest.remove();
+      evicted.getStream().close();
+    }
+
+    parser = new TiffParser(openStream(path));
+    parsers.put(path, parser);
+    return parser;
+  }
+
+  /** Returns the number of files currently held open by this pool. */
+  public int getOpenCount() {
+    return parsers.size();
+  }
+
+  /* @see java.io.Closeable#close() */
+  @Override
+  public void close() throws IOException {
+    for (TiffParser parser : parsers.values()) {
+      parser.getStream().close();
+    }
+    parsers.clear();
+  }
+
+  // -- Internal TiffParserPool API methods --
+
+  /**
+   * Opens the given file.  Subclasses may override this to open a mapped
+   * handle or to set the byte order.
+   */
+  protected RandomAccessInputStream openStream(String path)
+    throws IOException
+  {
+    return new RandomAccessInputStream(path);
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loci.formats.FormatException;
+
+/**
+ * TiffReaderPool keeps a bounded number of initialized TIFF readers open,
+ * keyed by file path, for readers that delegate pixel reads to one TIFF
+ * file per plane (typically high-content screening formats).
+ *
+ * A file's IFDs are parsed when it is first requested and reused for as
+ * long as the file stays in the pool; once more than <code>capacity</code>
+ * files are open, the least recently used file is closed.  Pools are not
+ * thread-safe and are meant to be owned by a single reader instance.
+ */
+public class TiffReaderPool implements Closeable {
+
+  // -- Constants --
+
+  /** Default maximum number of open files per pool. */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  /** Number of files held open by all pools. */
+  private static final AtomicInteger TOTAL_OPEN = new AtomicInteger();
+
+  // -- Fields --
+
+  private final int capacity;
+
+  /** Open readers, least recently used first. */
+  private final LinkedHashMap<String, MinimalTiffReader> readers;
+
+  private long hits, misses, evictions;
+
+  // -- Constructors --
+
+  /** Constructs a pool holding up to {@link #DEFAULT_CAPACITY} files. */
+  public TiffReaderPool() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** Constructs a pool holding up to <code>capacity</code> open files. */
+  public TiffReaderPool(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid pool capacity: " + capacity);
+    }
+    this.capacity = capacity;
+    readers = new LinkedHashMap<String, MinimalTiffReader>(
+      Math.min(capacity, 64) * 2, 0.75f, true);
+  }
+
+  // -- TiffReaderPool API methods --
+
+  /**
+   * Returns a reader initialized on the given file.  The returned reader
+   * remains valid until the next call to {@link #get(String)} or
+   * {@link #close()}, and must not be closed by the caller.
+   */
+  public MinimalTiffReader get(String path) throws FormatException, IOException
+  {
+    MinimalTiffReader reader = readers.get(path);
+    if (reader != null) {
+      hits++;
+      return reader;
+    }
+    misses++;
+
+    // close the least recently used file, recycling its reader
+    Iterator<MinimalTiffReader> eldest = readers.values().iterator();
+    while (readers.size() >= capacity && eldest.hasNext()) {
+      reader = eldest.next();
+      eldest.remove();
+      reader.close();
+      TOTAL_OPEN.decrementAndGet();
+      evictions++;
+    }
+
+    if (reader == null) {
+      reader = createReader();
+    }
+    boolean success = false;
+    try {
+      reader.setId(path);
+      success = true;
+    }
+    finally {
+      if (!success) {
+        reader.close();
+      }
+    }
+    readers.put(path, reader);
+    TOTAL_OPEN.incrementAndGet();
+    return reader;
+  }
+
+  /** Reads a region of the given plane in the given file. */
+  public byte[] openBytes(String path, int no, byte[] buf, int x, int y,
+    int w, int h) throws FormatException, IOException
+  {
+    return get(path).openBytes(no, buf, x, y, w, h);
+  }
+
+  /** Closes the given file if it is open. */
+  public void release(String path) throws IOException {
+    MinimalTiffReader reader = readers.remove(path);
+    if (reader != null) {
+      reader.close();
+      TOTAL_OPEN.decrementAndGet();
+    }
+  }
+
+  /** Returns the maximum number of files held open by this pool. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** Returns the number of files currently held open by this pool. */
+  public int getOpenCount() {
+    return readers.size();
+  }
+
+  /** Returns the number of requests served by an already open file. */
+  public long getHitCount() {
+    return hits;
+  }
+
+  /** Returns the number of requests that required opening a file. */
+  public long getMissCount() {
+    return misses;
+  }
+
+  /** Returns the number of files closed to make room for another. */
+  public long getEvictionCount() {
+    return evictions;
+  }
+
+  /** Returns the number of files held open by all pools in this JVM. */
+  public static int getTotalOpenCount() {
+    return TOTAL_OPEN.get();
+  }
+
+  /* @see java.io.Closeable#close() */
+  @Override
+  public void close() throws IOException {
+    for (MinimalTiffReader reader : readers.values()) {
+      reader.close();
+      TOTAL_OPEN.decrementAndGet();
+    }
+    readers.clear();
+  }
+
+  // -- Internal TiffReaderPool API methods --
+
+  /**
+   * Creates a new, uninitialized reader.  Subclasses may override this to
+   * use a more specific TIFF reader.
+   */
+  protected MinimalTiffReader createReader() {
+    MinimalTiffReader reader = new MinimalTiffReader();
+    reader.setMetadataOptions(
+      new DefaultMetadataOptions(MetadataLevel.MINIMUM));
+    return reader;
+  }
+
+}
@@ -70,6 +70,7 @@ public class VolocityReader extends FormatReader {
   private ArrayList<String> extraFiles;
   private Object[][] sampleTable, stringTable;
   private Location dir = null;
+  private transient FileExistenceCache fileCache;
 
   private ArrayList<Double[]> timestamps = new ArrayList<Double[]>();
 
@@ -84,6 +85,18 @@ public class VolocityReader extends FormatReader {
     datasetDescription = "One .mvd2 file plus a 'Data' directory";
   }
 
+  // -- VolocityReader API methods --
+
+  /**
+   * Discards the cached file existence checks, so that files written or
+   * removed since the dataset was opened are seen by later calls.
+   */
+  public void refreshFileCache() {
+    if (fileCache != null) {
+      fileCache.refresh();
+    }
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#getSeriesUsedFiles(boolean) */
@@ -149,7 +162,7 @@ public class VolocityReader extends FormatReader {
 
     Stack stack = stacks.get(getSeries());
 
-    if (!new Location(stack.pixelsFiles[zct[1]]).exists()) {
+    if (!getFileCache().exists(stack.pixelsFiles[zct[1]])) {
       Arrays.fill(buf, (byte) 0);
       return buf;
     }
@@ -230,6 +243,7 @@ public class VolocityReader extends FormatReader {
       sampleTable = null;
       stringTable = null;
       dir = null;
+      fileCache = null;
       timestamps.clear();
       Location.mapFile(EMBEDDED_STREAM, null);
     }
@@ -255,6 +269,8 @@ public class VolocityReader extends FormatReader {
     super.initFile(id);
 
     stacks = new ArrayList<Stack>();
+    fileCache =
+      new FileExistenceCache(FileExistenceCache.isEnabled(getMetadataOptions()));
     extraFiles = new ArrayList<String>();
 
     Location file = new Location(id).getAbsoluteFile();
@@ -263,6 +279,7 @@ public class VolocityReader extends FormatReader {
     Location parentDir = file.getParentFile();
     dir = new Location(parentDir, DATA_DIR);
 
+    getFileCache().addDirectory(dir.getAbsolutePath());
     if (dir.exists()) {
       String[] files = dir.list(true);
       for (String f : files) {
@@ -343,7 +360,7 @@ public class VolocityReader extends FormatReader {
             data.seek(22);
             int stackID = data.readInt();
             Location f = new Location(dir, stackID + ".aisf");
-            if (!f.exists()) {
+            if (!getFileCache().exists(f.getAbsolutePath())) {
               f = new Location(dir, DataTools.swap(stackID) + ".aisf");
             }
             stack.pixelsFiles[c] = f.getAbsolutePath();
@@ -361,9 +378,7 @@ public class VolocityReader extends FormatReader {
         stack.pixelsFiles = new String[1];
         stack.pixelsFiles[0] = getFile(parent, dir);
 
-        if (stack.pixelsFiles[0] == null ||
-          !new Location(stack.pixelsFiles[0]).exists())
-        {
+        if (!getFileCache().exists(stack.pixelsFiles[0])) {
           int row = -1;
           for (int r=0; r<sampleTable.length; r++) {
             if (sampleTable[r][0].equals(parent)) {
@@ -387,7 +402,7 @@ public class VolocityReader extends FormatReader {
         data.seek(22);
         int timestampID = data.readInt();
         Location f = new Location(dir, timestampID + ".atsf");
-        if (!f.exists()) {
+        if (!getFileCache().exists(f.getAbsolutePath())) {
           f = new Location(dir, DataTools.swap(timestampID) + ".atsf");
         }
         stack.timestampFile = f.getAbsolutePath();
@@ -483,7 +498,7 @@ public class VolocityReader extends FormatReader {
     for (int i=0; i<stacks.size(); i++) {
       Stack stack = stacks.get(i);
 
-      if (!new Location(stack.pixelsFiles[0]).exists()) {
+      if (!getFileCache().exists(stack.pixelsFiles[0])) {
         stacks.remove(i);
         i--;
         continue;
@@ -495,7 +510,7 @@ public class VolocityReader extends FormatReader {
       base.close();
 
       for (int q=1; q<stack.pixelsFiles.length; q++) {
-        if (!new Location(stack.pixelsFiles[q]).exists()) {
+        if (!getFileCache().exists(stack.pixelsFiles[q])) {
           continue;
         }
         base = new RandomAccessInputStream(stack.pixelsFiles[q]);
@@ -850,6 +865,20 @@ public class VolocityReader extends FormatReader {
     return null;
   }
 
+  // -- Helper methods --
+
+  /**
+   * Returns the file existence cache, creating it if the reader was
+   * restored without one.
+   */
+  private FileExistenceCache getFileCache() {
+    if (fileCache == null) {
+      fileCache = new FileExistenceCache(
+        FileExistenceCache.isEnabled(getMetadataOptions()));
+    }
+    return fileCache;
+  }
+
   // -- Helper class --
 
   class Stack {
@@ -0,0 +1,315 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+import loci.common.Constants;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ZVIIndex records what {@link ZeissZVIReader} learns by scanning the
+ * streams of a ZVI file: where each image stream's pixel data starts, how it
+ * is compressed and which (Z, C, T, tile) position it holds, plus the raw
+ * tags of each tag stream.
+ *
+ * An index can be written to and read from a sidecar file, so that
+ * reopening a file does not have to read every image and tag stream again;
+ * a stored index is only accepted if the length and modification time of
+ * the ZVI file match.
+ */
+public class ZVIIndex {
+
+  // -- Constants --
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZVIIndex.class);
+
+  /** Suffix appended to the ZVI file name to form the sidecar name. */
+  public static final String SIDECAR_SUFFIX = ".bfzvi";
+
+  private static final int SIDECAR_MAGIC = 0x42465a56; // "BFZV"
+  private static final int SIDECAR_VERSION = 1;
+
+  /** Pixel data compression types. */
+  public static final int UNCOMPRESSED = 0;
+  public static final int JPEG = 1;
+  public static final int ZLIB = 2;
+
+  // -- Fields --
+
+  private final long fileLength;
+  private final long lastModified;
+
+  /** Image streams, keyed by stream name, in the order they were scanned. */
+  private final LinkedHashMap<String, Image> images =
+    new LinkedHashMap<String, Image>();
+
+  /** Tag streams, keyed by stream name. */
+  private final LinkedHashMap<String, Tags> tags =
+    new LinkedHashMap<String, Tags>();
+
+  // -- Constructor --
+
+  /** Constructs an empty index for the given ZVI file. */
+  public ZVIIndex(String file) throws IOException {
+    File f = new File(file);
+    if (!f.exists()) {
+      throw new IOException("File not found: " + file);
+    }
+    fileLength = f.length();
+    lastModified = f.lastModified();
+  }
+
+  // -- ZVIIndex API methods --
+
+  /**
+   * Loads a previously saved index for the given ZVI file.
+   *
+   * @return the stored index, or null if the sidecar does not exist or does
+   *   not describe the current version of the file
+   */
+  public static ZVIIndex load(String sidecar, String file) throws IOException {
+    File s = new File(sidecar);
+    if (!s.exists()) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(s)));
+    try {
+      if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION) {
+        return null;
+      }
+      long storedLength = in.readLong();
+      long storedModified = in.readLong();
+      ZVIIndex index = new ZVIIndex(file);
+      if (storedLength != index.fileLength ||
+        storedModified != index.lastModified)
+      {
+        LOGGER.debug("Ignoring stale ZVI index {}", sidecar);
+        return null;
+      }
+
+      int imageCount = in.readInt();
+      for (int i=0; i<imageCount; i++) {
+        String name = in.readUTF();
+        int z = in.readInt();
+        int c = in.readInt();
+        int t = in.readInt();
+        int tile = in.readInt();
+        int sizeX = in.readInt();
+        int sizeY = in.readInt();
+        int bpp = in.readInt();
+        int compression = in.readInt();
+        int offset = in.readInt();
+        index.addImage(name, new Image(z, c, t, tile, sizeX, sizeY, bpp,
+          compression, offset));
+      }
+
+      int tagStreams = in.readInt();
+      for (int i=0; i<tagStreams; i++) {
+        String name = in.readUTF();
+        int count = in.readInt();
+        int[] ids = new int[count];
+        String[] values = new String[count];
+        for (int q=0; q<count; q++) {
+          ids[q] = in.readInt();
+          values[q] = readString(in);
+        }
+        index.addTags(name, ids, values);
+      }
+      return index;
+    }
+    catch (EOFException e) {
+      LOGGER.debug("Truncated ZVI index {}", sidecar, e);
+      return null;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /** Writes this index to the given sidecar file. */
+  public void save(String sidecar) throws IOException {
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(sidecar)));
+    try {
+      out.writeInt(SIDECAR_MAGIC);
+      out.writeInt(SIDECAR_VERSION);
+      out.writeLong(fileLength);
+      out.writeLong(lastModified);
+
+      out.writeInt(images.size());
+      for (String name : images.keySet()) {
+        Image image = images.get(name);
+        out.writeUTF(name);
+        out.writeInt(image.z);
+        out.writeInt(image.c);
+        out.writeInt(image.t);
+        out.writeInt(image.tile);
+        out.writeInt(image.sizeX);
+        out.writeInt(image.sizeY);
+        out.writeInt(image.bpp);
+        out.writeInt(image.compression);
+        out.writeInt(image.offset);
+      }
+
+      out.writeInt(tags.size());
+      for (String name : tags.keySet()) {
+        Tags t = tags.get(name);
+        out.writeUTF(name);
+        out.writeInt(t.ids.length);
+        for (int q=0; q<t.ids.length; q++) {
+          out.writeInt(t.ids[q]);
+          writeString(out, t.values[q]);
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /** Records the image stored in the given stream. */
+  public void addImage(String name, Image image) {
+    images.put(name, image);
+  }
+
+  /**
+   * Returns the image stored in the given stream, or null if the stream was
+   * not recorded as holding pixel data.
+   */
+  public Image getImage(String name) {
+    return images.get(name);
+  }
+
+  /** Returns the number of recorded image streams. */
+  public int getImageCount() {
+    return images.size();
+  }
+
+  /** Records the tag IDs and values read from the given tag stream. */
+  public void addTags(String name, int[] ids, String[] values) {
+    if (ids.length != values.length) {
+      throw new IllegalArgumentException("Expected " + ids.length +
+        " tag values, got " + values.length);
+    }
+    tags.put(name, new Tags(ids, values));
+  }
+
+  /**
+   * Returns the tag IDs read from the given tag stream, or null if the
+   * stream was not recorded.
+   */
+  public int[] getTagIDs(String name) {
+    Tags t = tags.get(name);
+    return t == null ? null : t.ids;
+  }
+
+  /**
+   * Returns the tag values read from the given tag stream, or null if the
+   * stream was not recorded.
+   */
+  public String[] getTagValues(String name) {
+    Tags t = tags.get(name);
+    return t == null ? null : t.values;
+  }
+
+  // -- Helper methods --
+
+  /** Writes a string that may be null or longer than 64 KB. */
+  private static void writeString(DataOutputStream out, String s)
+    throws IOException
+  {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] b = s.getBytes(Constants.ENCODING);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int len = in.readInt();
+    if (len < 0) {
+      return null;
+    }
+    byte[] b = new byte[len];
+    in.readFully(b);
+    return new String(b, Constants.ENCODING);
+  }
+
+  // -- Helper classes --
+
+  /** Location and position of one image stream's pixel data. */
+  public static class Image {
+    /** Z, C, T and tile index as stored in the stream. */
+    public final int z, c, t, tile;
+    public final int sizeX, sizeY;
+    /** Bytes per pixel as stored in the stream. */
+    public final int bpp;
+    /** One of {@link #UNCOMPRESSED}, {@link #JPEG} or {@link #ZLIB}. */
+    public final int compression;
+    /** Offset of the pixel data within the stream. */
+    public final int offset;
+
+    public Image(int z, int c, int t, int tile, int sizeX, int sizeY, int bpp,
+      int compression, int offset)
+    {
+      this.z = z;
+      this.c = c;
+      this.t = t;
+      this.tile = tile;
+      this.sizeX = sizeX;
+      this.sizeY = sizeY;
+      this.bpp = bpp;
+      this.compression = compression;
+      this.offset = offset;
+    }
+  }
+
+  private static class Tags {
+    final int[] ids;
+    final String[] values;
+
+    Tags(int[] ids, String[] values) {
+      this.ids = ids;
+      this.values = values;
+    }
+  }
+
+}
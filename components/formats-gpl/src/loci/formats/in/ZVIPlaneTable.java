@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.in;
+
+import java.util.Arrays;
+
+/**
+ * ZVIPlaneTable finds the image stream that holds a plane of a ZVI file
+ * from its (Z, C, T, series) coordinates.
+ *
+ * If the coordinates are dense enough, a lookup table covering every
+ * position is built once and each lookup is a single array access.
+ * Otherwise (for example when a few coordinates are very large) the table
+ * would waste memory, so lookups fall back to a linear search of the
+ * coordinates.  Either way, the first image with matching coordinates is
+ * returned.
+ */
+public class ZVIPlaneTable {
+
+  // -- Constants --
+
+  /** Smallest table size that is always allowed. */
+  private static final long MIN_TABLE_SIZE = 65536;
+
+  /** Largest table size allowed per image, above the minimum. */
+  private static final int MAX_ENTRIES_PER_IMAGE = 4;
+
+  // -- Fields --
+
+  /** Z, C, T and series index of each image. */
+  private final int[][] coordinates;
+
+  /**
+   * Index into {@link #coordinates} of each (series, Z, C, T) position, or
+   * -1; null if the coordinates are searched instead.
+   */
+  private final int[] index;
+
+  /** Number of series, Z, C and T positions covered by the table. */
+  private final int[] sizes;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a table for the given coordinates.  Element
+   * <code>q</code> of the array holds the Z, C, T and series index of image
+   * <code>q</code>; negative values mark images that are never found.  The
+   * array is referenced, not copied.
+   */
+  public ZVIPlaneTable(int[][] coordinates) {
+    this.coordinates = coordinates;
+
+    int[] max = new int[4];
+    for (int[] coords : coordinates) {
+      max[0] = Math.max(max[0], coords[3] + 1);
+      max[1] = Math.max(max[1], coords[0] + 1);
+      max[2] = Math.max(max[2], coords[1] + 1);
+      max[3] = Math.max(max[3], coords[2] + 1);
+    }
+    long size = (long) max[0] * max[1] * max[2] * max[3];
+    if (size > Math.max(
+      (long) MAX_ENTRIES_PER_IMAGE * coordinates.length, MIN_TABLE_SIZE))
+    {
+      index = null;
+      sizes = null;
+      return;
+    }
+
+    index = new int[(int) size];
+    Arrays.fill(index, -1);
+    sizes = max;
+    for (int q=coordinates.length-1; q>=0; q--) {
+      int[] coords = coordinates[q];
+      if (coords[0] < 0 || coords[1] < 0 || coords[2] < 0 || coords[3] < 0) {
+        continue;
+      }
+      // NB: iterating backwards makes the first matching image win
+      index[getTableIndex(coords[0], coords[1], coords[2], coords[3])] = q;
+    }
+  }
+
+  // -- ZVIPlaneTable API methods --
+
+  /** Returns true if lookups use a table instead of a linear search. */
+  public boolean isIndexed() {
+    return index != null;
+  }
+
+  /**
+   * Returns the index of the first image with the given coordinates, or -1
+   * if there is none.
+   */
+  public int find(int z, int c, int t, int series) {
+    if (index == null) {
+      for (int q=0; q<coordinates.length; q++) {
+        if (coordinates[q][0] == z && coordinates[q][1] == c &&
+          coordinates[q][2] == t && coordinates[q][3] == series)
+        {
+          return q;
+        }
+      }
+      return -1;
+    }
+    if (series < 0 || series >= sizes[0] || z < 0 || z >= sizes[1] ||
+      c < 0 || c >= sizes[2] || t < 0 || t >= sizes[3])
+    {
+      return -1;
+    }
+    return index[getTableIndex(z, c, t, series)];
+  }
+
+  // -- Helper methods --
+
+  private int getTableIndex(int z, int c, int t, int series) {
+    return ((series * sizes[1] + z) * sizes[2] + c) * sizes[3] + t;
+  }
+
+}
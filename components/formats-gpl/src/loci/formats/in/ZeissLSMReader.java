@@ -76,6 +76,9 @@ public class ZeissLSMReader extends FormatReader {
 
   // -- Constants --
 
+  public static final String PLANE_CACHE_SIZE_KEY = "zeisslsm.plane_cache_mb";
+  public static final int PLANE_CACHE_SIZE_DEFAULT = 64;
+
   public static final String[] MDB_SUFFIX = {"mdb"};
 
   /** Tag identifying a Zeiss LSM file. */
@@ -155,6 +158,12 @@ public class ZeissLSMReader extends FormatReader {
   private static final int ANGLE = 28;
   private static final int CIRCLE_3POINT = 29;
 
+  /**
+   * Maximum number of LSM files kept open at once when reading a
+   * multi-file dataset.
+   */
+  private static final int MAX_OPEN_FILES = 8;
+
   // -- Static fields --
 
   private static final ImmutableMap<Integer, String> METADATA_KEYS =
@@ -170,6 +179,12 @@ public class ZeissLSMReader extends FormatReader {
   private List<IFDList> ifdsList;
   private transient TiffParser tiffParser;
 
+  /**
+   * Parsers for recently used LSM files in a multi-file dataset.  The least
+   * recently used file is closed once more than MAX_OPEN_FILES are open.
+   */
+  private transient TiffParserPool openParsers;
+
   private int nextLaser = 0, nextDetector = 0;
   private int nextFilter = 0, nextDichroicChannel = 0, nextDichroic = 0;
   private int nextIllumChannel = 0, nextDetectChannel = 0;
@@ -193,6 +208,12 @@ public class ZeissLSMReader extends FormatReader {
   private byte[] prevBuf = null;
   private Region prevRegion = null;
 
+  /**
+   * Decoded multi-channel planes keyed by series and plane index; used when
+   * planes are split into channels.
+   */
+  private transient PlaneCache planeCache;
+
   private Map<Integer, String> acquiredDate =
     new HashMap<Integer, String>();
   private Color[] channelColor;
@@ -209,6 +230,26 @@ public class ZeissLSMReader extends FormatReader {
       "are present, an .mdb file should also be present";
   }
 
+  // -- ZeissLSMReader API methods --
+
+  /**
+   * Returns the number of megabytes of decoded multi-channel planes kept in
+   * memory when planes are split into channels, as set by
+   * {@link #PLANE_CACHE_SIZE_KEY}.  A size of 0 disables the cache, so each
+   * channel is decoded separately.
+   */
+  public int getPlaneCacheSize() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer size = ((DynamicMetadataOptions) options).getInteger(
+        PLANE_CACHE_SIZE_KEY, PLANE_CACHE_SIZE_DEFAULT);
+      if (size != null && size >= 0) {
+        return size;
+      }
+    }
+    return PLANE_CACHE_SIZE_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#getOptimalTileWidth() */
@@ -247,6 +288,7 @@ public class ZeissLSMReader extends FormatReader {
   @Override
   public void close(boolean fileOnly) throws IOException {
     super.close(fileOnly);
+    closeOpenParsers();
     if (!fileOnly) {
       pixelSizeX = pixelSizeY = pixelSizeZ = 0;
       lut = null;
@@ -266,6 +308,7 @@ public class ZeissLSMReader extends FormatReader {
       prevChannel = 0;
       prevBuf = null;
       prevRegion = null;
+      planeCache = null;
       xCoordinates = null;
       yCoordinates = null;
       zCoordinates = null;
@@ -379,14 +422,15 @@ public class ZeissLSMReader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
+    TiffParser parser;
     if (getSeriesCount() > 1) {
-      in.close();
-      in = new RandomAccessInputStream(getLSMFileFromSeries(getSeries()));
-      in.order(!isLittleEndian());
-      tiffParser = new TiffParser(in);
+      parser = getParser(getLSMFileFromSeries(getSeries()));
     }
-    else if (tiffParser == null) {
-      tiffParser = new TiffParser(in);
+    else {
+      if (tiffParser == null) {
+        tiffParser = new TiffParser(in);
+      }
+      parser = tiffParser;
     }
 
     IFDList ifds = ifdsList.get(getSeries());
@@ -396,25 +440,41 @@ public class ZeissLSMReader extends FormatReader {
       int bpp = FormatTools.getBytesPerPixel(getPixelType());
       int plane = no / getSizeC();
       int c = no % getSizeC();
-      Region region = new Region(x, y, w, h);
-
-      if (prevPlane != plane || prevBuf == null ||
-        prevBuf.length < w * h * bpp * getSizeC() || !region.equals(prevRegion))
-      {
-        prevBuf = new byte[w * h * bpp * getSizeC()];
-        tiffParser.getSamples(ifds.get(plane), prevBuf, x, y, w, h);
-        prevPlane = plane;
-        prevRegion = region;
+      long planeSize = (long) getSizeX() * getSizeY() * bpp * getSizeC();
+
+      if (planeCache == null) {
+        planeCache = new PlaneCache(getPlaneCacheSize() * 1024L * 1024L);
+      }
+      if (planeCache.fits(planeSize)) {
+        // decode the whole plane once, then copy any channel and region
+        // straight out of the cache
+        byte[] samples =
+          getCachedPlane(parser, ifds.get(plane), plane, (int) planeSize);
+        PlaneCache.copyChannel(
+          samples, buf, c, getSizeX(), getSizeY(), bpp, x, y, w, h);
+      }
+      else {
+        Region region = new Region(x, y, w, h);
+        int len = w * h * bpp * getSizeC();
+        if (prevPlane != plane || prevBuf == null ||
+          prevBuf.length < len || !region.equals(prevRegion))
+        {
+          if (prevBuf == null || prevBuf.length < len) {
+            prevBuf = new byte[len];
+          }
+          parser.getSamples(ifds.get(plane), prevBuf, x, y, w, h);
+          prevPlane = plane;
+          prevRegion = region;
+        }
+        ImageTools.splitChannels(
+          prevBuf, buf, c, getSizeC(), bpp, false, false, w * h * bpp);
       }
-      ImageTools.splitChannels(
-        prevBuf, buf, c, getSizeC(), bpp, false, false, w * h * bpp);
       prevChannel = c;
     }
     else {
-      tiffParser.getSamples(ifds.get(no), buf, x, y, w, h);
+      parser.getSamples(ifds.get(no), buf, x, y, w, h);
       prevChannel = getZCTCoords(no)[1];
     }
-    if (getSeriesCount() > 1) in.close();
     return buf;
   }
 
@@ -602,6 +662,52 @@ public class ZeissLSMReader extends FormatReader {
 
   // -- Helper methods --
 
+  /**
+   * Returns an open parser for the given LSM file, opening the file if it
+   * is not already in the pool of open files.
+   */
+  private TiffParser getParser(String file) throws IOException {
+    if (openParsers == null) {
+      openParsers = new TiffParserPool(MAX_OPEN_FILES) {
+        @Override
+        protected RandomAccessInputStream openStream(String path)
+          throws IOException
+        {
+          RandomAccessInputStream s = new RandomAccessInputStream(path);
+          s.order(!isLittleEndian());
+          return s;
+        }
+      };
+    }
+    return openParsers.get(file);
+  }
+
+  /**
+   * Returns the decoded samples for all channels of the given plane in the
+   * current series, decoding the plane if it is not cached.
+   */
+  private byte[] getCachedPlane(TiffParser parser, IFD ifd, int plane,
+    int planeSize) throws FormatException, IOException
+  {
+    long key = ((long) getSeries() << 32) | plane;
+    byte[] samples = planeCache.get(key);
+    if (samples == null) {
+      samples = planeCache.allocate(planeSize);
+      parser.getSamples(ifd, samples, 0, 0, getSizeX(), getSizeY());
+      planeCache.put(key, samples);
+    }
+    return samples;
+  }
+
+  /** Closes all files opened by {@link #getParser(String)}. */
+  private void closeOpenParsers() throws IOException {
+    if (openParsers != null) {
+      openParsers.close();
+      openParsers = null;
+    }
+  }
+
+
   private String getMDBFile(String id) throws FormatException, IOException {
     Location parentFile = new Location(id).getAbsoluteFile().getParentFile();
     String[] fileList = parentFile.list();
@@ -43,7 +43,6 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.codec.CodecOptions;
 import loci.formats.codec.JPEGCodec;
-import loci.formats.codec.ZlibCodec;
 import loci.formats.meta.DummyMetadata;
 import loci.formats.meta.MetadataStore;
 import loci.formats.services.POIService;
@@ -61,11 +60,29 @@ public class ZeissZVIReader extends BaseZeissReader {
 
   private static final long ROI_SIGNATURE = 0x21fff6977547000dL;
 
+  public static final String INDEX_SIDECAR_KEY = "zeisszvi.index_sidecar";
+  public static final boolean INDEX_SIDECAR_DEFAULT = false;
+
   // -- Fields --
 
   protected transient POIService poi;
   protected String[] files;
 
+  /** Lookup of the image holding each plane; null until built. */
+  private transient ZVIPlaneTable planeTable;
+
+  /** Decompressors reused across planes. */
+  private transient JPEGCodec jpegCodec;
+  private transient RegionInflater inflater;
+
+  /**
+   * Stream index used while initializing: either loaded from the sidecar
+   * (in which case the image and tag streams are not read), or being
+   * recorded so that it can be saved.  Null if sidecars are disabled.
+   */
+  private transient ZVIIndex streamIndex;
+  private transient boolean streamIndexLoaded;
+
   // -- Constructor --
 
   /** Constructs a new ZeissZVI reader. */
@@ -74,6 +91,21 @@ public class ZeissZVIReader extends BaseZeissReader {
     domains = new String[] {FormatTools.LM_DOMAIN};
   }
 
+  // -- ZeissZVIReader API methods --
+
+  /**
+   * Returns true if the stream index built while opening a file should be
+   * saved next to the file and reused the next time the file is opened.
+   */
+  public boolean useIndexSidecar() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        INDEX_SIDECAR_KEY, INDEX_SIDECAR_DEFAULT);
+    }
+    return INDEX_SIDECAR_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
   /* @see loci.formats.IFormatReader#isThisType(RandomAccessInputStream) */
@@ -106,17 +138,8 @@ public class ZeissZVIReader extends BaseZeissReader {
     options.littleEndian = isLittleEndian();
     options.interleaved = isInterleaved();
 
-    int index = -1;
-
     int[] coords = getZCTCoords(no);
-    for (int q=0; q<coordinates.length; q++) {
-      if (coordinates[q][0] == coords[0] && coordinates[q][1] == coords[1] &&
-        coordinates[q][2] == coords[2] && coordinates[q][3] == getSeries())
-      {
-        index = q;
-        break;
-      }
-    }
+    int index = findImage(coords[0], coords[1], coords[2], getSeries());
     LOGGER.trace("no = " + no + ", index = " + index);
 
     if (index < 0 || index >= imageFiles.length) {
@@ -130,22 +153,25 @@ public class ZeissZVIReader extends BaseZeissReader {
     int row = getSizeX() * pixel;
 
     if (isJPEG) {
-      byte[] t = new JPEGCodec().decompress(s, options);
+      if (jpegCodec == null) {
+        jpegCodec = new JPEGCodec();
+      }
+      byte[] t = jpegCodec.decompress(s, options);
 
-      for (int yy=0; yy<h; yy++) {
-        System.arraycopy(t, (yy + y) * row + x * pixel, buf, yy*len, len);
+      if (len == row) {
+        System.arraycopy(t, y * row, buf, 0, h * row);
+      }
+      else {
+        for (int yy=0; yy<h; yy++) {
+          System.arraycopy(t, (yy + y) * row + x * pixel, buf, yy*len, len);
+        }
       }
     }
     else if (isZlib) {
-      byte[] t = new ZlibCodec().decompress(s, options);
-      for (int yy=0; yy<h; yy++) {
-        int src = (yy + y) * row + x * pixel;
-        int dest = yy * len;
-        if (src + len <= t.length && dest + len <= buf.length) {
-          System.arraycopy(t, src, buf, dest, len);
-        }
-        else break;
+      if (inflater == null) {
+        inflater = new RegionInflater();
       }
+      inflater.inflate(s, buf, x * pixel, y, len, row, h);
     }
     else {
       readPlane(s, x, y, w, h, buf);
@@ -171,6 +197,14 @@ public class ZeissZVIReader extends BaseZeissReader {
     if (poi != null) poi.close();
     poi = null;
     files = null;
+    planeTable = null;
+    jpegCodec = null;
+    if (inflater != null) {
+      inflater.close();
+      inflater = null;
+    }
+    streamIndex = null;
+    streamIndexLoaded = false;
   }
 
   // -- Internal FormatReader API methods --
@@ -199,6 +233,19 @@ public class ZeissZVIReader extends BaseZeissReader {
       coordinates[i][3] = Arrays.binarySearch(tiles, coordinates[i][3]);
       LOGGER.trace("corrected coordinate #{} = {}", i, coordinates[i]);
     }
+    planeTable = new ZVIPlaneTable(coordinates);
+
+    if (streamIndex != null && !streamIndexLoaded) {
+      String sidecar = getIndexSidecar();
+      try {
+        streamIndex.save(sidecar);
+      }
+      catch (IOException e) {
+        LOGGER.debug("Could not save ZVI index to {}", sidecar, e);
+      }
+    }
+    streamIndex = null;
+    streamIndexLoaded = false;
   }
 
   @Override
@@ -206,6 +253,44 @@ public class ZeissZVIReader extends BaseZeissReader {
     super.initVars(id);
     initPOIService();
     countImages();
+    openStreamIndex();
+  }
+
+  /**
+   * Loads the stream index from its sidecar if one is current, or starts
+   * recording a new one, when sidecars are enabled.
+   */
+  private void openStreamIndex() throws IOException {
+    streamIndex = null;
+    streamIndexLoaded = false;
+    if (!useIndexSidecar()) {
+      return;
+    }
+    String path = getMappedPath();
+    streamIndex = ZVIIndex.load(getIndexSidecar(), path);
+    streamIndexLoaded = streamIndex != null;
+    if (streamIndex == null) {
+      streamIndex = new ZVIIndex(path);
+    }
+  }
+
+  private String getMappedPath() {
+    return new Location(Location.getMappedId(currentId)).getAbsolutePath();
+  }
+
+  private String getIndexSidecar() {
+    return getMappedPath() + ZVIIndex.SIDECAR_SUFFIX;
+  }
+
+  /**
+   * Returns the index into {@link #imageFiles} of the given plane, or -1 if
+   * the plane is not stored.
+   */
+  private int findImage(int z, int c, int t, int series) {
+    if (planeTable == null) {
+      planeTable = new ZVIPlaneTable(coordinates);
+    }
+    return planeTable.find(z, c, t, series);
   }
 
   private void initPOIService() throws FormatException, IOException {
@@ -216,6 +301,11 @@ public class ZeissZVIReader extends BaseZeissReader {
     catch (DependencyException de) {
       throw new FormatException("POI library not found", de);
     }
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      poi.setIndexSidecarEnabled(((DynamicMetadataOptions) options).getBoolean(
+        POIService.INDEX_SIDECAR_KEY, POIService.INDEX_SIDECAR_DEFAULT));
+    }
     poi.initialize(Location.getMappedId(getCurrentFile()));
   }
 
@@ -257,70 +347,102 @@ public class ZeissZVIReader extends BaseZeissReader {
         int imageNum = getImageNumber(dirName, getImageCount() == 1 ? 0 : -1);
         if (imageNum == -1) continue;
 
-        // found a valid image stream
-        RandomAccessInputStream s = poi.getDocumentStream(name);
-        s.order(true);
-
-        if (s.length() <= 1024) {
-          s.close();
-          continue;
+        ZVIIndex.Image image = null;
+        if (streamIndexLoaded) {
+          image = streamIndex.getImage(name);
         }
+        else {
+          image = readImageHeader(name);
+          if (image != null && streamIndex != null) {
+            streamIndex.addImage(name, image);
+          }
+        }
+        if (image == null) continue;
+
+        zIndices.add(image.z);
+        timepointIndices.add(image.t);
+        channelIndices.add(image.c);
+        tileIndices.add(image.tile);
 
-        for (int q=0; q<11; q++) {
-          getNextTag(s);
+        core.get(0).sizeX = image.sizeX;
+        core.get(0).sizeY = image.sizeY;
+        if (bpp == 0) {
+          bpp = image.bpp;
         }
+        isZlib = image.compression == ZVIIndex.ZLIB;
+        isJPEG = image.compression == ZVIIndex.JPEG;
 
-        s.skipBytes(2);
-        int len = s.readInt() - 20;
-        s.skipBytes(8);
+        // save the offset to the pixel data
 
-        int zidx = s.readInt();
-        int cidx = s.readInt();
-        int tidx = s.readInt();
-        s.skipBytes(4);
-        int tileIndex = s.readInt();
+        offsets[imageNum] = image.offset;
+        coordinates[imageNum][0] = image.z;
+        coordinates[imageNum][1] = image.c;
+        coordinates[imageNum][2] = image.t;
+        coordinates[imageNum][3] = image.tile;
+        LOGGER.trace("imageNum = {}, coordinate = {}", imageNum, coordinates[imageNum]);
+        imageFiles[imageNum] = name;
+      }
+    }
+  }
 
-        zIndices.add(zidx);
-        timepointIndices.add(tidx);
-        channelIndices.add(cidx);
-        tileIndices.add(tileIndex);
+  /**
+   * Reads the header of the given image stream, or returns null if the
+   * stream is too small to hold pixel data.
+   */
+  private ZVIIndex.Image readImageHeader(String name) throws IOException {
+    // found a valid image stream
+    RandomAccessInputStream s = poi.getDocumentStream(name);
+    try {
+      s.order(true);
 
-        s.skipBytes(len - 8);
+      if (s.length() <= 1024) {
+        return null;
+      }
 
-        for (int q=0; q<5; q++) {
-          getNextTag(s);
-        }
+      for (int q=0; q<11; q++) {
+        getNextTag(s);
+      }
 
-        s.skipBytes(4);
-        core.get(0).sizeX = s.readInt();
-        core.get(0).sizeY = s.readInt();
-        s.skipBytes(4);
+      s.skipBytes(2);
+      int len = s.readInt() - 20;
+      s.skipBytes(8);
 
-        if (bpp == 0) {
-          bpp = s.readInt();
-        }
-        else s.skipBytes(4);
-        s.skipBytes(4);
+      int zidx = s.readInt();
+      int cidx = s.readInt();
+      int tidx = s.readInt();
+      s.skipBytes(4);
+      int tileIndex = s.readInt();
 
-        int valid = s.readInt();
+      s.skipBytes(len - 8);
 
-        String check = s.readString(4).trim();
-        isZlib = (valid == 0 || valid == 1) && check.equals("WZL");
-        isJPEG = (valid == 0 || valid == 1) && !isZlib;
+      for (int q=0; q<5; q++) {
+        getNextTag(s);
+      }
 
-        // save the offset to the pixel data
+      s.skipBytes(4);
+      int sizeX = s.readInt();
+      int sizeY = s.readInt();
+      s.skipBytes(4);
 
-        offsets[imageNum] = (int) s.getFilePointer() - 4;
+      int imageBpp = s.readInt();
+      s.skipBytes(4);
 
-        if (isZlib) offsets[imageNum] += 8;
-        coordinates[imageNum][0] = zidx;
-        coordinates[imageNum][1] = cidx;
-        coordinates[imageNum][2] = tidx;
-        coordinates[imageNum][3] = tileIndex;
-        LOGGER.trace("imageNum = {}, coordinate = {}", imageNum, coordinates[imageNum]);
-        imageFiles[imageNum] = name;
-        s.close();
+      int valid = s.readInt();
+
+      String check = s.readString(4).trim();
+      int compression = ZVIIndex.UNCOMPRESSED;
+      if (valid == 0 || valid == 1) {
+        compression = check.equals("WZL") ? ZVIIndex.ZLIB : ZVIIndex.JPEG;
       }
+
+      int offset = (int) s.getFilePointer() - 4;
+      if (compression == ZVIIndex.ZLIB) offset += 8;
+
+      return new ZVIIndex.Image(zidx, cidx, tidx, tileIndex, sizeX, sizeY,
+        imageBpp, compression, offset);
+    }
+    finally {
+      s.close();
     }
   }
 
@@ -479,6 +601,18 @@ public class ZeissZVIReader extends BaseZeissReader {
   private void parseTags(int image, String file, MetadataStore store)
     throws FormatException, IOException {
     ArrayList<Tag> tags = new ArrayList<Tag>();
+    if (streamIndexLoaded) {
+      int[] ids = streamIndex.getTagIDs(file);
+      String[] values = streamIndex.getTagValues(file);
+      if (ids != null) {
+        for (int i=0; i<ids.length; i++) {
+          tags.add(new Tag(ids[i], values[i], Context.MAIN));
+        }
+        parseMainTags(image, store, tags);
+        return;
+      }
+    }
+
     RandomAccessInputStream s = poi.getDocumentStream(file);
     s.order(true);
 
@@ -499,10 +633,19 @@ public class ZeissZVIReader extends BaseZeissReader {
       if (tagID != 1047) // Use 1025 only for ZVI.
         tags.add(new Tag(tagID, value, Context.MAIN));
     }
+    s.close();
 
-    parseMainTags(image, store, tags);
+    if (streamIndex != null) {
+      int[] ids = new int[tags.size()];
+      String[] values = new String[tags.size()];
+      for (int i=0; i<ids.length; i++) {
+        ids[i] = tags.get(i).getKeyID();
+        values[i] = tags.get(i).getValue();
+      }
+      streamIndex.addTags(file, ids, values);
+    }
 
-    s.close();
+    parseMainTags(image, store, tags);
   }
 
   /**
@@ -55,7 +55,28 @@ public interface JHDFService extends Service {
      * <code>file</code>.
      */
     public void setFileForWrite(String file) throws IOException;
-    
+
+    /**
+     * Initializes the service on a given file path for read-only access
+     * from several threads at once.  A pool of up to <code>handles</code>
+     * HDF5 readers is opened on the file; each read borrows one handle for
+     * the duration of the call.  Write methods are not available in this
+     * mode.
+     *
+     * @param file Path to initialize the service with.
+     * @param handles Maximum number of HDF5 handles to open; must be >= 1.
+     * @throws IOException If there is an error initializing the service with
+     * <code>file</code>.
+     */
+    public void setFileForConcurrentRead(String file, int handles)
+      throws IOException;
+
+    /**
+     * Returns true if the service was initialized with
+     * {@link #setFileForConcurrentRead(String, int)}.
+     */
+    public boolean isConcurrentRead();
+
 
     /**
    * Retrieves the current initialized file path.
@@ -25,7 +25,10 @@
 package loci.formats.services;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import loci.common.services.AbstractService;
 import loci.formats.FormatTools;
@@ -67,6 +70,15 @@ public class JHDFServiceImpl extends AbstractService
      */
     private IHDF5Writer hdfWriter;
 
+    /**
+     * Idle HDF5 readers available to concurrent callers; null unless the
+     * service was initialized with setFileForConcurrentRead.
+     */
+    private BlockingQueue<IHDF5Reader> readerPool;
+
+    /** All HDF5 readers opened for concurrent access, idle or not. */
+    private List<IHDF5Reader> pooledReaders;
+
     // -- NetCDFService API methods ---
     /**
      * Default constructor.
@@ -81,9 +93,47 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#setFile()
      */
     public void setFile(String file) throws IOException {
+        closeReaders();
         this.currentFile = file;
         this.hdfReader = HDF5Factory.openForReading(file);
     }
+
+    /* (non-Javadoc)
+     * @see loci.formats.JHDFService#setFileForConcurrentRead()
+     */
+    public void setFileForConcurrentRead(String file, int handles)
+        throws IOException
+    {
+        if (handles < 1) {
+            throw new IllegalArgumentException(
+                "At least one HDF5 handle is required: " + handles);
+        }
+        closeReaders();
+        List<IHDF5Reader> readers = new ArrayList<IHDF5Reader>(handles);
+        try {
+            for (int i = 0; i < handles; i++) {
+                readers.add(HDF5Factory.openForReading(file));
+            }
+        }
+        catch (RuntimeException e) {
+            for (IHDF5Reader reader : readers) {
+                reader.close();
+            }
+            throw new IOException("JHDFService: Unable to open " + file +
+                " for concurrent reading.\n" + e.getMessage());
+        }
+        this.currentFile = file;
+        this.pooledReaders = readers;
+        this.readerPool = new ArrayBlockingQueue<IHDF5Reader>(handles);
+        this.readerPool.addAll(readers);
+    }
+
+    /* (non-Javadoc)
+     * @see loci.formats.JHDFService#isConcurrentRead()
+     */
+    public boolean isConcurrentRead() {
+        return readerPool != null;
+    }
     
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#setFileForWrite()
@@ -104,14 +154,27 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#getMember()
      */
     public List<String> getMember(String path) {
-        return hdfReader.getGroupMembers(path);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.getGroupMembers(path);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#getShape()
      */
     public int[] getShape(String path) {
-        long[] tmp = hdfReader.getDataSetInformation(path).getDimensions();
+        long[] tmp;
+        IHDF5Reader reader = acquireReader();
+        try {
+            tmp = reader.getDataSetInformation(path).getDimensions();
+        }
+        finally {
+            releaseReader(reader);
+        }
         // Conversion from long[] to int[]
         int[] result = new int[tmp.length];
         for (int k = 0; k < tmp.length; k++) {
@@ -124,14 +187,26 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#readByteArray()
      */
     public MDByteArray readByteArray(String path) {
-        return this.hdfReader.int8().readMDArray(path);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.int8().readMDArray(path);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#readIntArray()
      */
     public MDIntArray readIntArray(String path) {
-        return this.hdfReader.int32().readMDArray(path);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.int32().readMDArray(path);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
@@ -143,7 +218,14 @@ public class JHDFServiceImpl extends AbstractService
         for (int k = 0; k < offset.length; k++) {
             longOffset[k] = (long) offset[k];
         }
-        return this.hdfReader.int32().readMDArrayBlockWithOffset(path, size, longOffset);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.int32().readMDArrayBlockWithOffset(
+                path, size, longOffset);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
@@ -154,7 +236,14 @@ public class JHDFServiceImpl extends AbstractService
         for (int k = 0; k < offset.length; k++) {
             longOffset[k] = (long) offset[k];
         }
-        return this.hdfReader.int8().readMDArrayBlockWithOffset(path, size, longOffset);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.int8().readMDArrayBlockWithOffset(
+                path, size, longOffset);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
      /* (non-Javadoc)
@@ -165,28 +254,54 @@ public class JHDFServiceImpl extends AbstractService
         for (int k = 0; k < offset.length; k++) {
             longOffset[k] = (long) offset[k];
         }
-        return this.hdfReader.int16().readMDArrayBlockWithOffset(path, size, longOffset);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.int16().readMDArrayBlockWithOffset(
+                path, size, longOffset);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#readStringArray()
      */
     public String[] readStringArray(String path) {
-        return this.hdfReader.string().readArray(path);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.string().readArray(path);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#readCompoundArrayDataMap()
      */
     public HDF5CompoundDataMap[] readCompoundArrayDataMap(String path) {
-        return this.hdfReader.readCompoundArray(path, HDF5CompoundDataMap.class);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.readCompoundArray(path, HDF5CompoundDataMap.class);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#getElementSize()
      */
     public int getElementSize(String path) {
-        return this.hdfReader.getDataSetInformation(path).getTypeInformation().getElementSize();
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.getDataSetInformation(path).getTypeInformation()
+                .getElementSize();
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     
@@ -194,6 +309,7 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#initIntArray()
      */
     public void initIntArray(String path, long[] dimensions, long bpp) {
+        checkWritable();
         if (bpp == 1) {
             this.hdfWriter.uint8().createMDArray(path, dimensions, 
                 new int[] {1,1,1, (int) dimensions[3], (int) dimensions[4]}, 
@@ -213,6 +329,7 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#writeArraySlice()
      */
     public void writeArraySlice(String path, MDByteArray image, long[] offset) {
+        checkWritable();
         int[] mem_offset = new int[] {0, 0, 0, 0, 0};
         this.hdfWriter.uint8().writeMDArrayBlockWithOffset(path, image, image.dimensions(), offset, mem_offset);
     }
@@ -221,6 +338,7 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#writeArraySlice()
      */
     public void writeArraySlice(String path, MDShortArray image, long[] offset) {
+        checkWritable();
         int[] mem_offset = new int[] {0, 0, 0, 0, 0};
         this.hdfWriter.uint16().writeMDArrayBlockWithOffset(path, image, image.dimensions(), offset, mem_offset);
     }
@@ -229,6 +347,7 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#writeArraySlice()
      */
     public void writeArraySlice(String path, MDIntArray image, long[] offset) {
+        checkWritable();
         int[] mem_offset = new int[] {0, 0, 0, 0, 0};
         this.hdfWriter.int32().writeMDArrayBlockWithOffset(path, image, image.dimensions(), offset, mem_offset);
     }
@@ -237,6 +356,7 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#createGroup()
      */
     public void createGroup(String path) throws IOException{
+        checkWritable();
         try {
             hdfWriter.object().createGroup(path);
         }
@@ -249,21 +369,78 @@ public class JHDFServiceImpl extends AbstractService
      * @see loci.formats.JHDFService#exists()
      */
     public boolean exists(String path) {
-        return hdfReader.exists(path);
+        IHDF5Reader reader = acquireReader();
+        try {
+            return reader.exists(path);
+        }
+        finally {
+            releaseReader(reader);
+        }
     }
 
     /* (non-Javadoc)
      * @see loci.formats.JHDFService#close()
      */
     public void close() throws IOException {
-        if (hdfReader != null) {
-            hdfReader.close();
-        }
+        closeReaders();
         
         if (hdfWriter != null) {
             hdfWriter.close();
         }
+
         currentFile = null;
+        hdfWriter = null;
+    }
+
+    // -- Helper methods --
+
+    /** Closes the single reader and all pooled readers, if any are open. */
+    private void closeReaders() {
+        if (hdfReader != null) {
+            hdfReader.close();
+        }
+        if (pooledReaders != null) {
+            for (IHDF5Reader reader : pooledReaders) {
+                reader.close();
+            }
+        }
         hdfReader = null;
+        readerPool = null;
+        pooledReaders = null;
+    }
+
+    /**
+     * Returns the HDF5 reader to use for the current call.  In concurrent
+     * mode this blocks until one of the pooled handles is idle.
+     */
+    private IHDF5Reader acquireReader() {
+        BlockingQueue<IHDF5Reader> pool = readerPool;
+        if (pool == null) {
+            return hdfReader;
+        }
+        try {
+            return pool.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while waiting for an HDF5 handle", e);
+        }
+    }
+
+    /** Fails if the service is not open for writing. */
+    private void checkWritable() {
+        if (readerPool != null) {
+            throw new IllegalStateException(
+                "JHDFService: " + currentFile + " is open for concurrent reading");
+        }
+    }
+
+    /** Returns a reader obtained from {@link #acquireReader()}. */
+    private void releaseReader(IHDF5Reader reader) {
+        BlockingQueue<IHDF5Reader> pool = readerPool;
+        if (pool != null) {
+            pool.offer(reader);
+        }
     }
 }
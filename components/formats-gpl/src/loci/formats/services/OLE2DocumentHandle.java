@@ -0,0 +1,426 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import loci.common.DataTools;
+import loci.common.IRandomAccess;
+import loci.common.RandomAccessInputStream;
+
+/**
+ * Read-only {@link IRandomAccess} over a single document of an OLE2 file.
+ * Reads are translated through the document's sector chain by an
+ * {@link OLE2Index}, so only the sectors that are actually read are
+ * touched.  The most recently used block is kept, so that reading a
+ * document's header field by field does not seek once per field.
+ */
+public class OLE2DocumentHandle implements IRandomAccess {
+
+  // -- Fields --
+
+  private final OLE2Index index;
+  private final RandomAccessInputStream in;
+  private final int document;
+  private final long length;
+
+  private long fp;
+  private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+  /** The most recently read block, and its number (-1 if none). */
+  private final byte[] block;
+  private long blockNumber = -1;
+  private int blockLength;
+
+  private final byte[] scratch = new byte[8];
+
+  // -- Constructor --
+
+  /**
+   * Constructs a handle over the given document of the OLE2 file open as
+   * <code>in</code>, which is described by the given index.
+   */
+  public OLE2DocumentHandle(OLE2Index index, RandomAccessInputStream in,
+    int document)
+  {
+    this.index = index;
+    this.in = in;
+    this.document = document;
+    length = index.getSize(document);
+    block = new byte[index.getBlockSize(document)];
+  }
+
+  // -- IRandomAccess API methods --
+
+  /* @see IRandomAccess.close() */
+  @Override
+  public void close() throws IOException {
+    // NB: the underlying file belongs to the caller
+  }
+
+  /* @see IRandomAccess.getFilePointer() */
+  @Override
+  public long getFilePointer() throws IOException {
+    return fp;
+  }
+
+  /* @see IRandomAccess.exists() */
+  public boolean exists() throws IOException {
+    return true;
+  }
+
+  /* @see IRandomAccess.length() */
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  /* @see IRandomAccess.setLength(long) */
+  public void setLength(long newLength) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see IRandomAccess.getOrder() */
+  @Override
+  public ByteOrder getOrder() {
+    return order;
+  }
+
+  /* @see IRandomAccess.setOrder(ByteOrder) */
+  @Override
+  public void setOrder(ByteOrder order) {
+    this.order = order;
+  }
+
+  /* @see IRandomAccess.read(byte[]) */
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  /* @see IRandomAccess.read(byte[], int, int) */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (fp >= length) {
+      return -1;
+    }
+    int n;
+    long blockIndex = fp / block.length;
+    int within = (int) (fp % block.length);
+    if (within + len <= block.length) {
+      // small read within one block
+      if (blockIndex != blockNumber) {
+        blockNumber = -1;
+        blockLength = index.read(in, document, blockIndex * block.length,
+          block, 0, block.length);
+        blockNumber = blockIndex;
+      }
+      n = Math.max(0, Math.min(len, blockLength - within));
+      System.arraycopy(block, within, b, off, n);
+    }
+    else {
+      n = index.read(in, document, fp, b, off, len);
+    }
+    if (n <= 0) {
+      return -1;
+    }
+    fp += n;
+    return n;
+  }
+
+  /* @see IRandomAccess.read(ByteBuffer) */
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return read(buffer, 0, buffer.capacity());
+  }
+
+  /* @see IRandomAccess.read(ByteBuffer, int, int) */
+  @Override
+  public int read(ByteBuffer buffer, int offset, int len) throws IOException {
+    if (buffer.hasArray()) {
+      return read(buffer.array(), buffer.arrayOffset() + offset, len);
+    }
+    byte[] b = new byte[len];
+    int n = read(b, 0, len);
+    if (n > 0) {
+      buffer.position(offset);
+      buffer.put(b, 0, n);
+    }
+    return n;
+  }
+
+  /* @see IRandomAccess.seek(long) */
+  @Override
+  public void seek(long pos) throws IOException {
+    fp = pos;
+  }
+
+  /* @see IRandomAccess.write(ByteBuffer) */
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see IRandomAccess.write(ByteBuffer, int, int) */
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  // -- DataInput API methods --
+
+  /* @see java.io.DataInput.readBoolean() */
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  /* @see java.io.DataInput.readByte() */
+  @Override
+  public byte readByte() throws IOException {
+    readFully(scratch, 0, 1);
+    return scratch[0];
+  }
+
+  /* @see java.io.DataInput.readChar() */
+  @Override
+  public char readChar() throws IOException {
+    return (char) readShort();
+  }
+
+  /* @see java.io.DataInput.readDouble() */
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  /* @see java.io.DataInput.readFloat() */
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  /* @see java.io.DataInput.readFully(byte[]) */
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  /* @see java.io.DataInput.readFully(byte[], int, int) */
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = read(b, off, len);
+      if (n < 0) {
+        throw new EOFException();
+      }
+      off += n;
+      len -= n;
+    }
+  }
+
+  /* @see java.io.DataInput.readInt() */
+  @Override
+  public int readInt() throws IOException {
+    readFully(scratch, 0, 4);
+    return DataTools.bytesToInt(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readLine() */
+  @Override
+  public String readLine() throws IOException {
+    if (fp >= length) {
+      return null;
+    }
+    StringBuilder line = new StringBuilder();
+    while (fp < length) {
+      char c = (char) (readByte() & 0xff);
+      if (c == '\n') {
+        break;
+      }
+      if (c == '\r') {
+        if (fp < length && (readByte() & 0xff) != '\n') {
+          fp--;
+        }
+        break;
+      }
+      line.append(c);
+    }
+    return line.toString();
+  }
+
+  /* @see java.io.DataInput.readLong() */
+  @Override
+  public long readLong() throws IOException {
+    readFully(scratch, 0, 8);
+    return DataTools.bytesToLong(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readShort() */
+  @Override
+  public short readShort() throws IOException {
+    readFully(scratch, 0, 2);
+    return DataTools.bytesToShort(scratch, 0, isLittleEndian());
+  }
+
+  /* @see java.io.DataInput.readUnsignedByte() */
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  /* @see java.io.DataInput.readUnsignedShort() */
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  /* @see java.io.DataInput.readUTF() */
+  @Override
+  public String readUTF() throws IOException {
+    // NB: the length is always big-endian, as in DataInputStream
+    readFully(scratch, 0, 2);
+    int utfLength = DataTools.bytesToShort(scratch, 0, false) & 0xffff;
+    byte[] utf = new byte[utfLength + 2];
+    System.arraycopy(scratch, 0, utf, 0, 2);
+    readFully(utf, 2, utfLength);
+    return new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+  }
+
+  /* @see java.io.DataInput.skipBytes(int) */
+  @Override
+  public int skipBytes(int n) throws IOException {
+    return (int) skipBytes((long) n);
+  }
+
+  /* @see IRandomAccess.skipBytes(long) */
+  public long skipBytes(long n) throws IOException {
+    long skipped = Math.max(0, Math.min(n, length - fp));
+    fp += skipped;
+    return skipped;
+  }
+
+  // -- DataOutput API methods --
+
+  /* @see java.io.DataOutput.write(byte[]) */
+  @Override
+  public void write(byte[] b) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.write(int b) */
+  @Override
+  public void write(int b) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeBoolean(boolean) */
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeByte(int) */
+  @Override
+  public void writeByte(int v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeBytes(String) */
+  @Override
+  public void writeBytes(String s) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeChar(int) */
+  @Override
+  public void writeChar(int v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeChars(String) */
+  @Override
+  public void writeChars(String s) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeDouble(double) */
+  @Override
+  public void writeDouble(double v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeFloat(float) */
+  @Override
+  public void writeFloat(float v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeInt(int) */
+  @Override
+  public void writeInt(int v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeLong(long) */
+  @Override
+  public void writeLong(long v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeShort(int) */
+  @Override
+  public void writeShort(int v) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  /* @see java.io.DataOutput.writeUTF(String) */
+  @Override
+  public void writeUTF(String str) throws IOException {
+    throw new IOException("OLE2 documents are read-only");
+  }
+
+  // -- Helper methods --
+
+  private boolean isLittleEndian() {
+    return order == ByteOrder.LITTLE_ENDIAN;
+  }
+
+}
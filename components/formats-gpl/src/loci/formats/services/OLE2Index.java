@@ -0,0 +1,578 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * OLE2Index reads the sector allocation tables and directory of an OLE2
+ * (Microsoft compound document) file, so that any byte of any document can
+ * be located in the file without copying the document.
+ *
+ * Documents are named as by {@link POIServiceImpl}: the names of the
+ * enclosing storages, starting with "Root Entry", separated by
+ * {@link File#separator}.  The sector chain of every document is resolved
+ * when the index is built and stored in a single array, so the allocation
+ * tables themselves are not kept.
+ *
+ * An index does not hold the file open and never changes once built, so it
+ * may be shared between readers of the same file.  It can be saved to a
+ * sidecar file and loaded again as long as the file is unchanged.
+ */
+public class OLE2Index {
+
+  // -- Constants --
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OLE2Index.class);
+
+  /** Suffix appended to a file's path to name its saved index. */
+  public static final String SIDECAR_SUFFIX = ".bfole";
+
+  private static final int SIDECAR_MAGIC = 0x42464f49; // "BFOI"
+  private static final int SIDECAR_VERSION = 1;
+
+  /** First 8 bytes of every OLE2 file, read as a little-endian long. */
+  private static final long MAGIC = 0xe11ab1a1e011cfd0L;
+
+  private static final int HEADER_SIZE = 512;
+  private static final int HEADER_FAT_SECTORS = 109;
+  private static final int DIRECTORY_ENTRY_SIZE = 128;
+
+  /** Name of the root storage, whatever name the file records for it. */
+  private static final String ROOT_NAME = "Root Entry";
+
+  private static final int TYPE_STORAGE = 1;
+  private static final int TYPE_STREAM = 2;
+  private static final int TYPE_ROOT = 5;
+
+  // -- Fields --
+
+  /** Length and modification time of the indexed file, or -1 if unknown. */
+  private long fileLength = -1;
+  private long lastModified = -1;
+
+  private int sectorSize;
+  private int miniSectorSize;
+  private int miniStreamCutoff;
+
+  /** Sectors holding the mini stream, in order. */
+  private int[] miniStream;
+
+  /** Path and size of each document. */
+  private String[] paths;
+  private long[] sizes;
+
+  /**
+   * Sector (or mini sector) chains of all documents, one after another;
+   * the chain of document d is chains[chainStarts[d]] up to, but not
+   * including, chains[chainStarts[d + 1]].
+   */
+  private int[] chains;
+  private int[] chainStarts;
+
+  private HashMap<String, Integer> documents;
+
+  // -- Constructors --
+
+  /**
+   * Reads the allocation tables and directory of the given OLE2 file.  The
+   * stream is not closed.
+   */
+  public OLE2Index(RandomAccessInputStream in) throws IOException {
+    in.order(true);
+    in.seek(0);
+    if (in.readLong() != MAGIC) {
+      throw new IOException("Not an OLE2 file");
+    }
+
+    in.seek(30);
+    int sectorShift = in.readShort();
+    int miniSectorShift = in.readShort();
+    if (sectorShift < 7 || sectorShift > 16 ||
+      miniSectorShift < 1 || miniSectorShift > sectorShift)
+    {
+      throw new IOException("Invalid OLE2 sector size");
+    }
+    sectorSize = 1 << sectorShift;
+    miniSectorSize = 1 << miniSectorShift;
+
+    in.seek(44);
+    int fatSectors = in.readInt();
+    int firstDirectorySector = in.readInt();
+    in.skipBytes(4);
+    miniStreamCutoff = in.readInt();
+    int firstMiniFatSector = in.readInt();
+    in.skipBytes(4);
+    int firstExtraSector = in.readInt();
+    int extraSectors = in.readInt();
+
+    // gather the sectors that hold the FAT
+    int perSector = sectorSize / 4;
+    if (fatSectors < 0 ||
+      (long) fatSectors * sectorSize > in.length() + sectorSize)
+    {
+      throw new IOException("Invalid OLE2 FAT size: " + fatSectors);
+    }
+    int[] fatSectorList = new int[fatSectors];
+    int count = Math.min(fatSectors, HEADER_FAT_SECTORS);
+    for (int i=0; i<count; i++) {
+      fatSectorList[i] = in.readInt();
+    }
+    int extra = firstExtraSector;
+    for (int e=0; e<extraSectors && count < fatSectors && extra >= 0; e++) {
+      int[] list = readSector(in, extra);
+      for (int i=0; i<perSector - 1 && count < fatSectors; i++) {
+        fatSectorList[count++] = list[i];
+      }
+      extra = list[perSector - 1];
+    }
+    if (count < fatSectors) {
+      throw new IOException("Truncated OLE2 FAT");
+    }
+
+    int[] fat = new int[fatSectors * perSector];
+    for (int i=0; i<fatSectors; i++) {
+      System.arraycopy(readSector(in, fatSectorList[i]), 0,
+        fat, i * perSector, perSector);
+    }
+
+    int[] miniFatSectors = getChain(fat, firstMiniFatSector, Integer.MAX_VALUE);
+    int[] miniFat = new int[miniFatSectors.length * perSector];
+    for (int i=0; i<miniFatSectors.length; i++) {
+      System.arraycopy(readSector(in, miniFatSectors[i]), 0,
+        miniFat, i * perSector, perSector);
+    }
+
+    // read the directory
+    int[] directorySectors =
+      getChain(fat, firstDirectorySector, Integer.MAX_VALUE);
+    int perDirectorySector = sectorSize / DIRECTORY_ENTRY_SIZE;
+    int entries = directorySectors.length * perDirectorySector;
+    String[] names = new String[entries];
+    byte[] types = new byte[entries];
+    int[] left = new int[entries];
+    int[] right = new int[entries];
+    int[] child = new int[entries];
+    int[] start = new int[entries];
+    long[] size = new long[entries];
+
+    byte[] sector = new byte[sectorSize];
+    for (int s=0; s<directorySectors.length; s++) {
+      in.seek(getSectorOffset(directorySectors[s]));
+      in.readFully(sector);
+      for (int i=0; i<perDirectorySector; i++) {
+        int entry = s * perDirectorySector + i;
+        int off = i * DIRECTORY_ENTRY_SIZE;
+        int nameLength =
+          DataTools.bytesToShort(sector, off + 64, true) & 0xffff;
+        int chars = Math.max(0, Math.min(nameLength / 2 - 1, 32));
+        names[entry] = new String(sector, off, chars * 2, "UTF-16LE");
+        types[entry] = sector[off + 66];
+        left[entry] = DataTools.bytesToInt(sector, off + 68, true);
+        right[entry] = DataTools.bytesToInt(sector, off + 72, true);
+        child[entry] = DataTools.bytesToInt(sector, off + 76, true);
+        start[entry] = DataTools.bytesToInt(sector, off + 116, true);
+        size[entry] = sectorSize == HEADER_SIZE ?
+          DataTools.bytesToInt(sector, off + 120, true) & 0xffffffffL :
+          DataTools.bytesToLong(sector, off + 120, true);
+      }
+    }
+    if (entries == 0 || types[0] != TYPE_ROOT) {
+      throw new IOException("Missing OLE2 root entry");
+    }
+
+    int miniStreamSectors = (int) ((size[0] + sectorSize - 1) / sectorSize);
+    miniStream = getChain(fat, start[0], miniStreamSectors);
+
+    // walk the directory tree; the children of a storage are the entries
+    // reachable through left/right links from its child entry
+    ArrayList<String> pathList = new ArrayList<String>();
+    ArrayList<Integer> entryList = new ArrayList<Integer>();
+    BitSet visited = new BitSet(entries);
+    ArrayList<Integer> stack = new ArrayList<Integer>();
+    ArrayList<String> parents = new ArrayList<String>();
+    stack.add(child[0]);
+    parents.add(ROOT_NAME);
+    visited.set(0);
+    while (!stack.isEmpty()) {
+      int entry = stack.remove(stack.size() - 1);
+      String parent = parents.remove(parents.size() - 1);
+      if (entry < 0 || entry >= entries || visited.get(entry)) {
+        continue;
+      }
+      visited.set(entry);
+      stack.add(left[entry]);
+      parents.add(parent);
+      stack.add(right[entry]);
+      parents.add(parent);
+
+      String path = parent + File.separator + names[entry];
+      if (types[entry] == TYPE_STORAGE) {
+        stack.add(child[entry]);
+        parents.add(path);
+      }
+      else if (types[entry] == TYPE_STREAM) {
+        pathList.add(path);
+        entryList.add(entry);
+      }
+    }
+
+    // resolve every document's sector chain
+    int documentCount = pathList.size();
+    paths = pathList.toArray(new String[documentCount]);
+    sizes = new long[documentCount];
+    chainStarts = new int[documentCount + 1];
+    int[] chainData = new int[1024];
+    int chainLength = 0;
+    for (int d=0; d<documentCount; d++) {
+      int entry = entryList.get(d);
+      sizes[d] = size[entry];
+      int blockSize = getBlockSize(d);
+      int blocks = (int) ((sizes[d] + blockSize - 1) / blockSize);
+      int[] chain = getChain(isMini(d) ? miniFat : fat, start[entry], blocks);
+      if (chainLength + chain.length > chainData.length) {
+        int[] grown = new int[Math.max(chainData.length * 2,
+          chainLength + chain.length)];
+        System.arraycopy(chainData, 0, grown, 0, chainLength);
+        chainData = grown;
+      }
+      System.arraycopy(chain, 0, chainData, chainLength, chain.length);
+      chainStarts[d] = chainLength;
+      chainLength += chain.length;
+    }
+    chainStarts[documentCount] = chainLength;
+    chains = new int[chainLength];
+    System.arraycopy(chainData, 0, chains, 0, chainLength);
+
+    mapDocuments();
+  }
+
+  /** Constructs an empty index, to be filled by {@link #load}. */
+  private OLE2Index() {
+  }
+
+  // -- OLE2Index API methods --
+
+  /**
+   * Builds the index of the OLE2 file open as <code>in</code>, recording the
+   * length and modification time of <code>file</code> (if it exists) so that
+   * the index can later be recognized as stale.
+   */
+  public static OLE2Index build(RandomAccessInputStream in, String file)
+    throws IOException
+  {
+    OLE2Index index = new OLE2Index(in);
+    File f = new File(file);
+    if (f.exists()) {
+      index.fileLength = f.length();
+      index.lastModified = f.lastModified();
+    }
+    return index;
+  }
+
+  /**
+   * Loads a previously saved index for the given file.
+   *
+   * @return the stored index, or null if the sidecar does not exist or does
+   *   not describe the current version of the file
+   */
+  public static OLE2Index load(String sidecar, String file)
+    throws IOException
+  {
+    File s = new File(sidecar);
+    if (!s.exists()) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(s)));
+    try {
+      if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION) {
+        return null;
+      }
+      OLE2Index index = new OLE2Index();
+      index.fileLength = in.readLong();
+      index.lastModified = in.readLong();
+      if (!index.isCurrent(file)) {
+        LOGGER.debug("Ignoring stale OLE2 index {}", sidecar);
+        return null;
+      }
+      index.sectorSize = in.readInt();
+      index.miniSectorSize = in.readInt();
+      index.miniStreamCutoff = in.readInt();
+      index.miniStream = readInts(in, in.readInt());
+
+      int documentCount = in.readInt();
+      index.paths = new String[documentCount];
+      index.sizes = new long[documentCount];
+      for (int d=0; d<documentCount; d++) {
+        index.paths[d] = in.readUTF();
+        index.sizes[d] = in.readLong();
+      }
+      index.chainStarts = readInts(in, documentCount + 1);
+      index.chains = readInts(in, in.readInt());
+      index.mapDocuments();
+      return index;
+    }
+    catch (EOFException e) {
+      LOGGER.debug("Truncated OLE2 index {}", sidecar, e);
+      return null;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /** Writes this index to the given sidecar file. */
+  public void save(String sidecar) throws IOException {
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(sidecar)));
+    try {
+      out.writeInt(SIDECAR_MAGIC);
+      out.writeInt(SIDECAR_VERSION);
+      out.writeLong(fileLength);
+      out.writeLong(lastModified);
+      out.writeInt(sectorSize);
+      out.writeInt(miniSectorSize);
+      out.writeInt(miniStreamCutoff);
+      out.writeInt(miniStream.length);
+      writeInts(out, miniStream);
+      out.writeInt(paths.length);
+      for (int d=0; d<paths.length; d++) {
+        out.writeUTF(paths[d]);
+        out.writeLong(sizes[d]);
+      }
+      writeInts(out, chainStarts);
+      out.writeInt(chains.length);
+      writeInts(out, chains);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns true if the given file has the length and modification time
+   * recorded when this index was built.
+   */
+  public boolean isCurrent(String file) {
+    File f = new File(file);
+    return fileLength >= 0 && f.exists() && f.length() == fileLength &&
+      f.lastModified() == lastModified;
+  }
+
+  /** Returns the number of documents in the file. */
+  public int getDocumentCount() {
+    return paths.length;
+  }
+
+  /** Returns the index of the given document, or -1 if there is none. */
+  public int indexOf(String path) {
+    Integer document = documents.get(path);
+    return document == null ? -1 : document;
+  }
+
+  /** Returns the path of the given document. */
+  public String getPath(int document) {
+    return paths[document];
+  }
+
+  /** Returns the length in bytes of the given document. */
+  public long getSize(int document) {
+    return sizes[document];
+  }
+
+  /**
+   * Returns a stream over the given document of the OLE2 file open as
+   * <code>in</code>.  The stream reads from <code>in</code> only the sectors
+   * that are actually read from the stream, and does not close it.
+   */
+  public RandomAccessInputStream openDocument(RandomAccessInputStream in,
+    int document) throws IOException
+  {
+    return new RandomAccessInputStream(
+      new OLE2DocumentHandle(this, in, document));
+  }
+
+  // -- Package-private methods --
+
+  /** Returns the size of the blocks that the given document is stored in. */
+  int getBlockSize(int document) {
+    return isMini(document) ? miniSectorSize : sectorSize;
+  }
+
+  /**
+   * Reads up to <code>len</code> bytes of the given document, starting at
+   * <code>pos</code>, into <code>b</code>.  Physically contiguous blocks are
+   * read with a single seek.
+   *
+   * @return the number of bytes read
+   */
+  int read(RandomAccessInputStream in, int document, long pos, byte[] b,
+    int off, int len) throws IOException
+  {
+    len = (int) Math.max(0, Math.min(len, sizes[document] - pos));
+    boolean mini = isMini(document);
+    int blockSize = mini ? miniSectorSize : sectorSize;
+    int first = chainStarts[document];
+    int blocks = chainStarts[document + 1] - first;
+
+    int total = 0;
+    while (total < len) {
+      int block = (int) (pos / blockSize);
+      if (block >= blocks) {
+        break;
+      }
+      long offset = getBlockOffset(chains[first + block], mini);
+      if (offset < 0) {
+        break;
+      }
+      int within = (int) (pos % blockSize);
+      offset += within;
+      int n = Math.min(len - total, blockSize - within);
+      while (n < len - total && block + 1 < blocks &&
+        getBlockOffset(chains[first + block + 1], mini) == offset + n)
+      {
+        block++;
+        n += Math.min(len - total - n, blockSize);
+      }
+      in.seek(offset);
+      in.readFully(b, off + total, n);
+      pos += n;
+      total += n;
+    }
+    return total;
+  }
+
+  // -- Helper methods --
+
+  private boolean isMini(int document) {
+    return sizes[document] < miniStreamCutoff;
+  }
+
+  private void mapDocuments() {
+    documents = new HashMap<String, Integer>(paths.length * 2);
+    for (int d=0; d<paths.length; d++) {
+      documents.put(paths[d], d);
+    }
+  }
+
+  /**
+   * Follows a sector chain through the given allocation table, stopping
+   * after <code>max</code> sectors, at the end of the chain, or at a loop.
+   */
+  private static int[] getChain(int[] table, int start, int max) {
+    int[] chain = new int[Math.min(Math.max(max, 0), 1024)];
+    int count = 0;
+    int sector = start;
+    while (count < max && sector >= 0 && sector < table.length &&
+      count <= table.length)
+    {
+      if (count == chain.length) {
+        int[] grown = new int[(int) Math.min((long) chain.length * 2, max)];
+        System.arraycopy(chain, 0, grown, 0, count);
+        chain = grown;
+      }
+      chain[count++] = sector;
+      sector = table[sector];
+    }
+    if (count < chain.length) {
+      int[] trimmed = new int[count];
+      System.arraycopy(chain, 0, trimmed, 0, count);
+      chain = trimmed;
+    }
+    return chain;
+  }
+
+  /** Returns the file offset of the given sector or mini sector. */
+  private long getBlockOffset(int block, boolean mini) {
+    if (!mini) {
+      return getSectorOffset(block);
+    }
+    long pos = (long) block * miniSectorSize;
+    int sector = (int) (pos / sectorSize);
+    if (sector >= miniStream.length) {
+      return -1;
+    }
+    return getSectorOffset(miniStream[sector]) + pos % sectorSize;
+  }
+
+  private long getSectorOffset(int sector) {
+    return (sector + 1L) * sectorSize;
+  }
+
+  /** Reads the given sector as an array of little-endian ints. */
+  private int[] readSector(RandomAccessInputStream in, int sector)
+    throws IOException
+  {
+    byte[] bytes = new byte[sectorSize];
+    in.seek(getSectorOffset(sector));
+    in.readFully(bytes);
+    int[] values = new int[sectorSize / 4];
+    for (int i=0; i<values.length; i++) {
+      values[i] = DataTools.bytesToInt(bytes, i * 4, true);
+    }
+    return values;
+  }
+
+  private static int[] readInts(DataInputStream in, int count)
+    throws IOException
+  {
+    if (count < 0) {
+      throw new EOFException();
+    }
+    int[] values = new int[count];
+    for (int i=0; i<count; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values)
+    throws IOException
+  {
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+}
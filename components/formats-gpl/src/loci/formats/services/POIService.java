@@ -38,6 +38,20 @@ import loci.common.services.Service;
  */
 public interface POIService extends Service {
 
+  /**
+   * Reader option controlling whether the sector index of an OLE2 file is
+   * saved next to the file, so that opening the file again does not need to
+   * read its directory.
+   */
+  public static final String INDEX_SIDECAR_KEY = "ole2.index_sidecar";
+  public static final boolean INDEX_SIDECAR_DEFAULT = false;
+
+  /**
+   * Sets whether {@link #initialize(String)} loads the file's sector index
+   * from, and saves it to, a sidecar file next to the file.
+   */
+  public void setIndexSidecarEnabled(boolean enabled);
+
   /**
    * Construct a new POI filesystem around the given file.
    *
@@ -65,6 +79,8 @@ public interface POIService extends Service {
   /**
    * Retrieve a RandomAccessInputStream corresponding to the given file name.
    * Either of the 'initialize' methods must be called before this method.
+   * The stream reads from the underlying file as needed, rather than
+   * copying the whole embedded file, and is valid until {@link #close()}.
    *
    * @param file The name of the embedded file for which to
    *   retrieve a RandomAccessInputStream.
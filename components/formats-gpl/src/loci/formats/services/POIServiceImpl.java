@@ -28,8 +28,11 @@ package loci.formats.services;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import loci.common.RandomAccessInputStream;
@@ -40,21 +43,47 @@ import loci.poi.poifs.filesystem.DocumentInputStream;
 import loci.poi.poifs.filesystem.Entry;
 import loci.poi.poifs.filesystem.POIFSFileSystem;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  */
 public class POIServiceImpl extends AbstractService implements POIService {
 
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(POIServiceImpl.class);
+
   private static final int MAX_BLOCK_SIZE = 4096;
 
+  /** Number of file indexes kept for reuse after their service is closed. */
+  private static final int MAX_CACHED_INDEXES = 16;
+
+  /** Indexes of recently opened files, keyed by absolute path. */
+  private static final Map<String, OLE2Index> INDEXES =
+    new LinkedHashMap<String, OLE2Index>(MAX_CACHED_INDEXES * 2, 0.75f, true)
+  {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, OLE2Index> eldest) {
+      return size() > MAX_CACHED_INDEXES;
+    }
+  };
+
   // -- Fields --
 
-  private POIFSFileSystem fileSystem;
-  private DirectoryEntry root;
   private RandomAccessInputStream stream;
 
-  private Vector<String> filePath;
-  private Hashtable<String, Integer> fileSizes;
-  private Hashtable<String, DocumentEntry> files;
+  /** Sector index of the open file; null if only POI could read the file. */
+  private OLE2Index index;
+
+  private boolean useIndexSidecar = INDEX_SIDECAR_DEFAULT;
+
+  // used only when the file could not be indexed, or a document is not
+  // in the index
+  private POIFSFileSystem fileSystem;
+  private DirectoryEntry root;
+  private ArrayList<String> filePath;
+  private HashMap<String, Integer> fileSizes;
+  private HashMap<String, DocumentEntry> files;
 
   // -- POIService API methods --
 
@@ -66,38 +95,44 @@ public class POIServiceImpl extends AbstractService implements POIService {
     checkClassDependency(loci.poi.poifs.filesystem.DirectoryEntry.class);
   }
 
+  /* @see POIService#setIndexSidecarEnabled(boolean) */
+  @Override
+  public void setIndexSidecarEnabled(boolean enabled) {
+    useIndexSidecar = enabled;
+  }
+
   /* @see POIService#initialize(String) */
   @Override
   public void initialize(String file) throws IOException {
-    initialize(new RandomAccessInputStream(file, MAX_BLOCK_SIZE));
+    stream = new RandomAccessInputStream(file, MAX_BLOCK_SIZE);
+    index = getIndex(new File(file).getAbsolutePath());
+    if (index == null) {
+      initializeFileSystem();
+    }
   }
 
   /* @see POIService#initialize(RandomAccessInputStream) */
   @Override
   public void initialize(RandomAccessInputStream s) throws IOException {
-    // determine the size of a 'big' block
     stream = s;
-    stream.order(true);
-    stream.seek(30);
-    int size = (int) Math.pow(2, stream.readShort());
-    stream.seek(0);
-
-    // initialize the file system
-    fileSystem = new POIFSFileSystem(stream, size);
-    root = fileSystem.getRoot();
-
-    // build the list of files in the file system
-    filePath = new Vector<String>();
-    fileSizes = new Hashtable<String, Integer>();
-    files = new Hashtable<String, DocumentEntry>();
-
-    parseFile(root);
+    try {
+      index = new OLE2Index(stream);
+    }
+    catch (IOException e) {
+      LOGGER.debug("Could not index OLE2 file", e);
+      index = null;
+      initializeFileSystem();
+    }
   }
 
   /* @see POIService#getInputStream(String) */
   @Override
   public InputStream getInputStream(String file) throws IOException {
-    return new DocumentInputStream(files.get(file), stream);
+    int document = index == null ? -1 : index.indexOf(file);
+    if (document < 0) {
+      return new DocumentInputStream(getEntry(file), stream);
+    }
+    return new DocumentStream(new OLE2DocumentHandle(index, stream, document));
   }
 
   /* @see POIService#getDocumentStream(String) */
@@ -105,7 +140,12 @@ public class POIServiceImpl extends AbstractService implements POIService {
   public RandomAccessInputStream getDocumentStream(String file)
     throws IOException
   {
-    return new RandomAccessInputStream(getDocumentBytes(file));
+    int document = index == null ? -1 : index.indexOf(file);
+    if (document < 0) {
+      // not indexed; copy the document as read by POI
+      return new RandomAccessInputStream(getDocumentBytes(file));
+    }
+    return index.openDocument(stream, document);
   }
 
   /* @see POIService#getDocumentBytes(String) */
@@ -118,6 +158,9 @@ public class POIServiceImpl extends AbstractService implements POIService {
   @Override
   public byte[] getDocumentBytes(String file, int length) throws IOException {
     int size = getFileSize(file);
+    if (size < 0) {
+      throw new IOException("No such document: " + file);
+    }
     int len = length > size ? size : length;
 
     byte[] buf = new byte[len];
@@ -130,6 +173,21 @@ public class POIServiceImpl extends AbstractService implements POIService {
   /* @see POIService#getFileSize(String) */
   @Override
   public int getFileSize(String file) {
+    if (index != null) {
+      int document = index.indexOf(file);
+      if (document >= 0) {
+        return (int) index.getSize(document);
+      }
+    }
+    try {
+      if (fileSizes == null) {
+        initializeFileSystem();
+      }
+    }
+    catch (IOException e) {
+      LOGGER.debug("Could not read OLE2 directory", e);
+      return -1;
+    }
     if (fileSizes.containsKey(file)) {
       return fileSizes.get(file);
     }
@@ -140,7 +198,14 @@ public class POIServiceImpl extends AbstractService implements POIService {
   @Override
   public Vector<String> getDocumentList() {
     Vector<String> list = new Vector<String>();
-    list.addAll(fileSizes.keySet());
+    if (index != null) {
+      for (int d=0; d<index.getDocumentCount(); d++) {
+        list.add(index.getPath(d));
+      }
+    }
+    else {
+      list.addAll(fileSizes.keySet());
+    }
     return list;
   }
 
@@ -154,10 +219,93 @@ public class POIServiceImpl extends AbstractService implements POIService {
     filePath = null;
     fileSizes = null;
     files = null;
+    index = null;
   }
 
   // -- Helper methods --
 
+  /**
+   * Returns the index of the given file: from the shared cache if the file
+   * has not changed since it was indexed, otherwise from its sidecar (if
+   * enabled) or by reading the file's directory.  Returns null if the file
+   * cannot be indexed.
+   */
+  private OLE2Index getIndex(String path) {
+    OLE2Index cached;
+    synchronized (INDEXES) {
+      cached = INDEXES.get(path);
+    }
+    if (cached != null && cached.isCurrent(path)) {
+      return cached;
+    }
+
+    String sidecar = path + OLE2Index.SIDECAR_SUFFIX;
+    OLE2Index result = null;
+    try {
+      if (useIndexSidecar) {
+        result = OLE2Index.load(sidecar, path);
+      }
+      if (result == null) {
+        result = OLE2Index.build(stream, path);
+        if (useIndexSidecar && result.isCurrent(path)) {
+          try {
+            result.save(sidecar);
+          }
+          catch (IOException e) {
+            LOGGER.debug("Could not save OLE2 index to {}", sidecar, e);
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      LOGGER.debug("Could not index OLE2 file {}", path, e);
+      return null;
+    }
+
+    if (result.isCurrent(path)) {
+      synchronized (INDEXES) {
+        INDEXES.put(path, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the POI entry of a document that is not in the index.  The
+   * directory is read with POI the first time this is needed, so names
+   * that only POI resolves are still found.
+   */
+  private DocumentEntry getEntry(String file) throws IOException {
+    if (files == null) {
+      initializeFileSystem();
+    }
+    DocumentEntry entry = files.get(file);
+    if (entry == null) {
+      throw new IOException("No such document: " + file);
+    }
+    return entry;
+  }
+
+  /** Builds the list of documents by walking the POI directory tree. */
+  private void initializeFileSystem() throws IOException {
+    // determine the size of a 'big' block
+    stream.order(true);
+    stream.seek(30);
+    int size = (int) Math.pow(2, stream.readShort());
+    stream.seek(0);
+
+    // initialize the file system
+    fileSystem = new POIFSFileSystem(stream, size);
+    root = fileSystem.getRoot();
+
+    // build the list of files in the file system
+    filePath = new ArrayList<String>();
+    fileSizes = new HashMap<String, Integer>();
+    files = new HashMap<String, DocumentEntry>();
+
+    parseFile(root);
+  }
+
   private void parseFile(DirectoryEntry r) throws IOException {
     filePath.add(r.getName());
     Iterator iter = r.getEntries();
@@ -183,7 +331,50 @@ public class POIServiceImpl extends AbstractService implements POIService {
         s.close();
       }
     }
-    filePath.removeElementAt(filePath.size() - 1);
+    filePath.remove(filePath.size() - 1);
+  }
+
+  // -- Helper classes --
+
+  /** InputStream over a document, read through the file's sector index. */
+  private static class DocumentStream extends InputStream {
+
+    private final OLE2DocumentHandle handle;
+
+    public DocumentStream(OLE2DocumentHandle handle) {
+      this.handle = handle;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int total = 0;
+      while (total < len) {
+        int n = handle.read(b, off + total, len - total);
+        if (n < 0) {
+          break;
+        }
+        total += n;
+      }
+      return total == 0 && len > 0 ? -1 : total;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return handle.skipBytes(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(Integer.MAX_VALUE,
+        handle.length() - handle.getFilePointer());
+    }
+
   }
 
 }
@@ -27,7 +27,12 @@ package loci.formats.utests;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import ch.systemsx.cisd.base.mdarray.MDIntArray;
 
 import loci.common.services.DependencyException;
@@ -100,4 +105,67 @@ public class JHDFServiceTest {
         assertEquals(matrix.get(6, 0, 4), 178);
     }
 
+    @Test
+    public void testConcurrentRead() throws Exception {
+        ServiceFactory sf = new ServiceFactory();
+        final JHDFService concurrent = sf.getInstance(JHDFService.class);
+        URL file = JHDFServiceTest.class.getResource(TEST_FILE);
+        concurrent.setFileForConcurrentRead(file.getPath(), 3);
+        Assert.assertTrue(concurrent.isConcurrentRead());
+        Assert.assertFalse(service.isConcurrentRead());
+
+        final MDIntArray expected =
+          service.readIntArray("/member_1/member_3/int_matrix");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int task = 0; task < 64; task++) {
+                final int y = task % 9;
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int checked = 0;
+                        for (int i = 0; i < 25; i++) {
+                            MDIntArray block = concurrent.readIntBlockArray(
+                                "/member_1/member_3/int_matrix",
+                                new int[]{0, y, 0},
+                                new int[]{10, 1, 8});
+                            for (int x = 0; x < 10; x++) {
+                                for (int z = 0; z < 8; z++) {
+                                    assertEquals(expected.get(x, y, z),
+                                        block.get(x, 0, z));
+                                    checked++;
+                                }
+                            }
+                            assertEquals(concurrent.getMember("/member_1/").get(0),
+                                "member_3");
+                        }
+                        return checked;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(25 * 10 * 8, result.get().intValue());
+            }
+        }
+        finally {
+            executor.shutdown();
+            concurrent.close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testConcurrentReadIsReadOnly() throws Exception {
+        ServiceFactory sf = new ServiceFactory();
+        JHDFService concurrent = sf.getInstance(JHDFService.class);
+        URL file = JHDFServiceTest.class.getResource(TEST_FILE);
+        concurrent.setFileForConcurrentRead(file.getPath(), 1);
+        try {
+            concurrent.initIntArray("/new_dataset", new long[] {1, 1, 1, 1, 1}, 1);
+        }
+        finally {
+            concurrent.close();
+        }
+    }
+
 }
@@ -26,19 +26,35 @@
 package loci.formats.utests;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
 
 import loci.common.RandomAccessInputStream;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceFactory;
+import loci.formats.services.OLE2Index;
 import loci.formats.services.POIService;
+import loci.poi.poifs.filesystem.DirectoryEntry;
+import loci.poi.poifs.filesystem.DocumentEntry;
+import loci.poi.poifs.filesystem.DocumentInputStream;
+import loci.poi.poifs.filesystem.Entry;
+import loci.poi.poifs.filesystem.POIFSFileSystem;
 
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -56,12 +72,35 @@ public class POIServiceTest {
 
   private static final int WORKBOOK_LENGTH = 9604;
 
+  /** A document small enough to be stored in the mini stream. */
+  private static final String MINI_DOCUMENT =
+    "Root Entry" + File.separator + "\u0005DocumentSummaryInformation";
+
+  private static final int MINI_DOCUMENT_LENGTH = 264;
+
+  /** Must be larger than the number of indexes the service keeps. */
+  private static final int CACHE_TEST_FILES = 20;
+
+  private String path;
+
+  private Vector<File> tempFiles = new Vector<File>();
+
   @BeforeMethod
   public void setUp() throws DependencyException, IOException {
-    ServiceFactory sf = new ServiceFactory();
-    service = sf.getInstance(POIService.class);
+    service = createService(false);
     URL file = this.getClass().getResource(TEST_XLS);
-    service.initialize(file.getPath());
+    path = file.getPath();
+    service.initialize(path);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    service.close();
+    for (File f : tempFiles) {
+      new File(f.getPath() + OLE2Index.SIDECAR_SUFFIX).delete();
+      f.delete();
+    }
+    tempFiles.clear();
   }
 
   @Test
@@ -83,6 +122,132 @@ public class POIServiceTest {
     assertEquals(WORKBOOK_LENGTH, stream.length());
   }
 
+  @Test
+  public void testDocumentStreamSeeking() throws IOException {
+    Map<String, byte[]> documents = readWithPOI(path);
+    assertEquals(WORKBOOK_LENGTH, documents.get(WORKBOOK_DOCUMENT).length);
+    assertEquals(MINI_DOCUMENT_LENGTH, documents.get(MINI_DOCUMENT).length);
+    assertEquals(documents.size(), service.getDocumentList().size());
+
+    for (String document : service.getDocumentList()) {
+      byte[] expected = documents.get(document);
+      assertNotNull(document, expected);
+      RandomAccessInputStream stream = service.getDocumentStream(document);
+      assertEquals(expected.length, stream.length());
+
+      // read the document back to front, in pieces that cross sectors
+      byte[] actual = new byte[expected.length];
+      for (int end=actual.length; end>0; end-=100) {
+        int start = Math.max(0, end - 100);
+        stream.seek(start);
+        stream.readFully(actual, start, end - start);
+      }
+      stream.close();
+      assertTrue(document, Arrays.equals(expected, actual));
+      assertTrue(document,
+        Arrays.equals(expected, service.getDocumentBytes(document)));
+    }
+  }
+
+  @Test
+  public void testMissingDocument() throws IOException {
+    String missing = "Root Entry" + File.separator + "Missing";
+    assertEquals(-1, service.getFileSize(missing));
+    try {
+      service.getDocumentStream(missing);
+      fail("Expected an IOException for " + missing);
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testIndexCache() throws DependencyException, IOException {
+    File file = copyTestFile();
+    File sidecar = new File(file.getPath() + OLE2Index.SIDECAR_SUFFIX);
+
+    // the first open builds the index and saves it
+    open(file, true);
+    assertTrue(sidecar.exists());
+    assertTrue(sidecar.delete());
+
+    // the index is reused while the file is unchanged
+    checkWorkbook(open(file, true));
+    assertFalse(sidecar.exists());
+
+    // a new modification time makes the cached index stale
+    assertTrue(file.setLastModified(file.lastModified() - 60000));
+    checkWorkbook(open(file, true));
+    assertTrue(sidecar.exists());
+    assertTrue(sidecar.delete());
+
+    // as does a new length
+    FileOutputStream out = new FileOutputStream(file, true);
+    out.write(new byte[512]);
+    out.close();
+    checkWorkbook(open(file, true));
+    assertTrue(sidecar.exists());
+  }
+
+  @Test
+  public void testIndexCacheEviction() throws DependencyException, IOException
+  {
+    File[] files = new File[CACHE_TEST_FILES];
+    for (int i=0; i<files.length; i++) {
+      files[i] = copyTestFile();
+      open(files[i], true);
+    }
+    for (File file : files) {
+      assertTrue(new File(file.getPath() + OLE2Index.SIDECAR_SUFFIX).delete());
+    }
+
+    // the most recently opened file is still cached, the first is not
+    File last = files[files.length - 1];
+    open(last, true);
+    assertFalse(new File(last.getPath() + OLE2Index.SIDECAR_SUFFIX).exists());
+    open(files[0], true);
+    assertTrue(new File(files[0].getPath() + OLE2Index.SIDECAR_SUFFIX).exists());
+  }
+
+  @Test
+  public void testIndexSidecar() throws IOException {
+    File file = copyTestFile();
+    String sidecar = file.getPath() + OLE2Index.SIDECAR_SUFFIX;
+    Map<String, byte[]> documents = readWithPOI(file.getPath());
+
+    RandomAccessInputStream in = new RandomAccessInputStream(file.getPath());
+    try {
+      OLE2Index built = OLE2Index.build(in, file.getPath());
+      built.save(sidecar);
+
+      OLE2Index loaded = OLE2Index.load(sidecar, file.getPath());
+      assertNotNull(loaded);
+      assertEquals(built.getDocumentCount(), loaded.getDocumentCount());
+      assertEquals(documents.size(), loaded.getDocumentCount());
+      for (int d=0; d<loaded.getDocumentCount(); d++) {
+        String document = loaded.getPath(d);
+        assertEquals(built.getPath(d), document);
+        assertEquals(built.getSize(d), loaded.getSize(d));
+
+        byte[] expected = documents.get(document);
+        assertNotNull(document, expected);
+        RandomAccessInputStream s = loaded.openDocument(in, d);
+        byte[] actual = new byte[(int) s.length()];
+        s.readFully(actual);
+        s.close();
+        assertTrue(document, Arrays.equals(expected, actual));
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    // a sidecar describing an older version of the file is ignored
+    assertTrue(file.setLastModified(file.lastModified() - 60000));
+    assertNull(OLE2Index.load(sidecar, file.getPath()));
+  }
+
   @Test
   public void testWorkbookDocumentBytes() throws IOException {
     byte[] bytes = service.getDocumentBytes(WORKBOOK_DOCUMENT); 
@@ -94,4 +259,106 @@ public class POIServiceTest {
   public void testWorkbookFileSize() {
     assertEquals(WORKBOOK_LENGTH, service.getFileSize(WORKBOOK_DOCUMENT));
   }
+
+  // -- Helper methods --
+
+  private static POIService createService(boolean sidecar)
+    throws DependencyException
+  {
+    ServiceFactory sf = new ServiceFactory();
+    POIService poi = sf.getInstance(POIService.class);
+    poi.setIndexSidecarEnabled(sidecar);
+    return poi;
+  }
+
+  /** Opens the given file with a new service, and closes the service. */
+  private static byte[] open(File file, boolean sidecar)
+    throws DependencyException, IOException
+  {
+    POIService poi = createService(sidecar);
+    try {
+      poi.initialize(file.getPath());
+      return poi.getDocumentBytes(WORKBOOK_DOCUMENT);
+    }
+    finally {
+      poi.close();
+    }
+  }
+
+  private void checkWorkbook(byte[] workbook) throws IOException {
+    assertTrue(Arrays.equals(
+      readWithPOI(path).get(WORKBOOK_DOCUMENT), workbook));
+  }
+
+  /** Copies the test file to a new temporary file. */
+  private File copyTestFile() throws IOException {
+    File file = File.createTempFile("POIServiceTest", ".xls");
+    tempFiles.add(file);
+    InputStream in = getClass().getResourceAsStream(TEST_XLS);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      byte[] buf = new byte[8192];
+      for (int n=in.read(buf); n>0; n=in.read(buf)) {
+        out.write(buf, 0, n);
+      }
+    }
+    finally {
+      in.close();
+      out.close();
+    }
+    return file;
+  }
+
+  /**
+   * Reads every document of the given file with POI alone, independently
+   * of the sector index used by the service.
+   */
+  private static Map<String, byte[]> readWithPOI(String file)
+    throws IOException
+  {
+    RandomAccessInputStream in = new RandomAccessInputStream(file);
+    try {
+      in.order(true);
+      in.seek(30);
+      int size = 1 << in.readShort();
+      in.seek(0);
+      POIFSFileSystem fs = new POIFSFileSystem(in, size);
+      Map<String, byte[]> documents = new HashMap<String, byte[]>();
+      readWithPOI(fs.getRoot(), "", in, documents);
+      return documents;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void readWithPOI(DirectoryEntry directory, String parent,
+    RandomAccessInputStream in, Map<String, byte[]> documents)
+    throws IOException
+  {
+    String prefix = parent + directory.getName() + File.separator;
+    Iterator iter = directory.getEntries();
+    while (iter.hasNext()) {
+      Entry entry = (Entry) iter.next();
+      if (entry.isDirectoryEntry()) {
+        readWithPOI((DirectoryEntry) entry, prefix, in, documents);
+      }
+      else if (entry.isDocumentEntry()) {
+        DocumentInputStream s =
+          new DocumentInputStream((DocumentEntry) entry, in);
+        byte[] bytes = new byte[s.available()];
+        int n = 0;
+        while (n < bytes.length) {
+          int r = s.read(bytes, n, bytes.length - n);
+          if (r <= 0) {
+            break;
+          }
+          n += r;
+        }
+        s.close();
+        documents.put(prefix + entry.getName(), bytes);
+      }
+    }
+  }
+
 }
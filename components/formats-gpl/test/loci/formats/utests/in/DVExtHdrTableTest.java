@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.in.DVExtHdrTable;
+
+import ome.units.quantity.Length;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DVExtHdrTable}.
+ */
+public class DVExtHdrTableTest {
+
+  /** Number of bytes in each section, including unparsed values. */
+  private static final int SECTION = 64;
+
+  /** Number of bytes before the first section. */
+  private static final int START = 100;
+
+  private static final int FIELDS = DVExtHdrTable.FIELD_NAMES.length;
+
+  @Test
+  public void testPlaneOrder() throws IOException {
+    check(2, 3, 2, identity(12), true, -1);
+    check(2, 3, 2, identity(12), false, -1);
+  }
+
+  @Test
+  public void testSectionsOutOfOrder() throws IOException {
+    // sections stored with T varying fastest, then in reverse
+    int sizeZ = 2, sizeC = 3, sizeT = 4;
+    int[] order = new int[sizeZ * sizeC * sizeT];
+    int next = 0;
+    for (int z=0; z<sizeZ; z++) {
+      for (int w=0; w<sizeC; w++) {
+        for (int t=0; t<sizeT; t++) {
+          order[z + sizeZ * (w + sizeC * t)] = next++;
+        }
+      }
+    }
+    check(sizeZ, sizeC, sizeT, order, true, -1);
+
+    int[] reversed = new int[order.length];
+    for (int p=0; p<order.length; p++) {
+      reversed[p] = order.length - 1 - p;
+    }
+    check(sizeZ, sizeC, sizeT, reversed, false, -1);
+  }
+
+  @Test
+  public void testManyBlocks() throws IOException {
+    // more than 1 MB of sections, stored in a scrambled order
+    int sizeZ = 50, sizeC = 4, sizeT = 120;
+    int planes = sizeZ * sizeC * sizeT;
+    int[] order = new int[planes];
+    for (int p=0; p<planes; p++) {
+      order[p] = (int) ((p * 7919L) % planes);
+    }
+    check(sizeZ, sizeC, sizeT, order, true, -1);
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    int[] order = {3, 0, 5, 1, 4, 2};
+    // end the file after the third value of the third section on disk
+    check(1, 2, 3, order, true, START + 2 * SECTION + 12);
+    check(1, 2, 3, order, false, START + SECTION / 2);
+  }
+
+  @Test
+  public void testNDFilter() throws IOException {
+    byte[] data = new byte[START + 2 * SECTION];
+    ByteBuffer bb = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    bb.putFloat(START + DVExtHdrTable.ND_FILTER * 4, 50f);
+    bb.putFloat(START + SECTION + DVExtHdrTable.ND_FILTER * 4, 0.25f);
+
+    DVExtHdrTable table = read(data, new int[] {0, SECTION}, 1, 2, true);
+    assertEquals(0.5f, table.get(DVExtHdrTable.ND_FILTER, 0, 0, 0), 0f);
+    assertEquals(0.25f, table.get(DVExtHdrTable.ND_FILTER, 0, 1, 0), 0f);
+  }
+
+  @Test
+  public void testPosition() throws IOException {
+    byte[] data = new byte[START + SECTION];
+    ByteBuffer bb = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+    bb.putFloat(START + DVExtHdrTable.STAGE_Y_COORD * 4, -12.5f);
+
+    DVExtHdrTable table = read(data, new int[] {0}, 1, 1, false);
+    assertTrue(DVExtHdrTable.isPosition(DVExtHdrTable.STAGE_Y_COORD));
+    assertTrue(!DVExtHdrTable.isPosition(DVExtHdrTable.EXP_TIME));
+    Length y = table.getPosition(DVExtHdrTable.STAGE_Y_COORD, 0, 0, 0);
+    assertEquals(-12.5, y.value().doubleValue(), 0);
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Writes a section for each plane at the given position in file order,
+   * optionally truncates the file, then checks every value read back.
+   *
+   * @param order position on disk of each plane's section, indexed by
+   *   z + sizeZ * (w + sizeC * t)
+   * @param length length of the file, or -1 to keep every section
+   */
+  private static void check(int sizeZ, int sizeC, int sizeT, int[] order,
+    boolean little, int length) throws IOException
+  {
+    int planes = sizeZ * sizeC * sizeT;
+    byte[] data = new byte[START + planes * SECTION];
+    ByteBuffer bb = ByteBuffer.wrap(data).order(
+      little ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    int[] offsets = new int[planes];
+    for (int p=0; p<planes; p++) {
+      offsets[p] = order[p] * SECTION;
+      for (int f=0; f<SECTION / 4; f++) {
+        bb.putFloat(START + offsets[p] + f * 4, value(p, f));
+      }
+    }
+    if (length >= 0) {
+      data = Arrays.copyOf(data, length);
+    }
+
+    DVExtHdrTable table = read(data, offsets, sizeZ, sizeC, little);
+    for (int t=0; t<sizeT; t++) {
+      for (int w=0; w<sizeC; w++) {
+        for (int z=0; z<sizeZ; z++) {
+          int p = z + sizeZ * (w + sizeC * t);
+          for (int f=0; f<FIELDS; f++) {
+            if (DVExtHdrTable.FIELD_NAMES[f] == null) {
+              continue;
+            }
+            long pos = START + offsets[p] + f * 4;
+            float expected = pos + 4 <= data.length ? value(p, f) : 0;
+            if (f == DVExtHdrTable.ND_FILTER && expected >= 1) {
+              expected /= 100;
+            }
+            assertEquals("Z" + z + " W" + w + " T" + t + " field " + f,
+              expected, table.get(f, z, w, t), 0f);
+          }
+        }
+      }
+    }
+  }
+
+  private static DVExtHdrTable read(byte[] data, int[] offsets, int sizeZ,
+    int sizeC, boolean little) throws IOException
+  {
+    RandomAccessInputStream in = new RandomAccessInputStream(data);
+    try {
+      in.order(little);
+      return DVExtHdrTable.read(in, START, offsets, sizeZ, sizeC);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static float value(int plane, int field) {
+    return plane * 100 + field + 0.5f;
+  }
+
+  private static int[] identity(int n) {
+    int[] order = new int[n];
+    for (int i=0; i<n; i++) {
+      order[i] = i;
+    }
+    return order;
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import loci.formats.in.FileExistenceCache;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link FileExistenceCache}.
+ */
+public class FileExistenceCacheTest {
+
+  private File dir;
+  private File a;
+  private File b;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    dir = File.createTempFile("FileExistenceCacheTest", "");
+    dir.delete();
+    dir.mkdir();
+    a = new File(dir, "a.tif");
+    b = new File(dir, "b.tif");
+    a.createNewFile();
+    b.createNewFile();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    a.delete();
+    b.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testListedOnce() {
+    FileExistenceCache cache = new FileExistenceCache();
+    assertTrue(cache.exists(a.getPath()));
+    assertTrue(cache.exists(b.getPath()));
+    assertFalse(cache.exists(new File(dir, "c.tif").getPath()));
+    assertFalse(cache.exists(null));
+    assertEquals(1, cache.getDirectoryCount());
+  }
+
+  @Test
+  public void testRefresh() {
+    FileExistenceCache cache = new FileExistenceCache();
+    assertTrue(cache.exists(a.getPath()));
+    a.delete();
+    assertTrue(cache.exists(a.getPath()));
+    cache.refresh();
+    assertEquals(0, cache.getDirectoryCount());
+    assertFalse(cache.exists(a.getPath()));
+  }
+
+  @Test
+  public void testDisabled() {
+    FileExistenceCache cache = new FileExistenceCache(false);
+    assertTrue(cache.exists(a.getPath()));
+    a.delete();
+    assertFalse(cache.exists(a.getPath()));
+    assertEquals(0, cache.getDirectoryCount());
+  }
+
+}
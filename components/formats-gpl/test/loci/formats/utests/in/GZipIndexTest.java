@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import loci.formats.in.GZipIndex;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link GZipIndex}.
+ */
+public class GZipIndexTest {
+
+  private static final int LENGTH = 3 * 1024 * 1024;
+  private static final int PREFIX = 17;
+  private static final int SPAN = 64 * 1024;
+
+  private byte[] data;
+  private File file;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    Random random = new Random(42);
+    data = new byte[LENGTH];
+    for (int i=0; i<data.length; i++) {
+      // alternate incompressible and repetitive runs
+      data[i] = (byte) ((i / 4096) % 3 == 0 ? random.nextInt(256) : i % 251);
+    }
+
+    file = File.createTempFile("GZipIndexTest", ".gz");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[PREFIX]);
+      // two concatenated gzip members
+      out.write(gzip(data, 0, LENGTH / 3));
+      out.write(gzip(data, LENGTH / 3, LENGTH - LENGTH / 3));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  @AfterClass
+  public void tearDown() {
+    file.delete();
+    new File(file.getPath() + GZipIndex.SIDECAR_SUFFIX).delete();
+  }
+
+  @Test
+  public void testLength() throws IOException {
+    GZipIndex index = GZipIndex.build(file.getPath(), PREFIX, SPAN);
+    try {
+      assertEquals(LENGTH, index.getUncompressedLength());
+      assertTrue(index.getCheckpointCount() > 1);
+    }
+    finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testReverseRead() throws IOException {
+    GZipIndex index = GZipIndex.build(file.getPath(), PREFIX, SPAN);
+    try {
+      int chunk = 100000;
+      byte[] buf = new byte[chunk];
+      for (int offset=LENGTH - chunk; offset>=0; offset-=chunk) {
+        index.read(offset, buf, 0, chunk);
+        assertTrue(Arrays.equals(
+          Arrays.copyOfRange(data, offset, offset + chunk), buf));
+      }
+    }
+    finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testRandomRead() throws IOException {
+    GZipIndex index = GZipIndex.build(file.getPath(), PREFIX, SPAN);
+    Random random = new Random(7);
+    try {
+      for (int i=0; i<100; i++) {
+        int len = random.nextInt(50000) + 1;
+        int offset = random.nextInt(LENGTH - len);
+        byte[] buf = new byte[len];
+        index.read(offset, buf, 0, len);
+        assertTrue(Arrays.equals(
+          Arrays.copyOfRange(data, offset, offset + len), buf));
+      }
+    }
+    finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testSidecar() throws IOException {
+    String sidecar = file.getPath() + GZipIndex.SIDECAR_SUFFIX;
+    GZipIndex index = GZipIndex.build(file.getPath(), PREFIX, SPAN);
+    index.save(sidecar);
+    index.close();
+
+    assertNull(GZipIndex.load(sidecar, file.getPath(), 0));
+    GZipIndex loaded = GZipIndex.load(sidecar, file.getPath(), PREFIX);
+    assertNotNull(loaded);
+    try {
+      assertEquals(LENGTH, loaded.getUncompressedLength());
+      byte[] buf = new byte[1000];
+      loaded.read(LENGTH - 1000, buf, 0, buf.length);
+      assertTrue(Arrays.equals(
+        Arrays.copyOfRange(data, LENGTH - 1000, LENGTH), buf));
+    }
+    finally {
+      loaded.close();
+    }
+  }
+
+  private static byte[] gzip(byte[] b, int off, int len) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(bytes);
+    out.write(b, off, len);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Hashtable;
+
+import loci.formats.FormatException;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.LIFReader;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the lazy metadata mode of {@link LIFReader}, using a
+ * small generated file with one image per series.
+ */
+public class LIFReaderTest {
+
+  /** Original metadata key whose value differs between images. */
+  private static final String KEY = "Marker|Value";
+
+  private static final String[] VALUES = {"first", "second", "third"};
+
+  private static final int SIZE_X = 4;
+  private static final int SIZE_Y = 3;
+
+  private File file;
+  private LIFReader eager;
+  private LIFReader lazy;
+
+  @BeforeMethod
+  public void setUp() throws FormatException, IOException {
+    file = File.createTempFile("LIFReaderTest", ".lif");
+    writeFile(file);
+    eager = open(false);
+    lazy = open(true);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    eager.close();
+    lazy.close();
+    file.delete();
+  }
+
+  @Test
+  public void testSetSeries() throws FormatException, IOException {
+    assertEquals(VALUES.length, lazy.getSeriesCount());
+    for (int s=VALUES.length-1; s>=0; s--) {
+      lazy.setSeries(s);
+      assertEquals(SIZE_X, lazy.getSizeX());
+      assertEquals(SIZE_Y, lazy.getSizeY());
+      // selecting a series does not translate its original metadata
+      assertNull(getStoredSeriesMetadata(lazy, s).get(KEY));
+      byte[] plane = lazy.openBytes(0);
+      assertEquals((byte) s, plane[plane.length - 1]);
+    }
+  }
+
+  @Test
+  public void testGetSeriesMetadata() {
+    lazy.setSeries(1);
+    assertEquals(VALUES[1], lazy.getSeriesMetadataValue(KEY));
+    // only the requested image is translated
+    assertNull(getStoredSeriesMetadata(lazy, 0).get(KEY));
+    assertNull(getStoredSeriesMetadata(lazy, 2).get(KEY));
+
+    // series are requested out of order, switching back and forth
+    int[] order = {1, 0, 2, 1, 0};
+    for (int s : order) {
+      lazy.setSeries(s);
+      eager.setSeries(s);
+      assertEquals(VALUES[s], lazy.getSeriesMetadataValue(KEY));
+      assertEquals(eager.getSeriesMetadata(), lazy.getSeriesMetadata());
+    }
+  }
+
+  @Test
+  public void testGetMetadataStore() {
+    lazy.setSeries(1);
+    lazy.getMetadataStore();
+    assertEquals(1, lazy.getSeries());
+    for (int s=0; s<VALUES.length; s++) {
+      eager.setSeries(s);
+      assertEquals(eager.getSeriesMetadata(),
+        getStoredSeriesMetadata(lazy, s));
+    }
+  }
+
+  // -- Helper methods --
+
+  private LIFReader open(boolean lazyMetadata)
+    throws FormatException, IOException
+  {
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.setBoolean(LIFReader.LAZY_METADATA_KEY, lazyMetadata);
+    LIFReader reader = new LIFReader();
+    reader.setMetadataOptions(options);
+    reader.setId(file.getAbsolutePath());
+    return reader;
+  }
+
+  /** Returns series metadata without triggering lazy translation. */
+  private static Hashtable<String, Object> getStoredSeriesMetadata(
+    LIFReader reader, int series)
+  {
+    return reader.getCoreMetadataList().get(series).seriesMetadata;
+  }
+
+  /**
+   * Writes a LIF file with one 8-bit single channel image per value in
+   * {@link #VALUES}; the last pixel of each image holds its index.
+   */
+  private static void writeFile(File file) throws IOException {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<LMSDataContainerHeader Version=\"2\">");
+    xml.append("<Element Name=\"Project\"><Data><Experiment/></Data>");
+    xml.append("<Children>");
+    for (int i=0; i<VALUES.length; i++) {
+      xml.append("<Element Name=\"Image").append(i).append("\"><Data><Image>");
+      xml.append("<ImageDescription><Channels>");
+      xml.append("<ChannelDescription DataType=\"0\" ChannelTag=\"0\" ");
+      xml.append("Resolution=\"8\" LUTName=\"Gray\" BytesInc=\"0\"/>");
+      xml.append("</Channels><Dimensions>");
+      xml.append("<DimensionDescription DimID=\"1\" NumberOfElements=\"");
+      xml.append(SIZE_X).append("\" Length=\"1e-6\" Unit=\"m\" ");
+      xml.append("BytesInc=\"1\"/>");
+      xml.append("<DimensionDescription DimID=\"2\" NumberOfElements=\"");
+      xml.append(SIZE_Y).append("\" Length=\"1e-6\" Unit=\"m\" ");
+      xml.append("BytesInc=\"").append(SIZE_X).append("\"/>");
+      xml.append("</Dimensions></ImageDescription>");
+      xml.append("<Marker Value=\"").append(VALUES[i]).append("\"/>");
+      xml.append("</Image></Data>");
+      xml.append("<Memory Size=\"").append(SIZE_X * SIZE_Y);
+      xml.append("\" MemoryBlockID=\"MemBlock_").append(i).append("\"/>");
+      xml.append("<Children/></Element>");
+    }
+    xml.append("</Children></Element></LMSDataContainerHeader>");
+
+    byte[] description = xml.toString().getBytes("UTF-16LE");
+    int planeSize = SIZE_X * SIZE_Y;
+    ByteBuffer buf = ByteBuffer.allocate(13 + description.length +
+      VALUES.length * (18 + 2 * 10 + planeSize));
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+
+    buf.putInt(LIFReader.LIF_MAGIC_BYTE);
+    buf.putInt(description.length + 5);
+    buf.put(LIFReader.LIF_MEMORY_BYTE);
+    buf.putInt(description.length / 2);
+    buf.put(description);
+
+    for (int i=0; i<VALUES.length; i++) {
+      byte[] id = ("MemBlock_" + i).getBytes("UTF-16LE");
+      buf.putInt(LIFReader.LIF_MAGIC_BYTE);
+      buf.putInt(0);
+      buf.put(LIFReader.LIF_MEMORY_BYTE);
+      buf.putInt(planeSize);
+      buf.put(LIFReader.LIF_MEMORY_BYTE);
+      buf.putInt(id.length / 2);
+      buf.put(id);
+      byte[] plane = new byte[planeSize];
+      plane[planeSize - 1] = (byte) i;
+      buf.put(plane);
+    }
+
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(buf.array(), 0, buf.position());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.ImageTools;
+import loci.formats.in.PaddedRowReader;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PaddedRowReader}.  Each region is compared with
+ * the per-row skip and read that LIFReader used before, followed by
+ * {@link ImageTools#bgrToRgb} for color data.
+ */
+public class PaddedRowReaderTest {
+
+  private static final int SIZE_X = 45;
+  private static final int SIZE_Y = 30;
+  private static final int PADDING = 3;
+
+  @Test
+  public void testGrayscale() throws IOException {
+    check(1, 1, 0, 0, SIZE_X, SIZE_Y, PaddedRowReader.DEFAULT_BUFFER_SIZE);
+    check(1, 2, 5, 7, 20, 11, PaddedRowReader.DEFAULT_BUFFER_SIZE);
+  }
+
+  @Test
+  public void testBGR() throws IOException {
+    check(3, 1, 0, 0, SIZE_X, SIZE_Y, PaddedRowReader.DEFAULT_BUFFER_SIZE);
+    check(3, 2, 9, 4, 13, 20, PaddedRowReader.DEFAULT_BUFFER_SIZE);
+    check(3, 1, SIZE_X - 1, SIZE_Y - 1, 1, 1,
+      PaddedRowReader.DEFAULT_BUFFER_SIZE);
+  }
+
+  @Test
+  public void testSmallBuffer() throws IOException {
+    // buffers smaller than a row, a row, and several rows
+    check(3, 2, 4, 3, 30, 25, 1);
+    check(3, 2, 4, 3, 30, 25, SIZE_X * 6 + PADDING);
+    check(1, 1, 0, 0, SIZE_X, SIZE_Y, 4 * (SIZE_X + PADDING) + 1);
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    int bytes = 2;
+    int bpp = bytes * 3;
+    int rowStride = SIZE_X * bpp + PADDING;
+    byte[] plane = createPlane(rowStride);
+    // end the file part of the way through the pixels of row 12
+    int end = 12 * rowStride + 5 * bpp + 1;
+    byte[] truncated = Arrays.copyOf(plane, end);
+
+    for (int bufferSize : new int[] {1, 5 * rowStride,
+      PaddedRowReader.DEFAULT_BUFFER_SIZE})
+    {
+      int len = SIZE_X * bpp;
+      byte[] buf = new byte[len * SIZE_Y];
+      Arrays.fill(buf, (byte) 0x5a);
+      new PaddedRowReader(bufferSize).read(
+        new RandomAccessInputStream(truncated), 0, rowStride, buf, len,
+        SIZE_Y, bytes);
+
+      byte[] expected = readExpected(plane, rowStride, 3, bytes, 0, 0, SIZE_X,
+        SIZE_Y);
+      for (int i=0; i<buf.length; i++) {
+        // complete rows and the whole pixels of row 12 are copied
+        boolean copied = i < 12 * len + 5 * bpp;
+        assertEquals(bufferSize + ": byte " + i,
+          copied ? expected[i] : (byte) 0x5a, buf[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testCopyBGR() {
+    byte[] src = {9, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+    byte[] dest = new byte[14];
+    PaddedRowReader.copyBGR(src, 1, dest, 1, 13, 2);
+    byte[] expected = {0, 5, 6, 3, 4, 1, 2, 11, 12, 9, 10, 7, 8, 0};
+    assertTrue(Arrays.equals(expected, dest));
+  }
+
+  // -- Helper methods --
+
+  private static void check(int channels, int bytes, int x, int y, int w,
+    int h, int bufferSize) throws IOException
+  {
+    int bpp = bytes * channels;
+    int rowStride = SIZE_X * bpp + PADDING;
+    byte[] plane = createPlane(rowStride);
+    byte[] expected = readExpected(plane, rowStride, channels, bytes, x, y, w,
+      h);
+
+    int len = w * bpp;
+    byte[] actual = new byte[len * h];
+    new PaddedRowReader(bufferSize).read(new RandomAccessInputStream(plane),
+      (long) y * rowStride + (long) x * bpp, rowStride, actual, len, h,
+      channels == 3 ? bytes : 0);
+    assertTrue(channels + "x" + bytes + " " + x + "," + y + " " + w + "x" + h,
+      Arrays.equals(expected, actual));
+  }
+
+  /** Reads a region one row at a time, as LIFReader used to. */
+  private static byte[] readExpected(byte[] plane, int rowStride,
+    int channels, int bytes, int x, int y, int w, int h) throws IOException
+  {
+    int bpp = bytes * channels;
+    byte[] buf = new byte[w * bpp * h];
+    RandomAccessInputStream in = new RandomAccessInputStream(plane);
+    in.seek((long) y * rowStride);
+    for (int row=0; row<h; row++) {
+      in.skipBytes(x * bpp);
+      in.read(buf, row * w * bpp, w * bpp);
+      in.skipBytes(bpp * (SIZE_X - w - x) + PADDING);
+    }
+    ImageTools.bgrToRgb(buf, true, bytes, channels);
+    return buf;
+  }
+
+  private static byte[] createPlane(int rowStride) {
+    byte[] plane = new byte[rowStride * SIZE_Y];
+    for (int i=0; i<plane.length; i++) {
+      plane[i] = (byte) (i * 31 + i / rowStride);
+    }
+    return plane;
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import loci.common.DataTools;
+import loci.formats.in.PixelScaler;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PixelScaler}.  Each case is compared with the
+ * per-pixel loop that FlexReader used before the specialised paths were
+ * added.
+ */
+public class PixelScalerTest {
+
+  private static final int PIXELS = 37;
+
+  @Test
+  public void testByteToShort() {
+    check(1, 2, 1d, true);
+    check(1, 2, 3.5, true);
+    check(1, 2, 3.5, false);
+  }
+
+  @Test
+  public void testShortToShort() {
+    check(2, 2, 0.75, true);
+    check(2, 2, 1.5, false);
+  }
+
+  @Test
+  public void testShortToInt() {
+    check(2, 4, 1d, true);
+    check(2, 4, 70000.25, true);
+    check(2, 4, 70000.25, false);
+  }
+
+  @Test
+  public void testOtherWidths() {
+    check(1, 4, 2.5, true);
+    check(4, 4, 0.5, false);
+  }
+
+  // -- Helper methods --
+
+  private static void check(int nBytes, int bpp, double factor,
+    boolean little)
+  {
+    byte[] expected = new byte[PIXELS * bpp];
+    for (int i=0; i<PIXELS * nBytes; i++) {
+      expected[i] = (byte) (i * 73 + 11);
+    }
+    byte[] actual = expected.clone();
+
+    for (int i=PIXELS-1; i>=0; i--) {
+      int q = nBytes == 1 ? expected[i] & 0xff :
+        DataTools.bytesToInt(expected, i * nBytes, nBytes, little);
+      q = (int) (q * factor);
+      DataTools.unpackBytes(q, expected, i * bpp, bpp, little);
+    }
+    PixelScaler.expand(actual, PIXELS, nBytes, bpp, factor, little);
+
+    assertTrue(nBytes + " to " + bpp + " bytes, factor " + factor +
+      (little ? ", little endian" : ", big endian"),
+      Arrays.equals(expected, actual));
+  }
+
+}
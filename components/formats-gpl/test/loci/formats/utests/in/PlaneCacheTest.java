@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import loci.formats.ImageTools;
+import loci.formats.in.PlaneCache;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PlaneCache}.
+ */
+public class PlaneCacheTest {
+
+  private static final int SIZE_X = 7;
+  private static final int SIZE_Y = 5;
+  private static final int BPP = 2;
+  private static final int CHANNELS = 3;
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidSize() {
+    new PlaneCache(-1);
+  }
+
+  @Test
+  public void testDisabled() {
+    PlaneCache cache = new PlaneCache(0);
+    assertFalse(cache.fits(1));
+  }
+
+  @Test
+  public void testFits() {
+    PlaneCache cache = new PlaneCache(100);
+    assertTrue(cache.fits(100));
+    assertFalse(cache.fits(101));
+    assertFalse(cache.fits(0));
+  }
+
+  @Test
+  public void testEviction() {
+    PlaneCache cache = new PlaneCache(100);
+    byte[] a = cache.allocate(40);
+    cache.put(1, a);
+    byte[] b = cache.allocate(40);
+    cache.put(2, b);
+    assertEquals(80, cache.getSize());
+
+    // using plane 1 makes plane 2 the least recently used
+    assertSame(a, cache.get(1));
+    byte[] c = cache.allocate(40);
+    assertSame(b, c);
+    cache.put(3, c);
+    assertNull(cache.get(2));
+    assertNotNull(cache.get(1));
+    assertEquals(80, cache.getSize());
+
+    cache.clear();
+    assertNull(cache.get(1));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testAllocateDifferentSize() {
+    PlaneCache cache = new PlaneCache(100);
+    cache.put(1, cache.allocate(60));
+    byte[] b = cache.allocate(50);
+    assertEquals(50, b.length);
+    assertNull(cache.get(1));
+    assertEquals(0, cache.getSize());
+  }
+
+  /**
+   * Checks that copying a channel region out of a cached plane gives the
+   * same bytes as reading the region of every channel and splitting it,
+   * which is what the reader does without the cache.
+   */
+  @Test
+  public void testCopyChannelMatchesUncachedRead() {
+    byte[] plane = new byte[SIZE_X * SIZE_Y * BPP * CHANNELS];
+    for (int i=0; i<plane.length; i++) {
+      plane[i] = (byte) (i * 31 + 7);
+    }
+    int[][] regions = {
+      {0, 0, SIZE_X, SIZE_Y}, {2, 1, 3, 4}, {SIZE_X - 1, SIZE_Y - 1, 1, 1},
+      {0, 2, SIZE_X, 1}
+    };
+    for (int[] r : regions) {
+      int x = r[0], y = r[1], w = r[2], h = r[3];
+      int len = w * h * BPP;
+      byte[] allChannels = readRegion(plane, x, y, w, h);
+      for (int c=0; c<CHANNELS; c++) {
+        byte[] cached = new byte[len];
+        PlaneCache.copyChannel(plane, cached, c, SIZE_X, SIZE_Y, BPP,
+          x, y, w, h);
+        byte[] uncached = new byte[len];
+        ImageTools.splitChannels(
+          allChannels, uncached, c, CHANNELS, BPP, false, false, len);
+        assertTrue("region " + Arrays.toString(r) + ", channel " + c,
+          Arrays.equals(uncached, cached));
+      }
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Returns the given region of every channel of a plane, one channel after
+   * another, as TiffParser.getSamples does for planar data.
+   */
+  private static byte[] readRegion(byte[] plane, int x, int y, int w, int h) {
+    int rowLen = w * BPP;
+    byte[] region = new byte[rowLen * h * CHANNELS];
+    int next = 0;
+    for (int c=0; c<CHANNELS; c++) {
+      for (int row=0; row<h; row++) {
+        int src = (c * SIZE_Y * SIZE_X + (y + row) * SIZE_X + x) * BPP;
+        System.arraycopy(plane, src, region, next, rowLen);
+        next += rowLen;
+      }
+    }
+    return region;
+  }
+
+}
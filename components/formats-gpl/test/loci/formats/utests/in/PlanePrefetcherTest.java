@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import loci.formats.in.PlanePrefetcher;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PlanePrefetcher}.
+ */
+public class PlanePrefetcherTest {
+
+  private static final int SIZE_X = 5;
+  private static final int SIZE_Y = 4;
+  private static final int PIXEL_BYTES = 2;
+
+  private PlanePrefetcher prefetcher;
+
+  /** Planes read by the loader, as "series:plane". */
+  private final Set<String> loaded =
+    Collections.synchronizedSet(new HashSet<String>());
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    if (prefetcher != null) {
+      prefetcher.close();
+      prefetcher = null;
+    }
+    loaded.clear();
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidDepth() {
+    new PlanePrefetcher(new Loader(-1), new int[] {1}, 0);
+  }
+
+  @Test
+  public void testRegion() {
+    prefetcher = new PlanePrefetcher(new Loader(-1), new int[] {4}, 2);
+    byte[] buf = new byte[2 * 3 * PIXEL_BYTES];
+
+    // nothing has been read ahead yet
+    assertFalse(prefetcher.openBytes(0, 0, buf, 1, 1, 3, 2, SIZE_X,
+      PIXEL_BYTES));
+    assertTrue(prefetcher.openBytes(0, 1, buf, 1, 1, 3, 2, SIZE_X,
+      PIXEL_BYTES));
+
+    byte[] plane = plane(0, 1);
+    int rowLen = SIZE_X * PIXEL_BYTES;
+    int len = 3 * PIXEL_BYTES;
+    for (int row=0; row<2; row++) {
+      for (int i=0; i<len; i++) {
+        assertEquals(plane[(row + 1) * rowLen + PIXEL_BYTES + i],
+          buf[row * len + i]);
+      }
+    }
+    assertEquals(1, prefetcher.getHitCount());
+    assertEquals(1, prefetcher.getMissCount());
+  }
+
+  @Test
+  public void testNextSeries() {
+    prefetcher = new PlanePrefetcher(new Loader(-1), new int[] {2, 0, 3}, 2);
+    byte[] buf = new byte[SIZE_X * SIZE_Y * PIXEL_BYTES];
+
+    assertFalse(prefetcher.openBytes(0, 1, buf, 0, 0, SIZE_X, SIZE_Y,
+      SIZE_X, PIXEL_BYTES));
+    // the empty series is skipped
+    assertTrue(prefetcher.openBytes(2, 0, buf, 0, 0, SIZE_X, SIZE_Y,
+      SIZE_X, PIXEL_BYTES));
+    assertTrue(Arrays.equals(plane(2, 0), buf));
+    assertTrue(prefetcher.openBytes(2, 1, buf, 0, 0, SIZE_X, SIZE_Y,
+      SIZE_X, PIXEL_BYTES));
+    assertTrue(Arrays.equals(plane(2, 1), buf));
+    assertFalse(loaded.contains("0:0"));
+  }
+
+  @Test
+  public void testMissingPlane() {
+    prefetcher = new PlanePrefetcher(new Loader(1), new int[] {3}, 1);
+    byte[] buf = new byte[SIZE_X * SIZE_Y * PIXEL_BYTES];
+
+    assertFalse(prefetcher.openBytes(0, 0, buf, 0, 0, SIZE_X, SIZE_Y,
+      SIZE_X, PIXEL_BYTES));
+    // plane 1 has no pixel data, so the caller must read it
+    assertFalse(prefetcher.openBytes(0, 1, buf, 0, 0, SIZE_X, SIZE_Y,
+      SIZE_X, PIXEL_BYTES));
+    assertTrue(prefetcher.openBytes(0, 2, buf, 0, 0, SIZE_X, SIZE_Y,
+      SIZE_X, PIXEL_BYTES));
+  }
+
+  private static byte[] plane(int series, int no) {
+    byte[] plane = new byte[SIZE_X * SIZE_Y * PIXEL_BYTES];
+    for (int i=0; i<plane.length; i++) {
+      plane[i] = (byte) (series * 64 + no * 16 + i);
+    }
+    return plane;
+  }
+
+  /** Loads planes of series 0 and beyond; one plane has no pixel data. */
+  private class Loader implements PlanePrefetcher.PlaneLoader {
+    private final int missing;
+
+    Loader(int missing) {
+      this.missing = missing;
+    }
+
+    @Override
+    public byte[] loadPlane(int series, int no) {
+      loaded.add(series + ":" + no);
+      return series == 0 && no == missing ? null : plane(series, no);
+    }
+  }
+
+}
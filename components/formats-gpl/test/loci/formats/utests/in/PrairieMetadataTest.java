@@ -26,13 +26,20 @@
 package loci.formats.utests.in;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import loci.common.xml.XMLTools;
 import loci.formats.in.PrairieMetadata;
+import loci.formats.in.PrairieMetadata.Frame;
+import loci.formats.in.PrairieMetadata.PFile;
+import loci.formats.in.PrairieMetadata.Sequence;
 import loci.formats.in.PrairieMetadata.Value;
 import loci.formats.in.PrairieMetadata.ValueTable;
 
@@ -114,6 +121,27 @@ public class PrairieMetadataTest {
     "  </Sequence>" +
     "</PVScan>";
 
+  private static final String CFG =
+    "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+    "<PVConfig version=\"4.0.0.53\">" +
+    "  <PVTSeriesElementWait waitTime=\"2.5\" />" +
+    "  <Key key=\"bitDepth\" permissions=\"Read, Write, Save\" value=\"12\" />" +
+    "  <Key key=\"channel_0\" permissions=\"Read, Write, Save\" value=\"True\" />" +
+    "  <Key key=\"channel_1\" permissions=\"Read, Write, Save\" value=\"False\" />" +
+    "  <Key key=\"channel_2\" permissions=\"Read, Write, Save\" value=\"True\" />" +
+    "</PVConfig>";
+
+  private static final String ENV =
+    "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+    "<Environment version=\"5.2.64.400\">" +
+    "  <PVStateShard>" +
+    "    <PVStateValue key=\"bitDepth\" value=\"13\" />" +
+    "    <PVStateValue key=\"laserPower\">" +
+    "      <IndexedValue index=\"0\" value=\"117\" description=\"Pockels\" />" +
+    "    </PVStateValue>" +
+    "  </PVStateShard>" +
+    "</Environment>";
+
   @Test
   public void testParseOldXML() throws ParserConfigurationException,
     SAXException, IOException
@@ -155,4 +183,94 @@ public class PrairieMetadataTest {
     assertEquals("28.15", zAxis.get(0).value());
     assertEquals("111.23", zAxis.get(1).value());
   }
+
+  @Test
+  public void testStreamingParity() throws ParserConfigurationException,
+    SAXException, IOException
+  {
+    assertParity(OLD_XML, CFG, null);
+    assertParity(NEW_XML, null, ENV);
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Checks that the streaming parser produces the same metadata as the
+   * DOM-based one.
+   */
+  private void assertParity(final String xml, final String cfg,
+    final String env) throws ParserConfigurationException, SAXException,
+    IOException
+  {
+    final PrairieMetadata dom = new PrairieMetadata(XMLTools.parseDOM(xml),
+      cfg == null ? null : XMLTools.parseDOM(cfg),
+      env == null ? null : XMLTools.parseDOM(env));
+    final PrairieMetadata sax = PrairieMetadata.parse(xml, cfg, env);
+
+    assertEquals(dom.getDate(), sax.getDate());
+    assertEquals(dom.getWaitTime(), sax.getWaitTime());
+    assertTrue(Arrays.equals(dom.getActiveChannels(),
+      sax.getActiveChannels()));
+    assertValues(dom.getValues(), sax.getValues());
+    assertValues(dom.getConfig(), sax.getConfig());
+
+    assertEquals(dom.getCycleMin(), sax.getCycleMin());
+    assertEquals(dom.getCycleMax(), sax.getCycleMax());
+    assertEquals(dom.getFirstSequence().getCycle(),
+      sax.getFirstSequence().getCycle());
+    final ArrayList<Sequence> domSequences = dom.getSequences();
+    final ArrayList<Sequence> saxSequences = sax.getSequences();
+    assertEquals(domSequences.size(), saxSequences.size());
+    for (int s = 0; s < domSequences.size(); s++) {
+      final Sequence domSequence = domSequences.get(s);
+      final Sequence saxSequence = saxSequences.get(s);
+      assertEquals(domSequence.getType(), saxSequence.getType());
+      assertEquals(domSequence.getCycle(), saxSequence.getCycle());
+      assertEquals(domSequence.isSpectralMode(), saxSequence.isSpectralMode());
+      assertEquals(domSequence.getIndexMin(), saxSequence.getIndexMin());
+      assertEquals(domSequence.getIndexMax(), saxSequence.getIndexMax());
+      assertValues(domSequence.getValues(), saxSequence.getValues());
+
+      for (int i = domSequence.getIndexMin(); i <= domSequence.getIndexMax();
+        i++)
+      {
+        final Frame domFrame = domSequence.getFrame(i);
+        final Frame saxFrame = saxSequence.getFrame(i);
+        assertNotNull(saxFrame);
+        assertEquals(domFrame.getRelativeTime(), saxFrame.getRelativeTime());
+        assertEquals(domFrame.getAbsoluteTime(), saxFrame.getAbsoluteTime());
+        assertEquals(domFrame.getFirstFile().getChannel(),
+          saxFrame.getFirstFile().getChannel());
+        assertValues(domFrame.getValues(), saxFrame.getValues());
+
+        for (final int c : dom.getActiveChannels()) {
+          final PFile domFile = domFrame.getFile(c);
+          final PFile saxFile = saxFrame.getFile(c);
+          if (domFile == null) {
+            assertEquals(null, saxFile);
+            continue;
+          }
+          assertEquals(domFile.getChannelName(), saxFile.getChannelName());
+          assertEquals(domFile.getFilename(), saxFile.getFilename());
+          assertEquals(domFile.getWavelengthMin(), saxFile.getWavelengthMin());
+          assertEquals(domFile.getWavelengthMax(), saxFile.getWavelengthMax());
+        }
+      }
+    }
+  }
+
+  /** Checks that the given values are equal, recursing into tables. */
+  private void assertValues(final Value expected, final Value actual) {
+    assertEquals(expected.isTable(), actual.isTable());
+    assertEquals(expected.value(), actual.value());
+    assertEquals(expected.description(), actual.description());
+    if (!expected.isTable()) return;
+
+    final ValueTable expectedTable = (ValueTable) expected;
+    final ValueTable actualTable = (ValueTable) actual;
+    assertEquals(expectedTable.keySet(), actualTable.keySet());
+    for (final String key : expectedTable.keySet()) {
+      assertValues(expectedTable.get(key), actualTable.get(key));
+    }
+  }
 }
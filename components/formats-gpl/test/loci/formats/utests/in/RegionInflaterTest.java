@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import loci.formats.in.RegionInflater;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link RegionInflater}.  Each region is compared with the
+ * same region copied out of a full decode of the plane.
+ */
+public class RegionInflaterTest {
+
+  private static final int ROW = 300;
+  private static final int HEIGHT = 200;
+
+  @Test
+  public void testRegions() throws IOException {
+    byte[] plane = createPlane();
+    byte[] compressed = compress(plane);
+    assertTrue(Arrays.equals(plane, inflateAll(compressed)));
+
+    RegionInflater inflater = new RegionInflater();
+    try {
+      check(inflater, plane, compressed, 0, 0, ROW, HEIGHT);
+      check(inflater, plane, compressed, 0, 17, ROW, 40);
+      check(inflater, plane, compressed, 30, 0, 60, 1);
+      check(inflater, plane, compressed, 123, 150, 77, 50);
+      check(inflater, plane, compressed, ROW - 1, HEIGHT - 1, 1, 1);
+      // the inflater is reused between calls
+      check(inflater, plane, compressed, 7, 3, 250, 190);
+    }
+    finally {
+      inflater.close();
+    }
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    byte[] plane = createPlane();
+    byte[] compressed = compress(plane);
+    byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+    byte[] full = new byte[ROW * HEIGHT];
+    int n = readAll(new InflaterInputStream(
+      new ByteArrayInputStream(truncated)), full);
+    assertTrue(n > 0 && n < full.length);
+
+    byte[] buf = new byte[ROW * HEIGHT];
+    Arrays.fill(buf, (byte) 0x5a);
+    RegionInflater inflater = new RegionInflater();
+    try {
+      inflater.inflate(
+        new ByteArrayInputStream(truncated), buf, 0, 0, ROW, ROW, HEIGHT);
+    }
+    finally {
+      inflater.close();
+    }
+
+    for (int i=0; i<buf.length; i++) {
+      assertEquals("byte " + i, i < n ? full[i] : (byte) 0x5a, buf[i]);
+    }
+  }
+
+  @Test
+  public void testTruncatedBeforeRegion() throws IOException {
+    byte[] plane = createPlane();
+    byte[] compressed = compress(plane);
+    byte[] truncated = Arrays.copyOf(compressed, compressed.length / 4);
+
+    byte[] buf = new byte[10 * 10];
+    Arrays.fill(buf, (byte) 0x5a);
+    RegionInflater inflater = new RegionInflater();
+    try {
+      inflater.inflate(new ByteArrayInputStream(truncated), buf, 0,
+        HEIGHT - 10, 10, ROW, 10);
+    }
+    finally {
+      inflater.close();
+    }
+    for (byte b : buf) {
+      assertEquals((byte) 0x5a, b);
+    }
+  }
+
+  // -- Helper methods --
+
+  private static void check(RegionInflater inflater, byte[] plane,
+    byte[] compressed, int x, int y, int w, int h) throws IOException
+  {
+    byte[] expected = new byte[w * h];
+    for (int yy=0; yy<h; yy++) {
+      System.arraycopy(plane, (y + yy) * ROW + x, expected, yy * w, w);
+    }
+    byte[] actual = new byte[w * h];
+    inflater.inflate(new ByteArrayInputStream(compressed), actual, x, y, w,
+      ROW, h);
+    assertTrue(x + "," + y + " " + w + "x" + h,
+      Arrays.equals(expected, actual));
+  }
+
+  /** Creates a plane that is neither constant nor incompressible. */
+  private static byte[] createPlane() {
+    byte[] plane = new byte[ROW * HEIGHT];
+    for (int y=0; y<HEIGHT; y++) {
+      for (int x=0; x<ROW; x++) {
+        plane[y * ROW + x] = (byte) ((x * y) / 7 + (x ^ y));
+      }
+    }
+    return plane;
+  }
+
+  private static byte[] compress(byte[] data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+    out.write(data);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static byte[] inflateAll(byte[] compressed) throws IOException {
+    byte[] plane = new byte[ROW * HEIGHT];
+    readAll(new InflaterInputStream(new ByteArrayInputStream(compressed)),
+      plane);
+    return plane;
+  }
+
+  private static int readAll(InflaterInputStream in, byte[] buf) {
+    int n = 0;
+    try {
+      while (n < buf.length) {
+        int r = in.read(buf, n, buf.length - n);
+        if (r <= 0) {
+          break;
+        }
+        n += r;
+      }
+    }
+    catch (IOException e) {
+      // truncated stream; n bytes were decoded
+    }
+    return n;
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.formats.in.MinimalTiffReader;
+import loci.formats.in.TiffReaderPool;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link TiffReaderPool}.  The pooled readers only record
+ * which file they were given, so no TIFF files are needed.
+ */
+public class TiffReaderPoolTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidCapacity() {
+    new TiffReaderPool(0);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    RecordingPool pool = new RecordingPool(2);
+    int open = TiffReaderPool.getTotalOpenCount();
+
+    MinimalTiffReader a = pool.get("a.tif");
+    MinimalTiffReader b = pool.get("b.tif");
+    assertSame(a, pool.get("a.tif"));
+    assertEquals(2, pool.getOpenCount());
+    assertEquals(open + 2, TiffReaderPool.getTotalOpenCount());
+
+    // b is the least recently used file, so its reader is recycled
+    MinimalTiffReader c = pool.get("c.tif");
+    assertSame(b, c);
+    assertEquals("c.tif", c.getCurrentFile());
+    assertEquals(2, pool.getOpenCount());
+    assertEquals(1, pool.getHitCount());
+    assertEquals(3, pool.getMissCount());
+    assertEquals(1, pool.getEvictionCount());
+    assertEquals(2, pool.created.size());
+
+    pool.close();
+    assertEquals(0, pool.getOpenCount());
+    assertEquals(open, TiffReaderPool.getTotalOpenCount());
+    for (RecordingReader reader : pool.created) {
+      assertTrue(reader.closed > 0);
+    }
+  }
+
+  @Test
+  public void testRelease() throws Exception {
+    RecordingPool pool = new RecordingPool(4);
+    pool.get("a.tif");
+    pool.get("b.tif");
+    pool.release("a.tif");
+    pool.release("missing.tif");
+    assertEquals(1, pool.getOpenCount());
+    pool.get("a.tif");
+    assertEquals(3, pool.getMissCount());
+    pool.close();
+  }
+
+  private static class RecordingPool extends TiffReaderPool {
+    final List<RecordingReader> created = new ArrayList<RecordingReader>();
+
+    RecordingPool(int capacity) {
+      super(capacity);
+    }
+
+    @Override
+    protected MinimalTiffReader createReader() {
+      RecordingReader reader = new RecordingReader();
+      created.add(reader);
+      return reader;
+    }
+  }
+
+  private static class RecordingReader extends MinimalTiffReader {
+    int closed;
+
+    @Override
+    public void setId(String id) {
+      currentId = id;
+    }
+
+    @Override
+    public void close(boolean fileOnly) throws IOException {
+      closed++;
+      currentId = null;
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import loci.formats.in.ZVIIndex;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ZVIIndex}.
+ */
+public class ZVIIndexTest {
+
+  private File file;
+  private File sidecar;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    file = File.createTempFile("ZVIIndexTest", ".zvi");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[4096]);
+    }
+    finally {
+      out.close();
+    }
+    sidecar = new File(file.getPath() + ZVIIndex.SIDECAR_SUFFIX);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    file.delete();
+    sidecar.delete();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ZVIIndex index = new ZVIIndex(file.getPath());
+    index.addImage("Image/Item(1)/Contents",
+      new ZVIIndex.Image(1, 2, 3, 0, 640, 480, 2, ZVIIndex.ZLIB, 1234));
+    index.addTags("Tags/Contents", new int[] {1025, 257},
+      new String[] {"Zeiss", null});
+    index.save(sidecar.getPath());
+
+    ZVIIndex loaded = ZVIIndex.load(sidecar.getPath(), file.getPath());
+    assertNotNull(loaded);
+    assertEquals(1, loaded.getImageCount());
+    ZVIIndex.Image image = loaded.getImage("Image/Item(1)/Contents");
+    assertEquals(1, image.z);
+    assertEquals(2, image.c);
+    assertEquals(3, image.t);
+    assertEquals(640, image.sizeX);
+    assertEquals(480, image.sizeY);
+    assertEquals(ZVIIndex.ZLIB, image.compression);
+    assertEquals(1234, image.offset);
+    assertNull(loaded.getImage("Image/Item(2)/Contents"));
+    assertTrue(Arrays.equals(new int[] {1025, 257},
+      loaded.getTagIDs("Tags/Contents")));
+    assertTrue(Arrays.equals(new String[] {"Zeiss", null},
+      loaded.getTagValues("Tags/Contents")));
+  }
+
+  @Test
+  public void testStaleSidecar() throws IOException {
+    new ZVIIndex(file.getPath()).save(sidecar.getPath());
+    assertTrue(file.setLastModified(file.lastModified() - 60000));
+    assertNull(ZVIIndex.load(sidecar.getPath(), file.getPath()));
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import loci.formats.in.ZVIPlaneTable;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ZVIPlaneTable}.
+ */
+public class ZVIPlaneTableTest {
+
+  @Test
+  public void testDense() {
+    int[][] coordinates = new int[24][];
+    for (int q=0; q<coordinates.length; q++) {
+      coordinates[q] = new int[] {q % 2, (q / 2) % 3, (q / 6) % 2, q / 12};
+    }
+    ZVIPlaneTable table = new ZVIPlaneTable(coordinates);
+    assertTrue(table.isIndexed());
+    checkAgainstSearch(table, coordinates, 3, 4, 3, 3);
+  }
+
+  @Test
+  public void testSparse() {
+    int[][] coordinates = {
+      {0, 0, 0, 0}, {1, 0, 0, 0}, {100000, 0, 0, 0}, {0, 1, 0, 2},
+      {1, 0, 0, 0}, {5, 7, 1, 0},
+    };
+    ZVIPlaneTable table = new ZVIPlaneTable(coordinates);
+    assertFalse(table.isIndexed());
+    assertEquals(2, table.find(100000, 0, 0, 0));
+    assertEquals(3, table.find(0, 1, 0, 2));
+    assertEquals(1, table.find(1, 0, 0, 0));
+    assertEquals(5, table.find(5, 7, 1, 0));
+    assertEquals(-1, table.find(2, 0, 0, 0));
+    assertEquals(-1, table.find(0, 0, 0, 1));
+  }
+
+  @Test
+  public void testFirstMatchWins() {
+    int[][] coordinates = {
+      {0, 0, 0, 0}, {1, 0, 0, 0}, {1, 0, 0, 0}, {0, 0, 0, 0},
+    };
+    ZVIPlaneTable table = new ZVIPlaneTable(coordinates);
+    assertTrue(table.isIndexed());
+    assertEquals(0, table.find(0, 0, 0, 0));
+    assertEquals(1, table.find(1, 0, 0, 0));
+  }
+
+  @Test
+  public void testOutOfRange() {
+    int[][] coordinates = {{0, 0, 0, 0}, {1, 1, 1, 1}};
+    ZVIPlaneTable table = new ZVIPlaneTable(coordinates);
+    assertTrue(table.isIndexed());
+    assertEquals(-1, table.find(2, 0, 0, 0));
+    assertEquals(-1, table.find(0, 2, 0, 0));
+    assertEquals(-1, table.find(0, 0, 2, 0));
+    assertEquals(-1, table.find(0, 0, 0, 2));
+    assertEquals(-1, table.find(-1, 0, 0, 0));
+    assertEquals(-1, table.find(0, 0, 0, -1));
+    assertEquals(-1, table.find(1, 0, 0, 0));
+  }
+
+  @Test
+  public void testNegativeCoordinatesSkipped() {
+    int[][] coordinates = {{-1, 0, 0, 0}, {0, 0, 0, 0}, {0, -1, 0, 0}};
+    ZVIPlaneTable table = new ZVIPlaneTable(coordinates);
+    assertTrue(table.isIndexed());
+    assertEquals(1, table.find(0, 0, 0, 0));
+    assertEquals(-1, table.find(-1, 0, 0, 0));
+  }
+
+  @Test
+  public void testEmpty() {
+    ZVIPlaneTable table = new ZVIPlaneTable(new int[0][]);
+    assertEquals(-1, table.find(0, 0, 0, 0));
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Checks every position up to the given bounds against a linear search
+   * for the first matching image.
+   */
+  private static void checkAgainstSearch(ZVIPlaneTable table,
+    int[][] coordinates, int sizeZ, int sizeC, int sizeT, int series)
+  {
+    for (int s=0; s<series; s++) {
+      for (int z=0; z<sizeZ; z++) {
+        for (int c=0; c<sizeC; c++) {
+          for (int t=0; t<sizeT; t++) {
+            int expected = -1;
+            for (int q=0; q<coordinates.length; q++) {
+              int[] coords = coordinates[q];
+              if (coords[0] == z && coords[1] == c && coords[2] == t &&
+                coords[3] == s)
+              {
+                expected = q;
+                break;
+              }
+            }
+            assertEquals(z + "/" + c + "/" + t + "/" + s, expected,
+              table.find(z, c, t, s));
+          }
+        }
+      }
+    }
+  }
+
+}